@@ -0,0 +1,520 @@
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.channels.Channels;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import java.util.function.IntSupplier;
+import java.util.function.Supplier;
+
+/**
+ * Builds the work measured by the benchmarks. JMH only accepts benchmarks
+ * in a named package, which can't refer to the game's classes in the
+ * default package, so each benchmark looks up its workload here once when
+ * it is set up and then calls it through a plain functional interface.
+ * Everything a workload needs is prepared before it is handed out, so only
+ * the engine's own work is measured.
+ * @author starp
+ *
+ */
+public final class Workloads {
+  /**
+   * Seed of every random choice made while preparing, so each run measures
+   * the same grids.
+   */
+  private static final int SEED = 20220130;
+
+  /**
+   * Not used; the workloads are made by the static methods.
+   */
+  private Workloads() {
+  }
+
+  /**
+   * Generates a new puzzle each time, from a fixed sequence of seeds.
+   * @param size      number of columns/rows.
+   * @param max       maximum size of one cage.
+   * @param unique    whether the puzzles must have a unique solution.
+   * @return makes one puzzle per call.
+   */
+  public static Supplier<Object> generate(int size, int max,
+                                          boolean unique) {
+    int[] seed = {SEED};
+    return () -> {
+      PuzzleGenerator generator = new PuzzleGenerator(seed[0]++);
+      generator.setUnique(unique);
+      return generator.createGameData(size, max);
+    };
+  }
+
+  /**
+   * Counts the solutions of a puzzle up to two, as the generator does to
+   * check each cage layout is unique, cycling through a corpus of layouts
+   * straight from the generator. Larger cages make some 16x16 layouts take
+   * minutes, so those are kept to pairs.
+   * @param size      number of columns/rows.
+   * @param threads   number of threads the solver uses.
+   * @return the number of solutions found, per call.
+   */
+  public static IntSupplier countSolutions(int size, int threads) {
+    ConstraintSolver[] solvers = corpus(size, threads);
+    int[] next = {0};
+    return () -> solvers[next[0]++ % solvers.length].countSolutions(2);
+  }
+
+  /**
+   * Finds one solution of a puzzle, cycling through the same corpus as
+   * {@link #countSolutions(int, int)}.
+   * @param size      number of columns/rows.
+   * @param threads   number of threads the solver uses.
+   * @return the solution, per call.
+   */
+  public static Supplier<Object> solve(int size, int threads) {
+    ConstraintSolver[] solvers = corpus(size, threads);
+    int[] next = {0};
+    return () -> solvers[next[0]++ % solvers.length].solve();
+  }
+
+  /**
+   * Makes a solver for each layout of the corpus.
+   * @param size      number of columns/rows.
+   * @param threads   number of threads each solver uses.
+   * @return the solvers.
+   */
+  private static ConstraintSolver[] corpus(int size, int threads) {
+    ConstraintSolver[] solvers = new ConstraintSolver[8];
+    for (int index = 0; index < solvers.length; index++) {
+      GameData layout = new PuzzleGenerator(SEED + index)
+          .createGameData(size, size >= 16 ? 2 : 4);
+      solvers[index] = new ConstraintSolver(layout);
+      solvers[index].setParallelism(threads);
+    }
+    return solvers;
+  }
+
+  /**
+   * Counts the solutions of a puzzle up to two with one of the solver
+   * backends, cycling through layouts straight from the generator.
+   * @param backend   name of the backend.
+   * @param size      number of columns/rows.
+   * @param max       maximum size of one cage.
+   * @return the number of solutions found, per call.
+   */
+  public static IntSupplier countWith(String backend, int size, int max) {
+    List<GameData> layouts = describable(size, max);
+    PuzzleSolver[] solvers = new PuzzleSolver[layouts.size()];
+    for (int index = 0; index < solvers.length; index++) {
+      solvers[index] = PuzzleSolver.Backend.valueOf(backend)
+          .create(layouts.get(index));
+    }
+    int[] next = {0};
+    return () -> solvers[next[0]++ % solvers.length].countSolutions(2);
+  }
+
+  /**
+   * Sets one of the solver backends up for a puzzle, as the generator does
+   * for each cage layout it tries, cycling through the same layouts as
+   * {@link #countWith(String, int, int)}.
+   * @param backend   name of the backend.
+   * @param size      number of columns/rows.
+   * @param max       maximum size of one cage.
+   * @return the solver, per call.
+   */
+  public static Supplier<Object> createWith(String backend, int size,
+                                            int max) {
+    PuzzleSolver.Backend kind = PuzzleSolver.Backend.valueOf(backend);
+    List<GameData> layouts = describable(size, max);
+    int[] next = {0};
+    return () -> kind.create(layouts.get(next[0]++ % layouts.size()));
+  }
+
+  /**
+   * Generates eight layouts that both backends can solve, skipping those
+   * with a cage too large for the exact cover matrix.
+   * @param size      number of columns/rows.
+   * @param max       maximum size of one cage.
+   * @return the layouts.
+   */
+  private static List<GameData> describable(int size, int max) {
+    List<GameData> layouts = new ArrayList<>();
+    for (int seed = SEED; layouts.size() < 8; seed++) {
+      GameData layout = new PuzzleGenerator(seed).createGameData(size, max);
+      try {
+        new DancingLinksSolver(layout);
+        layouts.add(layout);
+      }
+      catch (IllegalArgumentException e) {
+        /** Too many tuples to list, so only one backend could solve it. */
+      }
+    }
+    return layouts;
+  }
+
+  /**
+   * Checks a whole grid for mistakes from scratch, as the mistake checker
+   * does after a grid has been loaded or cleared: every line and cage.
+   * @param size      number of columns/rows.
+   * @param filled    fraction of the cells holding their number.
+   * @return the number of problems found, per call.
+   */
+  public static IntSupplier checkGrid(int size, double filled) {
+    PuzzleChecker checker = solvedChecker(size, filled);
+    return () -> {
+      checker.recount();
+      int problems = 0;
+      for (int line = 0; line < 2 * size; line++) {
+        if (checker.hasDuplicates(line) || !checker.isLineComplete(line)) {
+          problems++;
+        }
+      }
+      for (int cage = 0; cage < checker.getState().getCageCount(); cage++) {
+        if (!checker.isCageCorrect(cage)) {
+          problems++;
+        }
+      }
+      return checker.isWon() ? problems : problems + 1;
+    };
+  }
+
+  /**
+   * Changes one cell at a time and checks what changed, as the mistake
+   * checker does after each number is entered.
+   * @param size      number of columns/rows.
+   * @param filled    fraction of the cells holding their number.
+   * @return the number of the changed cell's lines with duplicates, per
+   *         call.
+   */
+  public static IntSupplier changeCell(int size, double filled) {
+    PuzzleChecker checker = solvedChecker(size, filled);
+    Random random = new Random(SEED);
+    int[] cells = new int[1024];
+    int[] numbers = new int[cells.length];
+    for (int index = 0; index < cells.length; index++) {
+      cells[index] = random.nextInt(size * size);
+      numbers[index] = random.nextInt(size + 1);
+    }
+    int[] next = {0};
+    return () -> {
+      int index = next[0]++ & (cells.length - 1);
+      int cell = cells[index];
+      checker.setValue(cell, numbers[index]);
+      int duplicates = 0;
+      if (checker.hasDuplicates(cell / size)) {
+        duplicates++;
+      }
+      if (checker.hasDuplicates(size + cell % size)) {
+        duplicates++;
+      }
+      return checker.isCageCorrect(checker.getState().getCageOf(cell))
+             ? duplicates : duplicates + 1;
+    };
+  }
+
+  /**
+   * Places a number and rubs out the pencil marks it rules out, on a grid
+   * where every empty cell has every number noted. The marks rubbed out
+   * and the number are put back afterwards, as part of each call.
+   * @param size      number of columns/rows.
+   * @param filled    fraction of the cells holding their number.
+   * @return the number of cells whose marks changed, per call.
+   */
+  public static IntSupplier eliminateMarks(int size, double filled) {
+    GridState state = solvedChecker(size, filled).getState();
+    int all = (1 << size) - 1;
+    for (int cell = 0; cell < size * size; cell++) {
+      state.setMarks(cell, all);
+    }
+    Random random = new Random(SEED);
+    int[] cells = new int[1024];
+    int[] numbers = new int[cells.length];
+    for (int index = 0; index < cells.length; index++) {
+      do {
+        cells[index] = random.nextInt(size * size);
+      }
+      while (state.getValue(cells[index]) != 0);
+      numbers[index] = random.nextInt(size) + 1;
+    }
+    int[] next = {0};
+    return () -> {
+      int index = next[0]++ & (cells.length - 1);
+      int cell = cells[index];
+      state.setValue(cell, numbers[index]);
+      int changed = state.eliminateMarks(cell, numbers[index]);
+      for (int position = 0; position < changed; position++) {
+        state.setMarks(state.getChangedMark(position), all);
+      }
+      state.setValue(cell, 0);
+      return changed;
+    };
+  }
+
+  /**
+   * Records a single cell change as an action, as each number entered is.
+   * @param size    number of columns/rows.
+   * @return the number of the changed cell, per call.
+   */
+  public static IntSupplier recordChange(int size) {
+    MoveHistory history = new MoveHistory(new GridState(size));
+    int[] next = {0};
+    return () -> {
+      int move = next[0]++;
+      int cell = move % (size * size);
+      history.change(cell, move / (size * size) % size + 1);
+      return cell;
+    };
+  }
+
+  /**
+   * Undoes then redoes an action, on a history that is already full.
+   * @param size          number of columns/rows.
+   * @param cellsPerMove  number of cells each action changes, as clearing
+   *                      the grid changes many at once.
+   * @return the number of cells changed, per call.
+   */
+  public static IntSupplier undoRedo(int size, int cellsPerMove) {
+    MoveHistory history = new MoveHistory(new GridState(size));
+    Random random = new Random(SEED);
+    while (history.getUndoableChanges() + cellsPerMove
+           <= history.getMemoryLimit() / 4) {
+      history.beginAction();
+      for (int index = 0; index < cellsPerMove; index++) {
+        history.set(random.nextInt(size * size), random.nextInt(size) + 1);
+      }
+      history.endAction();
+    }
+    return () -> history.undo() + history.redo();
+  }
+
+  /**
+   * Parses a puzzle written in the format files are loaded from.
+   * @param size    number of columns/rows.
+   * @return the puzzle, per call.
+   */
+  public static Supplier<Object> parse(int size) {
+    String text = format(size, SEED);
+    return () -> {
+      try {
+        return PuzzleParser.parse(text);
+      }
+      catch (PuzzleFormatException e) {
+        throw new IllegalStateException(e);
+      }
+    };
+  }
+
+  /**
+   * Reads a pack of puzzles from memory through the pack reader.
+   * @param size      number of columns/rows.
+   * @param count     number of puzzles in the pack.
+   * @return the number of puzzles read, per call.
+   */
+  public static IntSupplier readPack(int size, int count) {
+    StringBuilder pack = new StringBuilder();
+    for (int number = 0; number < count; number++) {
+      pack.append(format(size, SEED + number)).append('\n');
+    }
+    byte[] bytes = pack.toString().getBytes(StandardCharsets.UTF_8);
+    return () -> {
+      int read = 0;
+      try (PuzzlePackReader reader = new PuzzlePackReader(
+               Channels.newChannel(new ByteArrayInputStream(bytes)))) {
+        while (reader.hasNext()) {
+          reader.next();
+          read++;
+        }
+      }
+      catch (IOException e) {
+        throw new UncheckedIOException(e);
+      }
+      return read;
+    };
+  }
+
+  /**
+   * Checks whether full cages reach their targets, as each cage does when
+   * the grid changes. Half of the cages checked are correct.
+   * @param operator    the cages' operator.
+   * @param length      number of cells in each cage.
+   * @param size        number of columns/rows, which bounds the numbers.
+   * @return 1 if the cage checked was correct, per call.
+   */
+  public static IntSupplier evaluate(String operator, int length, int size) {
+    Operations operation = Operations.valueOf(operator);
+    int[] targets = new int[256];
+    int[][] numbers = randomCages(operation, length, size, targets);
+    int[] next = {0};
+    return () -> {
+      int cage = next[0]++ & (numbers.length - 1);
+      return CageEvaluator.isSatisfied(operation, targets[cage],
+                                       numbers[cage], length) ? 1 : 0;
+    };
+  }
+
+  /**
+   * Checks whether partly filled cages can still reach their targets, as
+   * the mistake checker does after each number is entered. Half of the
+   * cells of each cage are emptied, and half of the cages had a target
+   * their numbers didn't make.
+   * @param operator    the cages' operator.
+   * @param length      number of cells in each cage.
+   * @param size        number of columns/rows, which bounds the numbers.
+   * @return 1 if the cage checked could still be finished, per call.
+   */
+  public static IntSupplier reach(String operator, int length, int size) {
+    Operations operation = Operations.valueOf(operator);
+    int[] targets = new int[256];
+    int[][] numbers = randomCages(operation, length, size, targets);
+    for (int[] cage : numbers) {
+      for (int index = 0; index < length; index += 2) {
+        cage[index] = 0;
+      }
+    }
+    int[] next = {0};
+    return () -> {
+      int cage = next[0]++ & (numbers.length - 1);
+      return CageEvaluator.canReach(operation, targets[cage], numbers[cage],
+                                    length, size) ? 1 : 0;
+    };
+  }
+
+  /**
+   * Makes full cages with random numbers, half of them with the target
+   * their numbers make and half with one more.
+   * @param operation   the cages' operator.
+   * @param length      number of cells in each cage.
+   * @param size        number of columns/rows, which bounds the numbers.
+   * @param targets     filled with the target of each cage.
+   * @return the numbers of each cage.
+   */
+  private static int[][] randomCages(Operations operation, int length,
+                                     int size, int[] targets) {
+    Random random = new Random(SEED);
+    int[][] numbers = new int[targets.length][length];
+    for (int cage = 0; cage < targets.length; cage++) {
+      for (int index = 0; index < length; index++) {
+        numbers[cage][index] = random.nextInt(size) + 1;
+      }
+      if (operation == Operations.DIVIDE) {
+        /** Makes the largest number divisible by the others. */
+        int product = 1;
+        for (int index = 1; index < length; index++) {
+          product *= numbers[cage][index];
+        }
+        numbers[cage][0] = product * (random.nextInt(2) + 1);
+      }
+      targets[cage] = targetOf(operation, numbers[cage]);
+      if (cage % 2 == 1) {
+        targets[cage]++;
+      }
+    }
+    return numbers;
+  }
+
+  /**
+   * Works out the target a cage's numbers make.
+   * @param operator    the cage's operator.
+   * @param numbers     the cage's numbers.
+   * @return the target.
+   */
+  private static int targetOf(Operations operator, int[] numbers) {
+    int sum = 0;
+    int product = 1;
+    int largest = 0;
+    for (int number : numbers) {
+      sum += number;
+      product *= number;
+      largest = Math.max(largest, number);
+    }
+    switch (operator) {
+      case ADD:
+        return sum;
+      case MINUS:
+        return 2 * largest - sum;
+      case TIMES:
+        return product;
+      case DIVIDE:
+        return largest * largest / product;
+      default:
+        return numbers[0];
+    }
+  }
+
+  /**
+   * Generates a puzzle and writes it in the format files are loaded from.
+   * @param size    number of columns/rows.
+   * @param seed    seed of the generator.
+   * @return the puzzle as text.
+   */
+  private static String format(int size, int seed) {
+    StringBuilder text = new StringBuilder();
+    try {
+      PuzzleParser.format(new PuzzleGenerator(seed).createGameData(size, 4),
+                          text);
+    }
+    catch (IOException e) {
+      throw new UncheckedIOException(e);
+    }
+    return text.toString();
+  }
+
+  /**
+   * Creates a checker on a solved grid with some of its numbers removed.
+   * The grid is a Latin square with its rows shuffled, cut into pairs of
+   * cells along each row whose targets are worked out from the square, so
+   * no solver is needed however large the grid is.
+   * @param size      number of columns/rows.
+   * @param filled    fraction of the cells left holding their number.
+   * @return the checker.
+   */
+  private static PuzzleChecker solvedChecker(int size, double filled) {
+    Random random = new Random(SEED);
+    List<Integer> shifts = new ArrayList<Integer>();
+    for (int row = 0; row < size; row++) {
+      shifts.add(row);
+    }
+    Collections.shuffle(shifts, random);
+    int[] solution = new int[size * size];
+    for (int cell = 0; cell < solution.length; cell++) {
+      solution[cell] = (shifts.get(cell / size) + cell % size) % size + 1;
+    }
+
+    List<ArrayList<Integer>> cages = new ArrayList<ArrayList<Integer>>();
+    List<Operations> operators = new ArrayList<Operations>();
+    List<Integer> targets = new ArrayList<Integer>();
+    Operations[] cycle = {Operations.ADD, Operations.MINUS, Operations.TIMES};
+    for (int cell = 0; cell < solution.length; cell += 2) {
+      ArrayList<Integer> cells = new ArrayList<Integer>();
+      cells.add(cell + 1);
+      if (cell % size == size - 1) {
+        /** A row of odd length ends with a single cell. */
+        cell--;
+        operators.add(Operations.NONE);
+        targets.add(solution[cell + 1]);
+      }
+      else {
+        cells.add(cell + 2);
+        int[] pair = {solution[cell], solution[cell + 1]};
+        Operations operator = cycle[cages.size() % cycle.length];
+        operators.add(operator);
+        targets.add(targetOf(operator, pair));
+      }
+      cages.add(cells);
+    }
+    GameData gameData = new GameData();
+    gameData.setSize(size);
+    gameData.setCages(cages);
+    gameData.setOperators(operators);
+    gameData.setTargets(targets);
+
+    PuzzleChecker checker = new PuzzleChecker(new GridState(gameData));
+    for (int cell = 0; cell < solution.length; cell++) {
+      if (random.nextDouble() < filled) {
+        checker.setValue(cell, solution[cell]);
+      }
+    }
+    return checker;
+  }
+}
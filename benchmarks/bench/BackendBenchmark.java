@@ -0,0 +1,85 @@
+package bench;
+
+import java.util.concurrent.TimeUnit;
+import java.util.function.IntSupplier;
+import java.util.function.Supplier;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Compares the two solver backends on the same layouts, by grid size and
+ * maximum cage size: setting a solver up for a layout, and counting its
+ * solutions as the uniqueness check does. The generator sets a new solver
+ * up for each layout it tries, so both matter.
+ * @author starp
+ *
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class BackendBenchmark {
+  /**
+   * Name of the backend.
+   */
+  @Param({"CONSTRAINT", "DANCING_LINKS"})
+  public String backend;
+  /**
+   * Number of columns/rows. A 1x1 grid is only there to check that both
+   * backends solve a grid whose cell has one candidate from the start.
+   */
+  @Param({"1", "6", "9", "12"})
+  public int size;
+  /**
+   * Maximum size of one cage.
+   */
+  @Param({"2", "3", "4"})
+  public int max;
+  /**
+   * Counts the solutions of one layout per call.
+   */
+  private IntSupplier countSolutions;
+  /**
+   * Sets a solver up for one layout per call.
+   */
+  private Supplier<Object> create;
+
+  /**
+   * Looks up the workloads.
+   */
+  @Setup
+  public void setUp() {
+    countSolutions = Engine.workload("countWith", backend, size, max);
+    create = Engine.workload("createWith", backend, size, max);
+  }
+
+  /**
+   * Counts the solutions of a layout, up to two.
+   * @return the number found.
+   */
+  @Benchmark
+  public int countSolutions() {
+    return countSolutions.getAsInt();
+  }
+
+  /**
+   * Sets a solver up for a layout.
+   * @return the solver.
+   */
+  @Benchmark
+  public Object create() {
+    return create.get();
+  }
+}
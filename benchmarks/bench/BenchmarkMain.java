@@ -0,0 +1,42 @@
+package bench;
+
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.ChainedOptionsBuilder;
+import org.openjdk.jmh.runner.options.CommandLineOptionException;
+import org.openjdk.jmh.runner.options.CommandLineOptions;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Runs the benchmarks with JMH's usual command line, always adding the gc
+ * profiler so every result comes with its allocation rate.
+ * @author starp
+ *
+ */
+public final class BenchmarkMain {
+  /**
+   * Not used; the benchmarks are run from {@link #main}.
+   */
+  private BenchmarkMain() {
+  }
+
+  /**
+   * Runs the benchmarks.
+   * @param args    JMH options, such as a pattern of benchmarks to run.
+   * @throws CommandLineOptionException if the options can't be read.
+   * @throws RunnerException if a benchmark fails.
+   */
+  public static void main(String[] args)
+      throws CommandLineOptionException, RunnerException {
+    CommandLineOptions commandLine = new CommandLineOptions(args);
+    ChainedOptionsBuilder options = new OptionsBuilder().parent(commandLine);
+    boolean profiled = commandLine.getProfilers().stream()
+        .anyMatch(profiler -> profiler.getKlass().equals("gc")
+                  || profiler.getKlass().equals(GCProfiler.class.getName()));
+    if (!profiled) {
+      options.addProfiler(GCProfiler.class);
+    }
+    new Runner(options.build()).run();
+  }
+}
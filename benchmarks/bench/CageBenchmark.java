@@ -0,0 +1,77 @@
+package bench;
+
+import java.util.concurrent.TimeUnit;
+import java.util.function.IntSupplier;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures checking whether a full cage reaches its target for each
+ * operator, as every cage's completedCorrectly does, and whether a half
+ * filled one still can.
+ * @author starp
+ *
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class CageBenchmark {
+  /**
+   * The cages' operator.
+   */
+  @Param({"ADD", "MINUS", "TIMES", "DIVIDE"})
+  public String operator;
+  /**
+   * Number of cells in each cage.
+   */
+  @Param({"2", "4"})
+  public int length;
+  /**
+   * Checks one cage per call.
+   */
+  private IntSupplier evaluate;
+  /**
+   * Checks one half filled cage per call.
+   */
+  private IntSupplier reach;
+
+  /**
+   * Looks up the workload.
+   */
+  @Setup
+  public void setUp() {
+    evaluate = Engine.workload("evaluate", operator, length, 9);
+    reach = Engine.workload("reach", operator, length, 9);
+  }
+
+  /**
+   * Checks a cage.
+   * @return 1 if it was correct.
+   */
+  @Benchmark
+  public int completedCorrectly() {
+    return evaluate.getAsInt();
+  }
+
+  /**
+   * Checks a half filled cage.
+   * @return 1 if it can still be finished.
+   */
+  @Benchmark
+  public int canReach() {
+    return reach.getAsInt();
+  }
+}
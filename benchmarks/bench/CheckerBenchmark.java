@@ -0,0 +1,78 @@
+package bench;
+
+import java.util.concurrent.TimeUnit;
+import java.util.function.IntSupplier;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures the mistake checks on full and partly filled grids: checking
+ * every line and cage from scratch, and checking after a single cell
+ * changes. The game's mistake checker runs these on the checker core and
+ * then highlights the results.
+ * @author starp
+ *
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class CheckerBenchmark {
+  /**
+   * Number of columns/rows.
+   */
+  @Param({"6", "9", "16"})
+  public int size;
+  /**
+   * Fraction of the cells holding their number.
+   */
+  @Param({"1.0", "0.5"})
+  public double filled;
+  /**
+   * Checks the whole grid per call.
+   */
+  private IntSupplier checkGrid;
+  /**
+   * Changes and checks one cell per call.
+   */
+  private IntSupplier changeCell;
+
+  /**
+   * Looks up the workloads.
+   */
+  @Setup
+  public void setUp() {
+    checkGrid = Engine.workload("checkGrid", size, filled);
+    changeCell = Engine.workload("changeCell", size, filled);
+  }
+
+  /**
+   * Checks every line and cage of the grid.
+   * @return the number of problems found.
+   */
+  @Benchmark
+  public int checkMistakes() {
+    return checkGrid.getAsInt();
+  }
+
+  /**
+   * Changes one cell and checks its lines and cage.
+   * @return the number of problems found.
+   */
+  @Benchmark
+  public int cellChanged() {
+    return changeCell.getAsInt();
+  }
+}
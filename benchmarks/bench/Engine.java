@@ -0,0 +1,44 @@
+package bench;
+
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+
+/**
+ * Reaches the workloads, which live in the default package with the rest
+ * of the game and so can only be found by name.
+ * @author starp
+ *
+ */
+final class Engine {
+  /**
+   * Not used; workloads are looked up by {@link #workload}.
+   */
+  private Engine() {
+  }
+
+  /**
+   * Calls one of the static methods of the workloads class.
+   * @param <T>     the kind of workload it returns.
+   * @param name    the method's name.
+   * @param args    its arguments, boxed.
+   * @return the workload.
+   */
+  @SuppressWarnings("unchecked")
+  static <T> T workload(String name, Object... args) {
+    try {
+      for (Method method : Class.forName("Workloads").getMethods()) {
+        if (method.getName().equals(name)
+            && method.getParameterCount() == args.length) {
+          return (T) method.invoke(null, args);
+        }
+      }
+      throw new IllegalArgumentException("No workload called " + name);
+    }
+    catch (ClassNotFoundException | IllegalAccessException e) {
+      throw new IllegalStateException(e);
+    }
+    catch (InvocationTargetException e) {
+      throw new IllegalStateException(e.getCause());
+    }
+  }
+}
@@ -0,0 +1,67 @@
+package bench;
+
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures generating a puzzle for each grid size and largest cage, with
+ * and without repairing it until its solution is unique.
+ * @author starp
+ *
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class GeneratorBenchmark {
+  /**
+   * Number of columns/rows.
+   */
+  @Param({"4", "6", "9", "12"})
+  public int size;
+  /**
+   * Maximum size of one cage.
+   */
+  @Param({"2", "3", "4"})
+  public int max;
+  /**
+   * Whether the puzzle must have a unique solution.
+   */
+  @Param({"false", "true"})
+  public boolean unique;
+  /**
+   * Makes one puzzle per call.
+   */
+  private Supplier<Object> generate;
+
+  /**
+   * Looks up the workload.
+   */
+  @Setup
+  public void setUp() {
+    generate = Engine.workload("generate", size, max, unique);
+  }
+
+  /**
+   * Generates a puzzle.
+   * @return the puzzle, so it isn't optimised away.
+   */
+  @Benchmark
+  public Object createGameData() {
+    return generate.get();
+  }
+}
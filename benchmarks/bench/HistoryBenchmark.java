@@ -0,0 +1,77 @@
+package bench;
+
+import java.util.concurrent.TimeUnit;
+import java.util.function.IntSupplier;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures recording moves and undoing and redoing them on a full
+ * history. The game's history shows these moves on the grid's cells.
+ * @author starp
+ *
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class HistoryBenchmark {
+  /**
+   * Number of columns/rows.
+   */
+  @Param({"9", "32"})
+  public int size;
+  /**
+   * Number of cells each undone and redone action changes: one for a
+   * number entered, more for clearing the grid.
+   */
+  @Param({"1", "64"})
+  public int cellsPerMove;
+  /**
+   * Records one move per call.
+   */
+  private IntSupplier recordChange;
+  /**
+   * Undoes and redoes one action per call.
+   */
+  private IntSupplier undoRedo;
+
+  /**
+   * Looks up the workloads.
+   */
+  @Setup
+  public void setUp() {
+    recordChange = Engine.workload("recordChange", size);
+    undoRedo = Engine.workload("undoRedo", size, cellsPerMove);
+  }
+
+  /**
+   * Records a number entered into a cell.
+   * @return the cell changed.
+   */
+  @Benchmark
+  public int addHistory() {
+    return recordChange.getAsInt();
+  }
+
+  /**
+   * Undoes the last action then redoes it.
+   * @return the number of cells changed.
+   */
+  @Benchmark
+  public int undoRedo() {
+    return undoRedo.getAsInt();
+  }
+}
@@ -0,0 +1,72 @@
+package bench;
+
+import java.util.concurrent.TimeUnit;
+import java.util.function.IntSupplier;
+import java.util.function.Supplier;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures reading puzzles in the text format: a single puzzle as the file
+ * loader parses it, and a pack of puzzles through the pack reader.
+ * @author starp
+ *
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class LoaderBenchmark {
+  /**
+   * Number of columns/rows.
+   */
+  @Param({"6", "9", "16"})
+  public int size;
+  /**
+   * Parses one puzzle per call.
+   */
+  private Supplier<Object> parse;
+  /**
+   * Reads a pack of 100 puzzles per call.
+   */
+  private IntSupplier readPack;
+
+  /**
+   * Looks up the workloads.
+   */
+  @Setup
+  public void setUp() {
+    parse = Engine.workload("parse", size);
+    readPack = Engine.workload("readPack", size, 100);
+  }
+
+  /**
+   * Parses a single puzzle.
+   * @return the puzzle.
+   */
+  @Benchmark
+  public Object parse() {
+    return parse.get();
+  }
+
+  /**
+   * Reads a pack of 100 puzzles.
+   * @return the number of puzzles read.
+   */
+  @Benchmark
+  public int readPack() {
+    return readPack.getAsInt();
+  }
+}
@@ -0,0 +1,63 @@
+package bench;
+
+import java.util.concurrent.TimeUnit;
+import java.util.function.IntSupplier;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures rubbing out the pencil marks a number rules out in its row,
+ * column and cage when it is placed, on grids where every empty cell has
+ * every number noted.
+ * @author starp
+ *
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class PencilMarkBenchmark {
+  /**
+   * Number of columns/rows.
+   */
+  @Param({"6", "9", "16"})
+  public int size;
+  /**
+   * Fraction of the cells holding their number.
+   */
+  @Param({"0.0", "0.5"})
+  public double filled;
+  /**
+   * Places one number per call.
+   */
+  private IntSupplier eliminateMarks;
+
+  /**
+   * Looks up the workload.
+   */
+  @Setup
+  public void setUp() {
+    eliminateMarks = Engine.workload("eliminateMarks", size, filled);
+  }
+
+  /**
+   * Places a number and rubs out the marks it rules out.
+   * @return the number of cells whose marks changed.
+   */
+  @Benchmark
+  public int placeNumber() {
+    return eliminateMarks.getAsInt();
+  }
+}
@@ -0,0 +1,80 @@
+package bench;
+
+import java.util.concurrent.TimeUnit;
+import java.util.function.IntSupplier;
+import java.util.function.Supplier;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures how the solver scales with the number of threads it splits its
+ * search over, counting solutions as the uniqueness check does and finding
+ * a single one. Comparing a row with the one thread row for the same size
+ * gives the speed up; rows with more threads than the machine has cores
+ * only show the cost of splitting.
+ * @author starp
+ *
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class SolverBenchmark {
+  /**
+   * Number of columns/rows.
+   */
+  @Param({"9", "12", "16"})
+  public int size;
+  /**
+   * Number of threads the solver uses.
+   */
+  @Param({"1", "2", "4", "8", "16"})
+  public int threads;
+  /**
+   * Counts the solutions of one layout per call.
+   */
+  private IntSupplier countSolutions;
+  /**
+   * Solves one layout per call.
+   */
+  private Supplier<Object> solve;
+
+  /**
+   * Looks up the workloads.
+   */
+  @Setup
+  public void setUp() {
+    countSolutions = Engine.workload("countSolutions", size, threads);
+    solve = Engine.workload("solve", size, threads);
+  }
+
+  /**
+   * Counts the solutions of a layout, up to two.
+   * @return the number found.
+   */
+  @Benchmark
+  public int countSolutions() {
+    return countSolutions.getAsInt();
+  }
+
+  /**
+   * Finds one solution of a layout.
+   * @return the solution.
+   */
+  @Benchmark
+  public Object solve() {
+    return solve.get();
+  }
+}
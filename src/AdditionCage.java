@@ -1,4 +1,5 @@
 import javafx.scene.layout.Pane;
+import javafx.scene.shape.Shape;
 
 /**
  * Cage which will perform the addition operation on the cells.
@@ -15,6 +16,19 @@ public class AdditionCage extends Cage {
     super(cells, paneToDraw, target);
   }
   
+  /**
+   * Calls the parent constructor with an outline that has already been
+   * traced.
+   * @param cells         the cells that make up the cage.
+   * @param paneToDraw    the pane where the cage will be drawn.
+   * @param target        the target number.
+   * @param outline       the border of the cells.
+   */
+  public AdditionCage(GCell[] cells, Pane paneToDraw, int target, 
+                      Shape outline) {
+    super(cells, paneToDraw, target, outline);
+  }
+  
   /**
    * Creates and positions the label with the + sign.
    * @param target        the number that will be written by using the 
@@ -26,17 +40,12 @@ public class AdditionCage extends Cage {
     super.createTargetLabel("+", target, paneToDraw);
   }
   
-  /** 
-   * Returns true if the cells have been filled in correctly. 
+  /**
+   * The numbers of the cells are added together.
+   * @return {@link Operations#ADD}
    */
   @Override
-  protected boolean completedCorrectly() {
-    int sum = 0;
-    /** Sums together the contents of the cells. */
-    for (GCell cell : cells) {
-      sum += cell.getContent();
-    }
-    
-    return sum == target;
+  protected Operations getOperator() {
+    return Operations.ADD;
   }
 }
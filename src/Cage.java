@@ -1,5 +1,6 @@
 
 import java.util.ArrayList;
+import java.util.List;
 
 import javafx.scene.control.Label;
 import javafx.scene.layout.Pane;
@@ -19,6 +20,10 @@ public class Cage {
    * The target number that must be reached. 
    */
   protected int target;
+  /**
+   * The numbers of the cells, filled in each time the cage is checked.
+   */
+  private int[] numbers;
   /**
    * The shape of the cage.
    */
@@ -44,26 +49,24 @@ public class Cage {
    * @param paneToDraw  the pane where the rectangle will be added to.
    */
   public Cage(GCell[] cellArray, Pane paneToDraw, int target) {
-    ArrayList<Coordinate> coordinates = new ArrayList<Coordinate>();
+    this(cellArray, paneToDraw, target, CageOutline.trace(cellArray));
+  }
+  
+  /**
+   * Creates a cage whose outline has already been traced, such as by
+   * {@link CageOutline#traceAll} for every cage of a puzzle at once.
+   * @param cellArray   contains cells that are encaged.
+   * @param paneToDraw  the pane where the outline will be added to.
+   * @param target      the target number that must be reached.
+   * @param outline     the border of the cells.
+   */
+  public Cage(GCell[] cellArray, Pane paneToDraw, int target, 
+              Shape outline) {
     cells = cellArray;
     this.target = target;
+    numbers = new int[cellArray.length];
     
-    /** Loops through the cell array and find the cage's vertices. */
-    for (GCell cell : cellArray) {
-      /** Cage vertices will be made up of cell vertices. */
-      for (Coordinate cellCoordinate: cell.getCoordinate()) {
-        /** Cage vertices will be shared by 0 or 3 cells. */
-        if (coordinates.contains(cellCoordinate)) {
-            /** Remove vertices that is found an even no. time. */
-            coordinates.remove(cellCoordinate);
-        }
-        else {
-            coordinates.add(cellCoordinate);
-        }
-      }
-    }
-      
-    drawCage(paneToDraw);
+    drawCage(paneToDraw, outline);
     createTargetLabel(target, paneToDraw);
   }
       
@@ -88,20 +91,18 @@ public class Cage {
   }
   
   /**
-   * Draws the grid by combining together shapes, and adding a border.
+   * Draws the border of the cage.
    * @param drawPane     the pane that the lines will be added to.
+   * @param outline      the border of the cells.
    */
-  protected void drawCage(Pane drawPane) {
-    cage = cells[0];
-    /** Adds the cells of the cage to the composite shape. */
-    for (GCell gCell : cells) {
-      cage = Shape.union(cage, gCell);
-    }
+  protected void drawCage(Pane drawPane, Shape outline) {
+    cage = outline;
     cage.setFill(Color.TRANSPARENT);
     cage.setStroke(Color.BLACK);
     /** So that the cells underneath the cage can detect clicks. */
     cage.setMouseTransparent(true);
-    cage.setStrokeWidth(6);
+    /** Thinner borders so small cells on large grids stay visible. */
+    cage.setStrokeWidth(Math.min(6, cells[0].getWidth() / 8));
     drawPane.getChildren().add(cage);      
   }
   
@@ -146,7 +147,7 @@ public class Cage {
     Coordinate location = cells[0].getCoordinate()[0];
     operatorLabel.setTranslateX(location.getX() + 5);
     operatorLabel.setTranslateY(location.getY() + 5);
-    operatorLabel.setFont(new Font(16));
+    operatorLabel.setFont(new Font(Math.min(16, cells[0].getWidth() / 3)));
   }      
   
   /** 
@@ -175,7 +176,70 @@ public class Cage {
    *         target.
    */
   protected boolean completedCorrectly() {
-	  return cells[0].getContent() == target;
+    for (int index = 0; index < cells.length; index++) {
+      numbers[index] = cells[index].getContent();
+    }
+    return CageEvaluator.isSatisfied(getOperator(), target, numbers, 
+                                     cells.length);
+  }
+  
+  /**
+   * Checks whether the cells can still reach the target once the empty
+   * ones are filled.
+   * @param size    the largest number a cell can hold.
+   * @return false if the cage is wrong however its empty cells are filled.
+   */
+  protected boolean canStillReach(int size) {
+    for (int index = 0; index < cells.length; index++) {
+      numbers[index] = cells[index].getContent();
+    }
+    return CageEvaluator.canReach(getOperator(), target, numbers,
+                                  cells.length, size);
+  }
+
+  /**
+   * The operation applied to the numbers of the cells. A plain cage has 
+   * none, so its single cell must hold the target.
+   * @return {@link Operations#NONE}
+   */
+  protected Operations getOperator() {
+    return Operations.NONE;
+  }
+  
+  /**
+   * Accessor for the target number.
+   * @return {@link #target}
+   */
+  public int getTarget() {
+    return target;
+  }
+  
+  /**
+   * Describes cages on screen as a puzzle, so it can be checked or solved
+   * without them.
+   * @param cages   the cages on the grid.
+   * @param type    number of columns/rows in the grid.
+   * @return the puzzle's size and cages.
+   */
+  public static GameData describe(List<Cage> cages, int type) {
+    GameData gameData = new GameData();
+    gameData.setSize(type);
+    List<ArrayList<Integer>> cageCells = new ArrayList<ArrayList<Integer>>();
+    List<Operations> operators = new ArrayList<Operations>();
+    List<Integer> targets = new ArrayList<Integer>();
+    for (Cage cage : cages) {
+      ArrayList<Integer> cells = new ArrayList<Integer>();
+      for (GCell cell : cage.cells) {
+        cells.add(cell.getColumn() * type + cell.getRow() + 1);
+      }
+      cageCells.add(cells);
+      operators.add(cage.getOperator());
+      targets.add(cage.getTarget());
+    }
+    gameData.setCages(cageCells);
+    gameData.setOperators(operators);
+    gameData.setTargets(targets);
+    return gameData;
   }
   
   /**
@@ -0,0 +1,410 @@
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.CancellationException;
+
+/**
+ * Lists the tuples of numbers that satisfy a cage, ignoring the rest of the
+ * grid. A cage is described by its operator, target, the grid size and its
+ * shape: for each cell, which earlier cells share its row or column. Cages
+ * with the same description have the same tuples, so each is enumerated
+ * once and kept in a cache shared between games. The least recently used
+ * entries are dropped once the cache uses more than its memory budget.
+ * @author starp
+ *
+ */
+public class CageCombinations {
+  /**
+   * Cages whose tuples take up more entries than this are not listed.
+   */
+  public static final int TABLE_LIMIT = 1 << 15;
+  /**
+   * Cages that take more steps than this to enumerate are not listed
+   * either, however few tuples they have.
+   */
+  public static final int NODE_LIMIT = 1 << 20;
+  /**
+   * Enumeration checks whether its thread has been interrupted each time
+   * this many steps have been taken, less one.
+   */
+  private static final int INTERRUPT_MASK = (1 << 12) - 1;
+  /**
+   * Memory budget of the cache shared by every solver, in bytes.
+   */
+  public static final long SHAREDBUDGET = 16L << 20;
+  /**
+   * Rough number of bytes an entry takes besides its arrays.
+   */
+  private static final int ENTRYOVERHEAD = 96;
+  /**
+   * Stands in for the tuples of cages that have too many to list.
+   */
+  private static final int[] OVERFLOW = new int[0];
+  /**
+   * The cache used unless a solver is given another.
+   */
+  private static final CageCombinations SHARED =
+      new CageCombinations(SHAREDBUDGET);
+  /**
+   * The cached tuples, least recently used first.
+   */
+  private final LinkedHashMap<Key, int[]> cache =
+      new LinkedHashMap<Key, int[]>(64, 0.75f, true);
+  /**
+   * Most bytes the cache may use.
+   */
+  private final long budget;
+  /**
+   * Rough number of bytes the cache uses.
+   */
+  private long bytes = 0;
+  /**
+   * Number of lookups found in the cache.
+   */
+  private long hits = 0;
+  /**
+   * Number of lookups that had to be enumerated.
+   */
+  private long misses = 0;
+  /**
+   * Number of entries dropped to stay within the budget.
+   */
+  private long evictions = 0;
+
+  /**
+   * Creates an empty cache.
+   * @param budget    most bytes the cache may use.
+   */
+  public CageCombinations(long budget) {
+    this.budget = budget;
+  }
+
+  /**
+   * Accessor for the cache shared by every solver.
+   * @return {@link #SHARED}
+   */
+  public static CageCombinations getShared() {
+    return SHARED;
+  }
+
+  /**
+   * Returns the valid tuples of a cage, enumerating them if they aren't
+   * cached. The returned array is shared and must not be changed.
+   * @param operator    the cage's operator.
+   * @param target      the cage's target.
+   * @param size        number of columns/rows in the grid.
+   * @param peers       for each cell of the cage, a mask of the earlier
+   *                    cells sharing its row or column.
+   * @param length      number of cells in the cage.
+   * @return each tuple as length masks with the bit of one number set, one
+   *         tuple after another, or null if there are too many tuples or
+   *         they take too long to find.
+   * @throws CancellationException if the thread is interrupted.
+   */
+  public int[] getTuples(Operations operator, int target, int size,
+                         int[] peers, int length) {
+    if (length > 32) {
+      return null;
+    }
+    Key key = new Key(operator, target, size, peers, length);
+    int[] tuples;
+    synchronized (this) {
+      tuples = cache.get(key);
+      if (tuples != null) {
+        hits++;
+      }
+      else {
+        misses++;
+      }
+    }
+
+    /** Enumerates outside the lock so other threads aren't held up. */
+    if (tuples == null) {
+      tuples = new Enumeration(operator, target, size, peers, length).run();
+      store(key, tuples);
+    }
+    return tuples == OVERFLOW ? null : tuples;
+  }
+
+  /**
+   * Adds an entry, dropping the least recently used ones if the cache goes
+   * over its budget.
+   * @param key       the cage's description.
+   * @param tuples    the cage's tuples.
+   */
+  private synchronized void store(Key key, int[] tuples) {
+    int[] old = cache.put(key, tuples);
+    if (old != null) {
+      bytes -= sizeOf(key, old);
+    }
+    bytes += sizeOf(key, tuples);
+
+    Iterator<Map.Entry<Key, int[]>> entries = cache.entrySet().iterator();
+    while (bytes > budget && entries.hasNext()) {
+      Map.Entry<Key, int[]> eldest = entries.next();
+      bytes -= sizeOf(eldest.getKey(), eldest.getValue());
+      entries.remove();
+      evictions++;
+    }
+  }
+
+  /**
+   * Works out roughly how many bytes an entry takes.
+   * @param key       the entry's key.
+   * @param tuples    the entry's tuples.
+   * @return the number of bytes.
+   */
+  private static long sizeOf(Key key, int[] tuples) {
+    return ENTRYOVERHEAD + 4L * (key.parts.length + tuples.length);
+  }
+
+  /**
+   * Accessor for the number of lookups found in the cache.
+   * @return {@link #hits}
+   */
+  public synchronized long getHits() {
+    return hits;
+  }
+
+  /**
+   * Accessor for the number of lookups that had to be enumerated.
+   * @return {@link #misses}
+   */
+  public synchronized long getMisses() {
+    return misses;
+  }
+
+  /**
+   * Accessor for the number of entries dropped to stay in budget.
+   * @return {@link #evictions}
+   */
+  public synchronized long getEvictions() {
+    return evictions;
+  }
+
+  /**
+   * Accessor for roughly how many bytes the cache uses.
+   * @return {@link #bytes}
+   */
+  public synchronized long getBytes() {
+    return bytes;
+  }
+
+  /**
+   * Returns the number of cages in the cache.
+   * @return the number of entries.
+   */
+  public synchronized int getEntries() {
+    return cache.size();
+  }
+
+  /**
+   * Empties the cache and resets the counters.
+   */
+  public synchronized void clear() {
+    cache.clear();
+    bytes = 0;
+    hits = 0;
+    misses = 0;
+    evictions = 0;
+  }
+
+  /**
+   * Summarises the counters.
+   * @return the counters as a single line.
+   */
+  @Override
+  public synchronized String toString() {
+    return String.format(
+        "entries: %d, bytes: %d, hits: %d, misses: %d, evictions: %d",
+        cache.size(), bytes, hits, misses, evictions);
+  }
+
+  /**
+   * Describes a cage as a single array of ints so it can be hashed.
+   * @author starp
+   *
+   */
+  private static final class Key {
+    /**
+     * Operator, target, size, then the peers of each cell.
+     */
+    private final int[] parts;
+    /**
+     * Cached hash of the parts.
+     */
+    private final int hash;
+
+    /**
+     * Packs the description of a cage.
+     * @param operator    the cage's operator.
+     * @param target      the cage's target.
+     * @param size        number of columns/rows in the grid.
+     * @param peers       the earlier cells sharing each cell's row/column.
+     * @param length      number of cells in the cage.
+     */
+    private Key(Operations operator, int target, int size, int[] peers,
+                int length) {
+      parts = new int[length + 3];
+      parts[0] = operator.ordinal();
+      parts[1] = target;
+      parts[2] = size;
+      System.arraycopy(peers, 0, parts, 3, length);
+      hash = Arrays.hashCode(parts);
+    }
+
+    @Override
+    public int hashCode() {
+      return hash;
+    }
+
+    @Override
+    public boolean equals(Object other) {
+      return other instanceof Key && Arrays.equals(parts, ((Key) other).parts);
+    }
+  }
+
+  /**
+   * Enumerates the tuples of one cage, cutting off partial tuples that can
+   * no longer reach the target.
+   * @author starp
+   *
+   */
+  private static final class Enumeration {
+    /**
+     * The cage's operator.
+     */
+    private final Operations operator;
+    /**
+     * The cage's target.
+     */
+    private final int target;
+    /**
+     * Number of columns/rows in the grid.
+     */
+    private final int size;
+    /**
+     * The earlier cells sharing each cell's row/column.
+     */
+    private final int[] peers;
+    /**
+     * Number of cells in the cage.
+     */
+    private final int length;
+    /**
+     * The tuple being filled in.
+     */
+    private final int[] tuple;
+    /**
+     * Tuples found so far, as bits.
+     */
+    private int[] found;
+    /**
+     * Number of entries used in {@link #found}.
+     */
+    private int foundSize = 0;
+    /**
+     * Set when the tuples won't fit in {@link #TABLE_LIMIT} or take more
+     * than {@link #NODE_LIMIT} steps to find.
+     */
+    private boolean overflow = false;
+    /**
+     * Number of steps taken so far.
+     */
+    private int nodes = 0;
+
+    /**
+     * Prepares to enumerate a cage.
+     * @param operator    the cage's operator.
+     * @param target      the cage's target.
+     * @param size        number of columns/rows in the grid.
+     * @param peers       the earlier cells sharing each cell's row/column.
+     * @param length      number of cells in the cage.
+     */
+    private Enumeration(Operations operator, int target, int size,
+                        int[] peers, int length) {
+      this.operator = operator;
+      this.target = target;
+      this.size = size;
+      this.peers = peers;
+      this.length = length;
+      tuple = new int[length];
+      found = new int[Math.max(16, length * 4)];
+    }
+
+    /**
+     * Enumerates every tuple.
+     * @return the tuples as bits, or {@link #OVERFLOW} if there are too
+     *         many.
+     * @throws CancellationException if the thread is interrupted.
+     */
+    private int[] run() {
+      enumerate(0);
+      return overflow ? OVERFLOW : Arrays.copyOf(found, foundSize);
+    }
+
+    /**
+     * Fills in one position of the tuple at a time. The positions after it
+     * are left as 0, so the partial tuple can be checked as a partly
+     * filled cage.
+     * @param position    the position being filled.
+     * @throws CancellationException if the thread is interrupted.
+     */
+    private void enumerate(int position) {
+      if (++nodes > NODE_LIMIT) {
+        overflow = true;
+        return;
+      }
+      if ((nodes & INTERRUPT_MASK) == 0
+          && Thread.currentThread().isInterrupted()) {
+        throw new CancellationException("The enumeration was interrupted");
+      }
+      if (position == length) {
+        if (CageEvaluator.isSatisfied(operator, target, tuple, length)) {
+          record();
+        }
+        return;
+      }
+
+      /** Cuts off tuples that can no longer reach the target. */
+      if (!CageEvaluator.canReach(operator, target, tuple, length, size)) {
+        return;
+      }
+
+      /** Removes numbers already used by a cell in the same row/column. */
+      int candidates = size == 32 ? -1 : (1 << size) - 1;
+      int mask = peers[position];
+      while (mask != 0) {
+        int peer = Integer.numberOfTrailingZeros(mask);
+        mask &= mask - 1;
+        candidates &= ~(1 << (tuple[peer] - 1));
+      }
+
+      while (candidates != 0 && !overflow) {
+        int bit = candidates & -candidates;
+        candidates ^= bit;
+        int number = Integer.numberOfTrailingZeros(bit) + 1;
+        tuple[position] = number;
+        enumerate(position + 1);
+      }
+      tuple[position] = 0;
+    }
+
+    /**
+     * Appends the current tuple to {@link #found}.
+     */
+    private void record() {
+      if (foundSize + length > TABLE_LIMIT) {
+        overflow = true;
+        return;
+      }
+      if (foundSize + length > found.length) {
+        found = Arrays.copyOf(found, Math.min(TABLE_LIMIT, found.length * 2));
+      }
+      for (int position = 0; position < length; position++) {
+        found[foundSize++] = 1 << (tuple[position] - 1);
+      }
+    }
+  }
+}
@@ -0,0 +1,268 @@
+/**
+ * Decides whether the numbers in a cage reach its target, or can still
+ * reach it once its empty cells are filled. This is the one place the
+ * rules of each operator are written down; the cages on screen, the
+ * checker and the solver all ask it. Numbers are passed in an int array
+ * with empty cells as 0, and nothing is allocated.
+ * @author starp
+ *
+ */
+public final class CageEvaluator {
+  /**
+   * Only has static methods.
+   */
+  private CageEvaluator() {
+  }
+
+  /**
+   * Checks whether the numbers of a cage reach its target. The numbers may
+   * be in any order.
+   * @param operator    the cage's operator.
+   * @param target      the cage's target.
+   * @param numbers     the numbers in the cage, 0 for an empty cell.
+   * @param length      how many numbers there are.
+   * @return true if the numbers reach the target.
+   */
+  public static boolean isSatisfied(Operations operator, int target,
+                                    int[] numbers, int length) {
+    int sum = 0;
+    int max = 0;
+    long product = 1;
+    boolean hasEmpty = false;
+    for (int index = 0; index < length; index++) {
+      hasEmpty |= numbers[index] == 0;
+      sum += numbers[index];
+      /** Stops growing once it can't be a target, so it can't overflow. */
+      if (product <= Integer.MAX_VALUE) {
+        product *= numbers[index];
+      }
+      max = Math.max(max, numbers[index]);
+    }
+
+    switch (operator) {
+      case ADD:
+        return sum == target;
+      case MINUS:
+        /** The largest number minus all of the others. */
+        return 2 * max - sum == target;
+      case TIMES:
+        /** Targets that aren't positive can't be a product of numbers. */
+        return target > 0 && product == target;
+      case DIVIDE:
+        /** An empty cell would be a division by zero. */
+        if (hasEmpty) {
+          return false;
+        }
+        /** Divides the largest number by each of the others in turn. */
+        int divided = max;
+        boolean skippedMax = false;
+        for (int index = 0; index < length; index++) {
+          if (numbers[index] == max && !skippedMax) {
+            skippedMax = true;
+          }
+          else if (max % numbers[index] != 0) {
+            return false;
+          }
+          else {
+            divided /= numbers[index];
+          }
+        }
+        return divided == target;
+      default:
+        return numbers[0] == target;
+    }
+  }
+
+  /**
+   * Checks whether a partly filled cage can still reach its target, if its
+   * empty cells are given numbers from 1 to size. Whether those numbers
+   * would clash with their rows and columns isn't considered. A full cage
+   * can only be reached if it is satisfied.
+   * @param operator    the cage's operator.
+   * @param target      the cage's target.
+   * @param numbers     the numbers in the cage, 0 for an empty cell.
+   * @param length      how many numbers there are.
+   * @param size        the largest number an empty cell can be given.
+   * @return true if some way of filling the empty cells reaches the target.
+   */
+  public static boolean canReach(Operations operator, int target,
+                                 int[] numbers, int length, int size) {
+    int sum = 0;
+    int max = 0;
+    int empty = 0;
+    for (int index = 0; index < length; index++) {
+      if (numbers[index] == 0) {
+        empty++;
+      }
+      sum += numbers[index];
+      max = Math.max(max, numbers[index]);
+    }
+    if (empty == 0) {
+      return isSatisfied(operator, target, numbers, length);
+    }
+
+    switch (operator) {
+      case ADD:
+        return target >= sum + empty && target <= sum + empty * size;
+      case MINUS:
+        return canSubtract(target, sum, max, empty, size);
+      case TIMES:
+        if (target <= 0) {
+          return false;
+        }
+        long product = 1;
+        for (int index = 0; index < length && product <= target; index++) {
+          if (numbers[index] != 0) {
+            product *= numbers[index];
+          }
+        }
+        return target % product == 0
+               && canFactor(target / product, empty, 2, size);
+      case DIVIDE:
+        return canDivide(target, numbers, length, max, empty, size);
+      default:
+        return target >= 1 && target <= size;
+    }
+  }
+
+  /**
+   * Checks whether a subtraction cage can still reach its target, trying
+   * each number that could end up as its largest.
+   * @param target    the cage's target.
+   * @param sum       sum of the numbers placed so far.
+   * @param max       largest number placed so far, or 0.
+   * @param empty     number of empty cells, at least 1.
+   * @param size      the largest number an empty cell can be given.
+   * @return true if the target can be reached.
+   */
+  private static boolean canSubtract(int target, int sum, int max, int empty,
+                                     int size) {
+    for (int largest = Math.max(max, 1); largest <= size; largest++) {
+      /** The others must add up to the largest less the target. */
+      int others = largest - target;
+      int free;
+      int rest;
+      if (largest == max) {
+        /** A placed number is the largest. */
+        rest = others - (sum - largest);
+        free = empty;
+      }
+      else {
+        /** One of the empty cells takes the largest number. */
+        rest = others - sum;
+        free = empty - 1;
+      }
+      if (rest >= free && rest <= free * largest) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  /**
+   * Checks whether a number is the product of a given count of numbers
+   * from 1 to size. Factors are tried in increasing order so each set of
+   * them is only tried once.
+   * @param remaining   the product still to be made.
+   * @param count       how many numbers make it.
+   * @param smallest    the smallest factor above 1 still allowed.
+   * @param size        the largest factor allowed.
+   * @return true if the product can be made.
+   */
+  private static boolean canFactor(long remaining, int count, int smallest,
+                                   int size) {
+    /** Any cells left over can be 1. */
+    if (remaining == 1) {
+      return true;
+    }
+    if (count == 0) {
+      return false;
+    }
+    if (count == 1) {
+      return remaining >= smallest && remaining <= size;
+    }
+    for (int factor = smallest; factor <= size && factor <= remaining;
+         factor++) {
+      if (remaining % factor == 0
+          && canFactor(remaining / factor, count - 1, factor, size)) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  /**
+   * Checks whether a division cage can still reach its target, trying
+   * each number that could end up as its largest. Every other number must
+   * divide the largest, so the empty cells can only take its divisors.
+   * @param target    the cage's target.
+   * @param numbers   the numbers in the cage, 0 for an empty cell.
+   * @param length    how many numbers there are.
+   * @param max       largest number placed so far, or 0.
+   * @param empty     number of empty cells, at least 1.
+   * @param size      the largest number an empty cell can be given.
+   * @return true if the target can be reached.
+   */
+  private static boolean canDivide(int target, int[] numbers, int length,
+                                   int max, int empty, int size) {
+    for (int largest = Math.max(max, 1); largest <= size; largest++) {
+      long divisor = 1;
+      boolean skippedMax = largest > max;
+      boolean divides = true;
+      for (int index = 0; index < length && divides; index++) {
+        int number = numbers[index];
+        if (number == 0) {
+          continue;
+        }
+        if (number == largest && !skippedMax) {
+          skippedMax = true;
+        }
+        else {
+          divides = largest % number == 0;
+          divisor *= number;
+        }
+      }
+      int free = largest > max ? empty - 1 : empty;
+      if (divides && canQuotient(largest, target, divisor, free, 2, size)) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  /**
+   * Checks whether dividing a number by a product and then by some more of
+   * its divisors can leave the target.
+   * @param largest     the number being divided.
+   * @param target      the result wanted.
+   * @param divisor     the product it has been divided by so far.
+   * @param count       how many more divisors there are.
+   * @param smallest    the smallest divisor still allowed.
+   * @param size        the largest divisor allowed.
+   * @return true if the target can be left.
+   */
+  private static boolean canQuotient(int largest, int target, long divisor,
+                                     int count, int smallest, int size) {
+    long quotient = largest / divisor;
+    /** Dividing further can only make the result smaller. */
+    if (quotient < target) {
+      return false;
+    }
+    /** Any cells left over can be 1. */
+    if (quotient == target) {
+      return true;
+    }
+    if (count == 0) {
+      return false;
+    }
+    for (int factor = smallest; factor <= Math.min(largest, size);
+         factor++) {
+      if (largest % factor == 0
+          && canQuotient(largest, target, divisor * factor, count - 1,
+                         factor, size)) {
+        return true;
+      }
+    }
+    return false;
+  }
+}
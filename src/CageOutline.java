@@ -0,0 +1,160 @@
+import java.util.Arrays;
+
+import javafx.scene.shape.ClosePath;
+import javafx.scene.shape.FillRule;
+import javafx.scene.shape.LineTo;
+import javafx.scene.shape.MoveTo;
+import javafx.scene.shape.Path;
+
+/**
+ * Works out the outlines of cages from which cells are next to each other.
+ * An edge between two cells of the same cage is inside it; every other
+ * edge is on its border. The border edges are traced into loops going
+ * round each cage with its inside on the right, so a cage surrounding
+ * another one gets a hole, and only the corners are added to the path.
+ * Every edge is looked at a fixed number of times, so tracing all of a
+ * puzzle's cages takes time linear in the number of cells.
+ * @author starp
+ *
+ */
+public class CageOutline {
+  /**
+   * Column step for heading east, south, west and north.
+   */
+  private static final int[] STEPX = {1, 0, -1, 0};
+  /**
+   * Row step for heading east, south, west and north.
+   */
+  private static final int[] STEPY = {0, 1, 0, -1};
+  /**
+   * Turns to try at each corner, in order: right, straight on, then left.
+   */
+  private static final int[] TURNS = {1, 0, 3};
+
+  /**
+   * Only has static methods.
+   */
+  private CageOutline() {
+  }
+
+  /**
+   * Traces the outline of a single cage from its cells.
+   * @param cells     the cells of the cage.
+   * @return the outline, in the same coordinates as the cells.
+   */
+  public static Path trace(GCell[] cells) {
+    /** Only the box around the cage needs to be looked at. */
+    int left = Integer.MAX_VALUE;
+    int top = Integer.MAX_VALUE;
+    int right = 0;
+    int bottom = 0;
+    for (GCell cell : cells) {
+      left = Math.min(left, cell.getRow());
+      right = Math.max(right, cell.getRow());
+      top = Math.min(top, cell.getColumn());
+      bottom = Math.max(bottom, cell.getColumn());
+    }
+    int columns = right - left + 1;
+    int rows = bottom - top + 1;
+    int[] cageOf = new int[columns * rows];
+    Arrays.fill(cageOf, -1);
+    for (GCell cell : cells) {
+      cageOf[(cell.getColumn() - top) * columns + cell.getRow() - left] = 0;
+    }
+
+    double width = cells[0].getWidth();
+    return traceAll(columns, rows, cageOf, 1, width, cells[0].getX()
+                    - (cells[0].getRow() - left) * width, cells[0].getY()
+                    - (cells[0].getColumn() - top) * width)[0];
+  }
+
+  /**
+   * Traces the outlines of every cage of a grid in one pass.
+   * @param columns     number of columns in the grid.
+   * @param rows        number of rows in the grid.
+   * @param cageOf      the cage of each cell, indexed by row * columns +
+   *                    column, or -1 for cells outside every cage.
+   * @param cageCount   number of cages.
+   * @param cellWidth   width and height of each cell.
+   * @param originX     x coordinate of the grid's top left corner.
+   * @param originY     y coordinate of the grid's top left corner.
+   * @return the outline of each cage, indexed by cage.
+   */
+  public static Path[] traceAll(int columns, int rows, int[] cageOf,
+                                int cageCount, double cellWidth,
+                                double originX, double originY) {
+    int stride = columns + 1;
+    /**
+     * The cage on the right of the border edge leaving each corner in each
+     * direction, plus 1, or 0 if there is no such edge.
+     */
+    int[] edges = new int[stride * (rows + 1) * 4];
+    for (int y = 0; y < rows; y++) {
+      for (int x = 0; x < columns; x++) {
+        int cage = cageOf[y * columns + x];
+        if (cage < 0) {
+          continue;
+        }
+        /** Each side of the cell not shared with its own cage. */
+        if (y == 0 || cageOf[(y - 1) * columns + x] != cage) {
+          edges[(y * stride + x) * 4] = cage + 1;
+        }
+        if (x == columns - 1 || cageOf[y * columns + x + 1] != cage) {
+          edges[(y * stride + x + 1) * 4 + 1] = cage + 1;
+        }
+        if (y == rows - 1 || cageOf[(y + 1) * columns + x] != cage) {
+          edges[((y + 1) * stride + x + 1) * 4 + 2] = cage + 1;
+        }
+        if (x == 0 || cageOf[y * columns + x - 1] != cage) {
+          edges[((y + 1) * stride + x) * 4 + 3] = cage + 1;
+        }
+      }
+    }
+
+    Path[] outlines = new Path[cageCount];
+    for (int cage = 0; cage < cageCount; cage++) {
+      outlines[cage] = new Path();
+      outlines[cage].setFillRule(FillRule.EVEN_ODD);
+    }
+
+    /** Follows each loop of border edges, removing edges as they're used. */
+    for (int start = 0; start < edges.length; start++) {
+      int cage = edges[start];
+      if (cage == 0) {
+        continue;
+      }
+      Path outline = outlines[cage - 1];
+      int corner = start / 4;
+      int direction = start % 4;
+      outline.getElements().add(
+          new MoveTo(originX + corner % stride * cellWidth,
+                     originY + corner / stride * cellWidth));
+
+      while (edges[corner * 4 + direction] == cage) {
+        edges[corner * 4 + direction] = 0;
+        corner += STEPY[direction] * stride + STEPX[direction];
+
+        /** Turns right if it can to keep to the cage, then goes on. */
+        int next = -1;
+        for (int turn : TURNS) {
+          int candidate = (direction + turn) % 4;
+          if (edges[corner * 4 + candidate] == cage) {
+            next = candidate;
+            break;
+          }
+        }
+        if (next != direction) {
+          outline.getElements().add(
+              new LineTo(originX + corner % stride * cellWidth,
+                         originY + corner / stride * cellWidth));
+        }
+        if (next < 0) {
+          break;
+        }
+        direction = next;
+      }
+      outline.getElements().add(new ClosePath());
+    }
+    return outlines;
+  }
+}
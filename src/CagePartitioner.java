@@ -0,0 +1,207 @@
+import java.util.Random;
+
+/**
+ * Splits the cells of a grid into cages. Cells are packed into ints as
+ * row * size + column, and each cage grows from a frontier of the free
+ * cells around it until it reaches a size drawn from a distribution. All of
+ * the arrays are allocated once, so drawing cages allocates nothing.
+ * @author starp
+ *
+ */
+public class CagePartitioner {
+  /**
+   * Chance that the default distribution grows a cage by another cell.
+   */
+  public static final double GROWTHCHANCE = 0.4;
+  /**
+   * Number of columns/rows.
+   */
+  private final int size;
+  /**
+   * Where the random numbers come from.
+   */
+  private final Random random;
+  /**
+   * Running total of the weight of each cage size; index 0 is for cages
+   * of 1 cell.
+   */
+  private double[] cumulativeWeights;
+  /**
+   * Free cells next to the cage being drawn.
+   */
+  private final int[] frontier;
+  /**
+   * The cage each cell was last added to the frontier of, plus 1.
+   */
+  private final int[] frontierStamps;
+  /**
+   * Counts the cages drawn so frontier stamps never need clearing.
+   */
+  private int stamp = 0;
+
+  /**
+   * Creates a partitioner with the default distribution of cage sizes.
+   * @param size      number of columns/rows.
+   * @param max       maximum number of cells in a cage.
+   * @param random    where the random numbers come from.
+   */
+  public CagePartitioner(int size, int max, Random random) {
+    this.size = size;
+    this.random = random;
+    /** Each cell can be in the frontier once per cage. */
+    frontier = new int[size * size];
+    frontierStamps = new int[size * size];
+    setSizeWeights(defaultWeights(max));
+  }
+
+  /**
+   * Returns the distribution the generator has always used: a cage has at
+   * least 2 cells and keeps growing with {@link #GROWTHCHANCE}, with any
+   * cage that would grow past the maximum stopped at it.
+   * @param max     maximum number of cells in a cage.
+   * @return the weight of each cage size, starting with 1 cell.
+   */
+  public static double[] defaultWeights(int max) {
+    double[] weights = new double[Math.max(1, max)];
+    if (max <= 1) {
+      weights[0] = 1;
+      return weights;
+    }
+    double chance = 1;
+    for (int cells = 2; cells < max; cells++) {
+      weights[cells - 1] = chance * (1 - GROWTHCHANCE);
+      chance *= GROWTHCHANCE;
+    }
+    weights[max - 1] = chance;
+    return weights;
+  }
+
+  /**
+   * Mutator for the distribution of cage sizes.
+   * @param weights   the relative chance of each cage size, starting with
+   *                  1 cell; the largest cage has as many cells as there
+   *                  are weights.
+   */
+  public void setSizeWeights(double[] weights) {
+    if (weights.length == 0) {
+      throw new IllegalArgumentException("No cage sizes given");
+    }
+    cumulativeWeights = new double[weights.length];
+    double total = 0;
+    for (int index = 0; index < weights.length; index++) {
+      if (weights[index] < 0) {
+        throw new IllegalArgumentException("Negative weight for cages of "
+                                           + (index + 1) + " cells");
+      }
+      total += weights[index];
+      cumulativeWeights[index] = total;
+    }
+    if (total <= 0) {
+      throw new IllegalArgumentException("Cage size weights are all zero");
+    }
+  }
+
+  /**
+   * Returns the largest cage the distribution can draw.
+   * @return the maximum number of cells in a cage.
+   */
+  public int getLargest() {
+    return cumulativeWeights.length;
+  }
+
+  /**
+   * Draws cages over every free cell, going through free cells in order
+   * and growing a cage from each one.
+   * @param cageOf      the cage of each cell, or -1 for cells still free;
+   *                    free cells are given the number of their new cage.
+   * @param firstCage   the number the first new cage will be given.
+   * @return the number after the last new cage.
+   */
+  public int partition(int[] cageOf, int firstCage) {
+    int cage = firstCage;
+    for (int cell = 0; cell < cageOf.length; cell++) {
+      if (cageOf[cell] < 0) {
+        growCage(cageOf, cell, cage, drawSize());
+        cage++;
+      }
+    }
+    return cage;
+  }
+
+  /**
+   * Picks a cage size from the distribution.
+   * @return the number of cells the cage should have.
+   */
+  private int drawSize() {
+    double total = cumulativeWeights[cumulativeWeights.length - 1];
+    double draw = random.nextDouble() * total;
+    for (int index = 0; index < cumulativeWeights.length; index++) {
+      if (draw < cumulativeWeights[index]) {
+        return index + 1;
+      }
+    }
+    return cumulativeWeights.length;
+  }
+
+  /**
+   * Grows a cage from a cell by adding a random free cell next to it until
+   * it is big enough or is surrounded.
+   * @param cageOf      the cage of each cell, or -1 for free cells.
+   * @param start       the cell the cage starts from.
+   * @param cage        the number of the cage.
+   * @param target      how many cells the cage should have.
+   */
+  private void growCage(int[] cageOf, int start, int cage, int target) {
+    stamp++;
+    int frontierSize = 0;
+    int cell = start;
+    int cells = 0;
+
+    while (true) {
+      cageOf[cell] = cage;
+      cells++;
+      if (cells >= target) {
+        return;
+      }
+
+      /** Adds the free neighbours of the new cell to the frontier. */
+      int row = cell / size;
+      int column = cell % size;
+      if (row > 0) {
+        frontierSize = addToFrontier(cageOf, cell - size, frontierSize);
+      }
+      if (row < size - 1) {
+        frontierSize = addToFrontier(cageOf, cell + size, frontierSize);
+      }
+      if (column > 0) {
+        frontierSize = addToFrontier(cageOf, cell - 1, frontierSize);
+      }
+      if (column < size - 1) {
+        frontierSize = addToFrontier(cageOf, cell + 1, frontierSize);
+      }
+
+      if (frontierSize == 0) {
+        return;
+      }
+      /** Swaps the chosen cell out of the frontier. */
+      int chosen = random.nextInt(frontierSize);
+      cell = frontier[chosen];
+      frontier[chosen] = frontier[--frontierSize];
+    }
+  }
+
+  /**
+   * Adds a cell to the frontier if it is free and not already there.
+   * @param cageOf          the cage of each cell, or -1 for free cells.
+   * @param cell            the cell that may be added.
+   * @param frontierSize    number of cells in the frontier.
+   * @return the new number of cells in the frontier.
+   */
+  private int addToFrontier(int[] cageOf, int cell, int frontierSize) {
+    if (cageOf[cell] < 0 && frontierStamps[cell] != stamp) {
+      frontierStamps[cell] = stamp;
+      frontier[frontierSize++] = cell;
+    }
+    return frontierSize;
+  }
+}
@@ -26,9 +26,9 @@ public class ClearAll {
       for (int i = 0; i < type; i++) {
         for (int j = 0; j < type; j++) {
           grid[i][j].clear();
-          mistakeChecker.checkMistakes(cages, grid);
         }
       }
+      mistakeChecker.gridChanged(cages, grid);
     }
   }
 }
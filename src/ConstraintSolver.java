@@ -0,0 +1,1307 @@
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Solves a puzzle described by a game data object. The candidates of each
+ * cell are stored as a bitmask (bit d - 1 set means d is still possible),
+ * the numbers placed in each row and column are kept as masks, and every
+ * cage is pruned against its operator and target using the cage's valid
+ * tuples, looked up once per puzzle from a {@link CageCombinations} cache.
+ * The search picks the cell with the fewest candidates and undoes its
+ * changes using a trail, so no objects are created while solving.
+ * <p>
+ * With a parallelism above 1, {@link #solve()} and
+ * {@link #countSolutions(int)} split the top of the search tree into
+ * fork/join tasks. Each task works on its own copy of the candidates,
+ * sharing only the cages and tuples, and runs the ordinary search once it
+ * is deep enough or the other workers have enough queued work. Every task
+ * stops as soon as the solutions wanted have been found by any of them.
+ * @author starp
+ *
+ */
+public class ConstraintSolver implements PuzzleSolver {
+  /**
+   * Cages left out of the tuple table whose candidates multiply out to more
+   * tuples than this are only pruned by their bounds until their cells have
+   * fewer candidates.
+   */
+  private static final int ENUMERATION_LIMIT = 1 << 10;
+  /**
+   * The search checks whether its thread has been interrupted each time
+   * this many nodes have been visited, less one.
+   */
+  private static final long INTERRUPT_MASK = (1 << 12) - 1;
+  /**
+   * Parallel searches never split the tree deeper than this.
+   */
+  private static final int MAXSPLITDEPTH = 12;
+  /**
+   * Parallel searches stop splitting once a worker has this many more
+   * tasks queued than the other workers could steal.
+   */
+  private static final int SURPLUS = 3;
+  /**
+   * The pools running parallel searches, by number of threads, shared by
+   * every solver so searching many puzzles doesn't start new threads.
+   */
+  private static final Map<Integer, ForkJoinPool> POOLS =
+      new HashMap<Integer, ForkJoinPool>();
+  /**
+   * Number of columns/rows in the grid.
+   */
+  private final int size;
+  /**
+   * Number of cells in the grid.
+   */
+  private final int cellCount;
+  /**
+   * Mask with a bit set for every number that can be placed in the grid.
+   */
+  private final int fullMask;
+  /**
+   * Index into {@link #cageCells} where each cage starts; the last entry
+   * marks the end of the final cage.
+   */
+  private final int[] cageStart;
+  /**
+   * The cells (counted from 0) of every cage, one cage after another.
+   */
+  private final int[] cageCells;
+  /**
+   * The operator of each cage.
+   */
+  private final Operations[] cageOperators;
+  /**
+   * The target of each cage.
+   */
+  private final int[] cageTargets;
+  /**
+   * Which cage each cell belongs to.
+   */
+  private final int[] cageOf;
+  /**
+   * For each position in a cage, a mask of the earlier positions of the
+   * same cage that share its row or column.
+   */
+  private final int[] cagePeers;
+  /**
+   * Every valid tuple of each cage as one bit per cell, ignoring the rest
+   * of the grid, or null if the cage has too many to be kept.
+   */
+  private final int[][] cageTuples;
+  /**
+   * Number of valid tuples kept for each cage.
+   */
+  private final int[] tupleCounts;
+  /**
+   * Offsets into {@link #cageTuples} of every kept tuple. The tuples of a
+   * cage that still fit the candidates are kept at the front of its range.
+   */
+  private int[] tupleOrder;
+  /**
+   * Where each cage's range starts in {@link #tupleOrder}.
+   */
+  private final int[] orderStart;
+  /**
+   * Number of each cage's tuples that still fit the candidates.
+   */
+  private final int[] liveCounts;
+  /**
+   * The numbers each cell can still contain.
+   */
+  private final int[] domains;
+  /**
+   * The number placed in each cell; 0 means the cell is still empty.
+   */
+  private final int[] values;
+  /**
+   * The numbers already placed in each row.
+   */
+  private final int[] rowMasks;
+  /**
+   * The numbers already placed in each column.
+   */
+  private final int[] columnMasks;
+
+  /**
+   * Cells whose domains have been changed, so they can be restored. Entries
+   * from {@link #cellCount} onwards are cages whose live count changed.
+   */
+  private final int[] trailCells;
+  /**
+   * The domains the cells in {@link #trailCells} had before being changed,
+   * or the live counts of the cages.
+   */
+  private final int[] trailMasks;
+  /**
+   * Number of entries on the trail.
+   */
+  private int trailSize;
+  /**
+   * Cells in the order they were given a number.
+   */
+  private final int[] placed;
+  /**
+   * Number of cells that have been given a number.
+   */
+  private int placedCount;
+
+  /**
+   * Cells that are down to one candidate and are waiting to be placed.
+   */
+  private final int[] singleQueue;
+  /**
+   * Number of cells waiting in {@link #singleQueue}.
+   */
+  private int singleCount;
+  /**
+   * Cages that need to be pruned again.
+   */
+  private final int[] cageQueue;
+  /**
+   * Number of cages waiting in {@link #cageQueue}.
+   */
+  private int cageQueueCount;
+  /**
+   * Whether each cage is already waiting in {@link #cageQueue}.
+   */
+  private final boolean[] cageQueued;
+
+  /**
+   * Number being tried for each position of the cage being pruned.
+   */
+  private final int[] tuple;
+  /**
+   * Numbers that appear in at least one valid tuple, per cage position.
+   */
+  private final int[] supports;
+  /**
+   * Candidates of each cell of the cage being pruned.
+   */
+  private final int[] cageDomains;
+  /**
+   * Smallest sum the positions from an index onwards can add up to.
+   */
+  private final int[] suffixMin;
+  /**
+   * Largest sum the positions from an index onwards can add up to.
+   */
+  private final int[] suffixMax;
+
+  /**
+   * Bit for each number tried by the search, per level.
+   */
+  private final int[] branchMasks;
+  /**
+   * The first two solutions found by the last search.
+   */
+  private final int[][] solutions;
+  /**
+   * Number of solutions found by the current search.
+   */
+  private int solutionCount;
+  /**
+   * The search stops once this many solutions have been found.
+   */
+  private int solutionLimit;
+  /**
+   * Number of search nodes visited by the last search.
+   */
+  private long nodes;
+  /**
+   * Number of passes propagation made over the queues and hidden singles
+   * during the last search.
+   */
+  private long rounds;
+  /**
+   * Number of times the last search had to guess between candidates.
+   */
+  private long branchPoints;
+  /**
+   * Number of guesses the last search had to take back.
+   */
+  private long backtracks;
+  /**
+   * Number of threads solving; 1 means searching on the calling thread.
+   */
+  private int parallelism = 1;
+  /**
+   * Set once every task of the current parallel search should stop, or
+   * null when the search isn't parallel.
+   */
+  private AtomicBoolean stopped;
+  /**
+   * Number of solutions found by every task of the current parallel
+   * search, or null when the search isn't parallel.
+   */
+  private AtomicInteger found;
+
+  /**
+   * Compiles the game data into flat arrays that the search will work on,
+   * looking up cage tuples in the shared cache.
+   * @param gameData    the puzzle that will be solved.
+   * @throws CancellationException if the thread is interrupted.
+   */
+  public ConstraintSolver(GameData gameData) {
+    this(gameData, CageCombinations.getShared());
+  }
+
+  /**
+   * Compiles the game data into flat arrays that the search will work on.
+   * @param gameData        the puzzle that will be solved.
+   * @param combinations    where the valid tuples of each cage come from.
+   * @throws CancellationException if the thread is interrupted.
+   */
+  public ConstraintSolver(GameData gameData, CageCombinations combinations) {
+    size = gameData.getSize();
+    cellCount = size * size;
+    fullMask = size == 32 ? -1 : (1 << size) - 1;
+
+    List<ArrayList<Integer>> cages = gameData.getCages();
+    int cageCount = cages.size();
+    cageStart = new int[cageCount + 1];
+    cageOperators = new Operations[cageCount];
+    cageTargets = new int[cageCount];
+    cageOf = new int[cellCount];
+
+    /** Counts the cells so the flat cage array can be allocated once. */
+    int total = 0;
+    int largest = 0;
+    for (ArrayList<Integer> cage : cages) {
+      total += cage.size();
+      largest = Math.max(largest, cage.size());
+    }
+    cageCells = new int[total];
+    cagePeers = new int[total];
+
+    /** Copies each cage's cells, operator and target. */
+    int index = 0;
+    for (int cage = 0; cage < cageCount; cage++) {
+      cageStart[cage] = index;
+      cageOperators[cage] = gameData.getOperators().get(cage);
+      cageTargets[cage] = gameData.getTargets().get(cage);
+      for (int cellNo : cages.get(cage)) {
+        cageCells[index] = cellNo - 1;
+        cageOf[cellNo - 1] = cage;
+
+        /** Records earlier cells of the cage sharing a row or column. */
+        int peers = 0;
+        for (int other = cageStart[cage];
+             other < index && other - cageStart[cage] < 32; other++) {
+          if (cageCells[other] / size == (cellNo - 1) / size
+              || cageCells[other] % size == (cellNo - 1) % size) {
+            peers |= 1 << (other - cageStart[cage]);
+          }
+        }
+        cagePeers[index] = peers;
+        index++;
+      }
+    }
+    cageStart[cageCount] = index;
+
+    domains = new int[cellCount];
+    values = new int[cellCount];
+    rowMasks = new int[size];
+    columnMasks = new int[size];
+    placed = new int[cellCount];
+    singleQueue = new int[cellCount];
+    cageQueue = new int[cageCount];
+    cageQueued = new boolean[cageCount];
+    tuple = new int[largest];
+    supports = new int[largest];
+    cageDomains = new int[largest];
+    suffixMin = new int[largest + 1];
+    suffixMax = new int[largest + 1];
+    branchMasks = new int[cellCount + 1];
+    solutions = new int[2][cellCount];
+
+    cageTuples = new int[cageCount][];
+    tupleCounts = new int[cageCount];
+    orderStart = new int[cageCount];
+    liveCounts = new int[cageCount];
+    buildTupleTable(combinations);
+
+    /**
+     * Along one branch a cell can only lose each candidate once and a cage
+     * can only lose each tuple once.
+     */
+    trailCells = new int[cellCount * (size + 1) + tupleOrder.length
+                         + cageCount];
+    trailMasks = new int[trailCells.length];
+  }
+
+  /**
+   * Copies the candidates and numbers a parallel search has reached, so
+   * the copy can carry on searching one branch on its own. The cages and
+   * their tuples are shared, as they never change, and so are the arrays
+   * the first two solutions are kept in. Must be called with nothing
+   * waiting to be propagated.
+   * @param other   the solver to copy.
+   */
+  private ConstraintSolver(ConstraintSolver other) {
+    size = other.size;
+    cellCount = other.cellCount;
+    fullMask = other.fullMask;
+    cageStart = other.cageStart;
+    cageCells = other.cageCells;
+    cageOperators = other.cageOperators;
+    cageTargets = other.cageTargets;
+    cageOf = other.cageOf;
+    cagePeers = other.cagePeers;
+    cageTuples = other.cageTuples;
+    tupleCounts = other.tupleCounts;
+    orderStart = other.orderStart;
+    solutions = other.solutions;
+
+    tupleOrder = other.tupleOrder.clone();
+    liveCounts = other.liveCounts.clone();
+    domains = other.domains.clone();
+    values = other.values.clone();
+    rowMasks = other.rowMasks.clone();
+    columnMasks = other.columnMasks.clone();
+
+    int largest = other.tuple.length;
+    placed = new int[cellCount];
+    singleQueue = new int[cellCount];
+    cageQueue = new int[other.cageQueue.length];
+    cageQueued = new boolean[cageQueue.length];
+    tuple = new int[largest];
+    supports = new int[largest];
+    cageDomains = new int[largest];
+    suffixMin = new int[largest + 1];
+    suffixMax = new int[largest + 1];
+    branchMasks = new int[cellCount + 1];
+    trailCells = new int[other.trailCells.length];
+    trailMasks = new int[trailCells.length];
+
+    solutionLimit = other.solutionLimit;
+    stopped = other.stopped;
+    found = other.found;
+  }
+
+  /**
+   * Looks up the valid tuples of every cage once, so pruning only has to
+   * filter them against the current candidates.
+   * @param combinations    where the valid tuples come from.
+   */
+  private void buildTupleTable(CageCombinations combinations) {
+    int[] peers = new int[cageCells.length];
+    int tupleTotal = 0;
+    for (int cage = 0; cage < cageTuples.length; cage++) {
+      int start = cageStart[cage];
+      int length = cageStart[cage + 1] - start;
+      System.arraycopy(cagePeers, start, peers, 0, length);
+
+      /** Cages with too many tuples are left to be enumerated later. */
+      cageTuples[cage] = combinations.getTuples(cageOperators[cage],
+                                                cageTargets[cage], size,
+                                                peers, length);
+      if (cageTuples[cage] != null) {
+        tupleCounts[cage] = cageTuples[cage].length / length;
+        tupleTotal += tupleCounts[cage];
+      }
+    }
+
+    /** Lists the offsets of each cage's tuples, one cage after another. */
+    tupleOrder = new int[tupleTotal];
+    int index = 0;
+    for (int cage = 0; cage < cageTuples.length; cage++) {
+      int length = cageStart[cage + 1] - cageStart[cage];
+      orderStart[cage] = index;
+      for (int count = 0; count < tupleCounts[cage]; count++) {
+        tupleOrder[index++] = count * length;
+      }
+    }
+  }
+
+  /**
+   * Accessor for the number of columns/rows.
+   * @return {@link #size}
+   */
+  @Override
+  public int getSize() {
+    return size;
+  }
+
+  /**
+   * Returns the number of search nodes visited by the last search.
+   * @return {@link #nodes}
+   */
+  @Override
+  public long getNodes() {
+    return nodes;
+  }
+
+  /**
+   * Returns the number of propagation rounds made by the last search.
+   * @return {@link #rounds}
+   */
+  public long getRounds() {
+    return rounds;
+  }
+
+  /**
+   * Returns the number of cells the last search had to guess.
+   * @return {@link #branchPoints}
+   */
+  public long getBranchPoints() {
+    return branchPoints;
+  }
+
+  /**
+   * Returns the number of guesses the last search took back.
+   * @return {@link #backtracks}
+   */
+  public long getBacktracks() {
+    return backtracks;
+  }
+
+  /**
+   * Accessor for the number of threads solving.
+   * @return {@link #parallelism}
+   */
+  public int getParallelism() {
+    return parallelism;
+  }
+
+  /**
+   * Mutator for the number of threads {@link #solve()} and
+   * {@link #countSolutions(int)} use. The threads are shared with every
+   * other solver using as many, only started once a parallel search is
+   * run, and end by themselves when left idle.
+   * @param parallelism   the number of threads, or 1 to search on the
+   *                      calling thread.
+   */
+  public void setParallelism(int parallelism) {
+    if (parallelism < 1) {
+      throw new IllegalArgumentException("At least one thread is needed");
+    }
+    this.parallelism = parallelism;
+  }
+
+  /**
+   * Finds one solution of the puzzle.
+   * @return the grid of numbers indexed by [row][column], or null if the
+   *         puzzle cannot be solved.
+   * @throws CancellationException if the thread is interrupted.
+   */
+  @Override
+  public int[][] solve() {
+    if (run(1) == 0) {
+      return null;
+    }
+    return toGrid(solutions[0]);
+  }
+
+  /**
+   * Returns one of the first two solutions found by the last search.
+   * @param index   0 for the first solution, 1 for the second.
+   * @return the grid indexed by [row][column], or null if fewer solutions
+   *         were found.
+   */
+  @Override
+  public int[][] getSolution(int index) {
+    if (index >= Math.min(solutionCount, solutions.length)) {
+      return null;
+    }
+    return toGrid(solutions[index]);
+  }
+
+  /**
+   * Finds up to a given number of solutions.
+   * @param limit   the maximum number of solutions to return.
+   * @return each solution as a grid indexed by [row][column].
+   * @throws CancellationException if the thread is interrupted.
+   */
+  public List<int[][]> solveAll(int limit) {
+    List<int[][]> solutions = new ArrayList<int[][]>();
+    solutionLimit = limit;
+    solutionCount = 0;
+    nodes = 0;
+    rounds = 0;
+    branchPoints = 0;
+    backtracks = 0;
+
+    if (reset()) {
+      collect(solutions);
+    }
+    return solutions;
+  }
+
+  /**
+   * Counts the solutions of the puzzle, stopping early at a limit.
+   * @param limit   the search stops once this many solutions are found.
+   * @return the number of solutions found, at most limit.
+   * @throws CancellationException if the thread is interrupted.
+   */
+  @Override
+  public int countSolutions(int limit) {
+    return run(limit);
+  }
+
+  /**
+   * Runs the search from the start.
+   * @param limit   the number of solutions at which the search stops.
+   * @return the number of solutions found.
+   */
+  private int run(int limit) {
+    solutionLimit = limit;
+    solutionCount = 0;
+    nodes = 0;
+    rounds = 0;
+    branchPoints = 0;
+    backtracks = 0;
+
+    if (!reset()) {
+      return 0;
+    }
+    if (parallelism > 1) {
+      return runParallel();
+    }
+    search(0);
+    return solutionCount;
+  }
+
+  /**
+   * Runs the search as fork/join tasks, from a grid that has just been
+   * reset. The calling thread waits for the tasks to finish.
+   * @return the number of solutions found, at most the limit.
+   * @throws CancellationException if the calling thread is interrupted.
+   */
+  private int runParallel() {
+    ForkJoinPool pool;
+    synchronized (POOLS) {
+      pool = POOLS.computeIfAbsent(parallelism, ForkJoinPool::new);
+    }
+    stopped = new AtomicBoolean();
+    found = new AtomicInteger();
+    ForkJoinTask<Void> task = pool.submit(new SearchTask(this, 0));
+    try {
+      task.get();
+    }
+    catch (InterruptedException e) {
+      /** Stops every task; the thread stays interrupted. */
+      stopped.set(true);
+      Thread.currentThread().interrupt();
+      throw new CancellationException("The search was interrupted");
+    }
+    catch (ExecutionException e) {
+      if (e.getCause() instanceof RuntimeException) {
+        throw (RuntimeException) e.getCause();
+      }
+      throw new IllegalStateException(e.getCause());
+    }
+    finally {
+      stopped.set(true);
+    }
+    solutionCount = Math.min(found.get(), solutionLimit);
+    stopped = null;
+    found = null;
+    return solutionCount;
+  }
+
+  /**
+   * Clears the grid and prunes every cage once.
+   * @return false if the puzzle has no solution.
+   */
+  private boolean reset() {
+    for (int cell = 0; cell < cellCount; cell++) {
+      domains[cell] = fullMask;
+      values[cell] = 0;
+    }
+    for (int line = 0; line < size; line++) {
+      rowMasks[line] = 0;
+      columnMasks[line] = 0;
+    }
+    for (int cage = 0; cage < liveCounts.length; cage++) {
+      liveCounts[cage] = tupleCounts[cage];
+    }
+    trailSize = 0;
+    placedCount = 0;
+    singleCount = 0;
+    cageQueueCount = 0;
+
+    /**
+     * Cells of a 1x1 grid start with one candidate, so narrowing never
+     * queues them to be placed.
+     */
+    if ((fullMask & (fullMask - 1)) == 0) {
+      for (int cell = 0; cell < cellCount; cell++) {
+        singleQueue[singleCount++] = cell;
+      }
+    }
+
+    /** Every cage is pruned before the first branch. */
+    for (int cage = 0; cage < cageQueue.length; cage++) {
+      cageQueued[cage] = false;
+      enqueueCage(cage);
+    }
+    return propagate();
+  }
+
+  /**
+   * Depth first search, branching on the cell with the fewest candidates.
+   * @param depth   how many branches have been taken.
+   * @return true if enough solutions have been found to stop.
+   */
+  private boolean search(int depth) {
+    nodes++;
+    checkInterrupted();
+    /** Another task of a parallel search has found what was wanted. */
+    if (stopped != null && stopped.get()) {
+      return true;
+    }
+    int cell = chooseCell();
+
+    /** If every cell has been filled then a solution has been found. */
+    if (cell < 0) {
+      return addSolution();
+    }
+
+    int trailMark = trailSize;
+    int placedMark = placedCount;
+    branchMasks[depth] = domains[cell];
+    if ((domains[cell] & (domains[cell] - 1)) != 0) {
+      branchPoints++;
+    }
+
+    /** Tries each candidate of the cell in turn. */
+    while (branchMasks[depth] != 0) {
+      int bit = branchMasks[depth] & -branchMasks[depth];
+      branchMasks[depth] ^= bit;
+
+      if (restrict(cell, bit) && propagate() && search(depth + 1)) {
+        return true;
+      }
+      undo(trailMark, placedMark);
+      backtracks++;
+    }
+    return false;
+  }
+
+  /**
+   * Keeps a copy of the grid just filled, if it is one of the first two
+   * solutions, and counts it.
+   * @return true if enough solutions have been found to stop.
+   */
+  private boolean addSolution() {
+    solutionCount++;
+    if (found == null) {
+      if (solutionCount <= solutions.length) {
+        System.arraycopy(values, 0, solutions[solutionCount - 1], 0,
+                         cellCount);
+      }
+      return solutionCount >= solutionLimit;
+    }
+
+    /** Each task of a parallel search gets its own slot. */
+    int index = found.getAndIncrement();
+    if (index < solutions.length) {
+      System.arraycopy(values, 0, solutions[index], 0, cellCount);
+    }
+    if (index + 1 >= solutionLimit) {
+      stopped.set(true);
+      return true;
+    }
+    return false;
+  }
+
+  /**
+   * Adds the counts of a copy's search to this one's.
+   * @param copy    a copy that has finished searching.
+   */
+  private void addCounts(ConstraintSolver copy) {
+    nodes += copy.nodes;
+    rounds += copy.rounds;
+    branchPoints += copy.branchPoints;
+    backtracks += copy.backtracks;
+  }
+
+  /**
+   * Gives up on the search every so often if its thread has been
+   * interrupted, so a search that is no longer wanted can be stopped.
+   * @throws CancellationException if the thread is interrupted.
+   */
+  private void checkInterrupted() {
+    if ((nodes & INTERRUPT_MASK) == 0
+        && Thread.currentThread().isInterrupted()) {
+      throw new CancellationException("The search was interrupted");
+    }
+  }
+
+  /**
+   * Same as {@link #search(int)} but keeps a copy of every solution.
+   * @param solutions   where the solutions will be added.
+   */
+  private void collect(List<int[][]> solutions) {
+    nodes++;
+    checkInterrupted();
+    int cell = chooseCell();
+
+    if (cell < 0) {
+      if (solutionCount < this.solutions.length) {
+        System.arraycopy(values, 0, this.solutions[solutionCount], 0,
+                         cellCount);
+      }
+      solutions.add(toGrid(values));
+      solutionCount++;
+      return;
+    }
+
+    int trailMark = trailSize;
+    int placedMark = placedCount;
+    int candidates = domains[cell];
+    if ((candidates & (candidates - 1)) != 0) {
+      branchPoints++;
+    }
+
+    while (candidates != 0 && solutionCount < solutionLimit) {
+      int bit = candidates & -candidates;
+      candidates ^= bit;
+
+      if (restrict(cell, bit) && propagate()) {
+        collect(solutions);
+      }
+      undo(trailMark, placedMark);
+      backtracks++;
+    }
+  }
+
+  /**
+   * Finds the empty cell with the fewest candidates left.
+   * @return the cell, or -1 if every cell has been filled.
+   */
+  private int chooseCell() {
+    int best = -1;
+    int bestCount = Integer.MAX_VALUE;
+    for (int cell = 0; cell < cellCount; cell++) {
+      if (values[cell] == 0) {
+        int count = Integer.bitCount(domains[cell]);
+        if (count < bestCount) {
+          best = cell;
+          bestCount = count;
+          /** Two candidates is the best an empty cell can have here. */
+          if (count <= 2) {
+            break;
+          }
+        }
+      }
+    }
+    return best;
+  }
+
+  /**
+   * Reverts every change made since the marks were taken.
+   * @param trailMark     size of the trail to go back to.
+   * @param placedMark    number of placed cells to go back to.
+   */
+  private void undo(int trailMark, int placedMark) {
+    while (placedCount > placedMark) {
+      int cell = placed[--placedCount];
+      int bit = 1 << (values[cell] - 1);
+      rowMasks[cell / size] ^= bit;
+      columnMasks[cell % size] ^= bit;
+      values[cell] = 0;
+    }
+    while (trailSize > trailMark) {
+      trailSize--;
+      int entry = trailCells[trailSize];
+      if (entry < cellCount) {
+        domains[entry] = trailMasks[trailSize];
+      }
+      else {
+        liveCounts[entry - cellCount] = trailMasks[trailSize];
+      }
+    }
+    singleCount = 0;
+    while (cageQueueCount > 0) {
+      cageQueued[cageQueue[--cageQueueCount]] = false;
+    }
+  }
+
+  /**
+   * Narrows the candidates of a cell, recording the old ones on the trail.
+   * @param cell    the cell whose candidates will be narrowed.
+   * @param mask    the candidates that may remain.
+   * @return false if the cell is left without candidates.
+   */
+  private boolean restrict(int cell, int mask) {
+    int old = domains[cell];
+    int narrowed = old & mask;
+    if (narrowed == old) {
+      return true;
+    }
+    if (narrowed == 0) {
+      return false;
+    }
+
+    trailCells[trailSize] = cell;
+    trailMasks[trailSize] = old;
+    trailSize++;
+    domains[cell] = narrowed;
+
+    /** A cell down to one candidate is placed during propagation. */
+    if ((narrowed & (narrowed - 1)) == 0 && values[cell] == 0) {
+      singleQueue[singleCount++] = cell;
+    }
+    enqueueCage(cageOf[cell]);
+    return true;
+  }
+
+  /**
+   * Adds a cage to the queue if it isn't already waiting.
+   * @param cage    the cage to be pruned again.
+   */
+  private void enqueueCage(int cage) {
+    if (!cageQueued[cage]) {
+      cageQueued[cage] = true;
+      cageQueue[cageQueueCount++] = cage;
+    }
+  }
+
+  /**
+   * Places single candidates and prunes cages until nothing changes.
+   * @return false if a contradiction has been found.
+   */
+  private boolean propagate() {
+    do {
+      rounds++;
+      while (singleCount > 0 || cageQueueCount > 0) {
+        /** Places numbers first as they remove the most candidates. */
+        while (singleCount > 0) {
+          int cell = singleQueue[--singleCount];
+          if (values[cell] == 0 && !place(cell)) {
+            return false;
+          }
+        }
+
+        if (cageQueueCount > 0) {
+          int cage = cageQueue[--cageQueueCount];
+          cageQueued[cage] = false;
+          if (!pruneCage(cage)) {
+            return false;
+          }
+        }
+      }
+
+      /** Looks for numbers that fit in only one cell of a row/column. */
+      for (int line = 0; line < size; line++) {
+        if (!findHiddenSingles(line * size, 1, rowMasks[line])
+            || !findHiddenSingles(line, size, columnMasks[line])) {
+          return false;
+        }
+      }
+    }
+    while (singleCount > 0 || cageQueueCount > 0);
+    return true;
+  }
+
+  /**
+   * Places any number that can only go in one cell of a row or column.
+   * @param first     the first cell of the row/column.
+   * @param step      the distance between cells of the row/column.
+   * @param used      the numbers already placed in the row/column.
+   * @return false if a number can't go anywhere in the row/column.
+   */
+  private boolean findHiddenSingles(int first, int step, int used) {
+    int once = 0;
+    int twice = 0;
+    for (int index = 0, cell = first; index < size; index++, cell += step) {
+      if (values[cell] == 0) {
+        twice |= once & domains[cell];
+        once |= domains[cell];
+      }
+    }
+
+    /** Every number not yet placed must fit in at least one cell. */
+    if (((once | used) & fullMask) != fullMask) {
+      return false;
+    }
+
+    int hidden = once & ~twice & ~used;
+    for (int index = 0, cell = first; hidden != 0 && index < size;
+         index++, cell += step) {
+      int bit = domains[cell] & hidden;
+      if (values[cell] == 0 && bit != 0) {
+        hidden &= ~bit;
+        /** Two hidden numbers in one cell can't both be placed. */
+        if ((bit & (bit - 1)) != 0 || !restrict(cell, bit)) {
+          return false;
+        }
+      }
+    }
+    return true;
+  }
+
+  /**
+   * Places the only candidate of a cell and removes it from the cell's row
+   * and column.
+   * @param cell    the cell with one candidate left.
+   * @return false if the number clashes with its row or column.
+   */
+  private boolean place(int cell) {
+    int bit = domains[cell];
+    int row = cell / size;
+    int column = cell % size;
+    if (((rowMasks[row] | columnMasks[column]) & bit) != 0) {
+      return false;
+    }
+
+    values[cell] = Integer.numberOfTrailingZeros(bit) + 1;
+    rowMasks[row] |= bit;
+    columnMasks[column] |= bit;
+    placed[placedCount++] = cell;
+
+    /** Removes the number from the other cells of the row and column. */
+    for (int other = 0; other < size; other++) {
+      int rowCell = row * size + other;
+      int columnCell = other * size + column;
+      if (rowCell != cell && !restrict(rowCell, ~bit)) {
+        return false;
+      }
+      if (columnCell != cell && !restrict(columnCell, ~bit)) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  /**
+   * Removes candidates from a cage's cells that can't be part of any tuple
+   * reaching the target.
+   * @param cage    the cage to prune.
+   * @return false if the cage can no longer reach its target.
+   */
+  private boolean pruneCage(int cage) {
+    int start = cageStart[cage];
+    int length = cageStart[cage + 1] - start;
+    Operations operator = cageOperators[cage];
+    int target = cageTargets[cage];
+
+    if (cageTuples[cage] != null) {
+      return filterTuples(cage, start, length);
+    }
+
+    /** Works out how many tuples there are to check. */
+    long tuples = 1;
+    for (int position = 0; position < length && tuples <= ENUMERATION_LIMIT;
+         position++) {
+      tuples *= Integer.bitCount(domains[cageCells[start + position]]);
+    }
+
+    computeBounds(start, length);
+
+    /**
+     * Large cages are only checked against the numbers placed so far, then
+     * narrowed by their bounds.
+     */
+    if (tuples > ENUMERATION_LIMIT || length > 32) {
+      for (int position = 0; position < length; position++) {
+        tuple[position] = values[cageCells[start + position]];
+      }
+      if (!CageEvaluator.canReach(operator, target, tuple, length, size)) {
+        return false;
+      }
+      return operator != Operations.ADD
+             || pruneSumBounds(start, length, target);
+    }
+
+    for (int position = 0; position < length; position++) {
+      supports[position] = 0;
+    }
+    if (!enumerate(start, length, 0, operator, target, 0, 1)) {
+      return false;
+    }
+
+    /** Keeps only the candidates that appeared in a valid tuple. */
+    for (int position = 0; position < length; position++) {
+      if (!restrict(cageCells[start + position], supports[position])) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  /**
+   * Keeps the candidates of a cage's cells that appear in one of its listed
+   * tuples which still fits the current candidates. Tuples that no longer
+   * fit are moved behind the live ones so they are skipped next time, and
+   * the scan stops early once every candidate is known to be supported.
+   * @param cage      the cage to prune.
+   * @param start     where the cage starts in {@link #cageCells}.
+   * @param length    number of cells in the cage.
+   * @return false if none of the tuples fit.
+   */
+  private boolean filterTuples(int cage, int start, int length) {
+    int[] tupleBits = cageTuples[cage];
+    for (int position = 0; position < length; position++) {
+      supports[position] = 0;
+      cageDomains[position] = domains[cageCells[start + position]];
+    }
+
+    /** Number of positions with a candidate not yet seen in a tuple. */
+    int unsupported = length;
+    int first = orderStart[cage];
+    int live = liveCounts[cage];
+    int index = first;
+    int end = first + live;
+    while (index < end && unsupported > 0) {
+      int offset = tupleOrder[index];
+      int position = 0;
+      while (position < length
+             && (tupleBits[offset + position] & cageDomains[position]) != 0) {
+        position++;
+      }
+
+      /** The tuple fits, so all its numbers are supported. */
+      if (position == length) {
+        for (position = 0; position < length; position++) {
+          int bit = tupleBits[offset + position];
+          if ((supports[position] & bit) == 0) {
+            supports[position] |= bit;
+            if (supports[position] == cageDomains[position]) {
+              unsupported--;
+            }
+          }
+        }
+        index++;
+      }
+      else {
+        end--;
+        tupleOrder[index] = tupleOrder[end];
+        tupleOrder[end] = offset;
+      }
+    }
+
+    /** Records the old live count so it is restored on backtracking. */
+    if (end - first != live) {
+      trailCells[trailSize] = cellCount + cage;
+      trailMasks[trailSize] = live;
+      trailSize++;
+      liveCounts[cage] = end - first;
+    }
+
+    if (unsupported == 0) {
+      return true;
+    }
+    for (int position = 0; position < length; position++) {
+      if (!restrict(cageCells[start + position], supports[position])) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  /**
+   * Works out the smallest and largest sums of the cage's cells from each
+   * position onwards; used to cut off sums early.
+   * @param start     where the cage starts in {@link #cageCells}.
+   * @param length    number of cells in the cage.
+   */
+  private void computeBounds(int start, int length) {
+    suffixMin[length] = 0;
+    suffixMax[length] = 0;
+    for (int position = length - 1; position >= 0; position--) {
+      int domain = domains[cageCells[start + position]];
+      suffixMin[position] = suffixMin[position + 1]
+                            + Integer.numberOfTrailingZeros(domain) + 1;
+      suffixMax[position] = suffixMax[position + 1]
+                            + 32 - Integer.numberOfLeadingZeros(domain);
+    }
+  }
+
+  /**
+   * Narrows the cells of an addition cage using the smallest and largest
+   * sums the other cells can make.
+   * @param start     where the cage starts in {@link #cageCells}.
+   * @param length    number of cells in the cage.
+   * @param target    the sum that must be reached.
+   * @return false if a cell is left without candidates.
+   */
+  private boolean pruneSumBounds(int start, int length, int target) {
+    int minTotal = suffixMin[0];
+    int maxTotal = suffixMax[0];
+    if (target < minTotal || target > maxTotal) {
+      return false;
+    }
+
+    for (int position = 0; position < length; position++) {
+      int cell = cageCells[start + position];
+      int domain = domains[cell];
+      int otherMin = minTotal - (Integer.numberOfTrailingZeros(domain) + 1);
+      int otherMax = maxTotal - (32 - Integer.numberOfLeadingZeros(domain));
+      int low = Math.max(1, target - otherMax);
+      int high = Math.min(size, target - otherMin);
+      if (low > high || !restrict(cell, rangeMask(low, high))) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  /**
+   * Tries every tuple of a cage's candidates, recording which candidates
+   * are part of a tuple that reaches the target.
+   * @param start       where the cage starts in {@link #cageCells}.
+   * @param length      number of cells in the cage.
+   * @param position    the position in the cage being filled.
+   * @param operator    the cage's operator.
+   * @param target      the cage's target.
+   * @param sum         sum of the numbers chosen so far.
+   * @param product     product of the numbers chosen so far.
+   * @return true if at least one valid tuple was found.
+   */
+  private boolean enumerate(int start, int length, int position,
+                            Operations operator, int target, int sum,
+                            long product) {
+    if (position == length) {
+      if (!CageEvaluator.isSatisfied(operator, target, tuple, length)) {
+        return false;
+      }
+      for (int index = 0; index < length; index++) {
+        supports[index] |= 1 << (tuple[index] - 1);
+      }
+      return true;
+    }
+
+    /** Cuts off tuples that can no longer reach the target. */
+    if (operator == Operations.ADD
+        && (sum + suffixMin[position] > target
+            || sum + suffixMax[position] < target)) {
+      return false;
+    }
+    if (operator == Operations.TIMES && target > 0 && target % product != 0) {
+      return false;
+    }
+
+    /** Removes numbers already used by a cell in the same row/column. */
+    int candidates = domains[cageCells[start + position]];
+    int peers = cagePeers[start + position];
+    while (peers != 0) {
+      int peer = Integer.numberOfTrailingZeros(peers);
+      peers &= peers - 1;
+      candidates &= ~(1 << (tuple[peer] - 1));
+    }
+
+    boolean found = false;
+    while (candidates != 0) {
+      int bit = candidates & -candidates;
+      candidates ^= bit;
+      int number = Integer.numberOfTrailingZeros(bit) + 1;
+      tuple[position] = number;
+      found |= enumerate(start, length, position + 1, operator, target,
+                         sum + number, product * number);
+    }
+    return found;
+  }
+
+  /**
+   * Creates a mask with the bits for the numbers low to high set.
+   * @param low     smallest number.
+   * @param high    largest number.
+   * @return the mask.
+   */
+  private int rangeMask(int low, int high) {
+    int upTo = high == 32 ? -1 : (1 << high) - 1;
+    return upTo & ~((1 << (low - 1)) - 1);
+  }
+
+  /**
+   * Copies the cell values into a two dimensional grid.
+   * @param cells   numbers indexed by cell.
+   * @return the grid indexed by [row][column].
+   */
+  private int[][] toGrid(int[] cells) {
+    int[][] grid = new int[size][size];
+    for (int cell = 0; cell < cellCount; cell++) {
+      grid[cell / size][cell % size] = cells[cell];
+    }
+    return grid;
+  }
+
+  /**
+   * Searches the branch of the tree a solver has reached, as part of a
+   * parallel search. While the branch is near the top of the tree and the
+   * workers are short of queued tasks, each candidate of the next cell is
+   * handed to a task of its own with a copy of the solver; otherwise the
+   * branch is searched on this worker.
+   * @author starp
+   *
+   */
+  private static final class SearchTask extends RecursiveAction {
+    /**
+     * Not serialised.
+     */
+    private static final long serialVersionUID = 1L;
+    /**
+     * The solver, at the start of the branch. Only this task uses it.
+     */
+    private final ConstraintSolver solver;
+    /**
+     * How many times the tree has been split above this branch.
+     */
+    private final int depth;
+
+    /**
+     * Creates the task.
+     * @param solver    the solver, at the start of the branch.
+     * @param depth     how many times the tree has been split above.
+     */
+    private SearchTask(ConstraintSolver solver, int depth) {
+      this.solver = solver;
+      this.depth = depth;
+    }
+
+    /**
+     * Splits the branch or searches it.
+     */
+    @Override
+    protected void compute() {
+      ConstraintSolver solver = this.solver;
+      if (solver.stopped.get()) {
+        return;
+      }
+      int cell = solver.chooseCell();
+      if (cell < 0 || depth >= MAXSPLITDEPTH
+          || getSurplusQueuedTaskCount() >= SURPLUS) {
+        solver.search(0);
+        return;
+      }
+
+      solver.nodes++;
+      int candidates = solver.domains[cell];
+      if ((candidates & (candidates - 1)) != 0) {
+        solver.branchPoints++;
+      }
+      List<SearchTask> branches = new ArrayList<SearchTask>();
+      int trailMark = solver.trailSize;
+      int placedMark = solver.placedCount;
+      while (candidates != 0) {
+        int bit = candidates & -candidates;
+        candidates ^= bit;
+        /** Only the branches that survive propagation are copied. */
+        if (solver.restrict(cell, bit) && solver.propagate()) {
+          branches.add(new SearchTask(new ConstraintSolver(solver),
+                                      depth + 1));
+        }
+        else {
+          solver.backtracks++;
+        }
+        solver.undo(trailMark, placedMark);
+      }
+      invokeAll(branches);
+      for (SearchTask branch : branches) {
+        solver.addCounts(branch.solver);
+      }
+    }
+  }
+}
@@ -0,0 +1,438 @@
+import java.util.List;
+import java.util.concurrent.CancellationException;
+
+/**
+ * Solves a puzzle as an exact cover problem, independently of
+ * {@link ConstraintSolver}. Each cell, each number in each row, each number
+ * in each column and each cage must be covered exactly once, and each way
+ * of filling one cage with numbers that reach its target covers its cells,
+ * their numbers in their rows and columns, and the cage. The matrix is
+ * searched with Dancing Links, with the nodes kept in flat int arrays
+ * rather than objects, so nothing is allocated while solving.
+ * <p>
+ * Every valid tuple of every cage becomes a row of the matrix, so cages
+ * with too many tuples to be listed can't be described.
+ * @author starp
+ *
+ */
+public class DancingLinksSolver implements PuzzleSolver {
+  /**
+   * The search checks whether its thread has been interrupted each time
+   * this many nodes have been visited, less one.
+   */
+  private static final long INTERRUPT_MASK = (1 << 12) - 1;
+  /**
+   * Number of columns/rows in the grid.
+   */
+  private final int size;
+  /**
+   * Number of cells in the grid.
+   */
+  private final int cellCount;
+  /**
+   * Where each cage's cells start in {@link #cageCells}, with an extra
+   * entry after the last cage.
+   */
+  private final int[] cageStart;
+  /**
+   * The cells (counted from 0) of every cage, one cage after another.
+   */
+  private final int[] cageCells;
+  /**
+   * Every valid tuple of each cage, as one bit per cell.
+   */
+  private final int[][] cageTuples;
+  /**
+   * The cage each row of the matrix fills.
+   */
+  private final int[] rowCages;
+  /**
+   * Where each row's tuple starts in its cage's tuples.
+   */
+  private final int[] rowTuples;
+
+  /**
+   * The node to the left of each node. Node 0 heads the list of columns
+   * still to be covered, the columns' own nodes come next, then the nodes
+   * of each row.
+   */
+  private final int[] left;
+  /**
+   * The node to the right of each node.
+   */
+  private final int[] right;
+  /**
+   * The node above each node.
+   */
+  private final int[] up;
+  /**
+   * The node below each node.
+   */
+  private final int[] down;
+  /**
+   * The column each node is in.
+   */
+  private final int[] columnOf;
+  /**
+   * The row of the matrix each node is in, or -1 for column nodes.
+   */
+  private final int[] rowOf;
+  /**
+   * Number of rows left in each column, indexed by the column's node.
+   */
+  private final int[] counts;
+  /**
+   * The links and counts before any column was covered, copied back before
+   * each search.
+   */
+  private final int[][] initial;
+
+  /**
+   * One node of each row chosen along the current branch.
+   */
+  private final int[] chosen;
+  /**
+   * The first two solutions found by the last search.
+   */
+  private final int[][] solutions;
+  /**
+   * Number of solutions found by the current search.
+   */
+  private int solutionCount;
+  /**
+   * The search stops once this many solutions have been found.
+   */
+  private int solutionLimit;
+  /**
+   * Number of search nodes visited by the last search.
+   */
+  private long nodes;
+
+  /**
+   * Builds the exact cover matrix of a puzzle, looking up cage tuples in
+   * the shared cache.
+   * @param gameData    the puzzle that will be solved.
+   * @throws IllegalArgumentException if a cage has too many tuples to be
+   *                                  listed.
+   * @throws CancellationException if the thread is interrupted.
+   */
+  public DancingLinksSolver(GameData gameData) {
+    this(gameData, CageCombinations.getShared());
+  }
+
+  /**
+   * Builds the exact cover matrix of a puzzle.
+   * @param gameData        the puzzle that will be solved.
+   * @param combinations    where the valid tuples of each cage come from.
+   * @throws IllegalArgumentException if a cage has too many tuples to be
+   *                                  listed.
+   * @throws CancellationException if the thread is interrupted.
+   */
+  public DancingLinksSolver(GameData gameData,
+                            CageCombinations combinations) {
+    size = gameData.getSize();
+    cellCount = size * size;
+    List<? extends List<Integer>> cages = gameData.getCages();
+    int cageCount = cages.size();
+    cageStart = new int[cageCount + 1];
+    cageTuples = new int[cageCount][];
+
+    int total = 0;
+    for (List<Integer> cage : cages) {
+      total += cage.size();
+    }
+    cageCells = new int[total];
+
+    /** Lists each cage's tuples, counting the rows and their nodes. */
+    int rowCount = 0;
+    int nodeCount = 0;
+    int next = 0;
+    int[] peers = new int[total];
+    for (int cage = 0; cage < cageCount; cage++) {
+      cageStart[cage] = next;
+      for (int cellNo : cages.get(cage)) {
+        cageCells[next] = cellNo - 1;
+        /** Earlier cells of the cage sharing a row or column. */
+        peers[next - cageStart[cage]] = 0;
+        for (int other = cageStart[cage];
+             other < next && other - cageStart[cage] < 32; other++) {
+          if (cageCells[other] / size == (cellNo - 1) / size
+              || cageCells[other] % size == (cellNo - 1) % size) {
+            peers[next - cageStart[cage]] |= 1 << (other - cageStart[cage]);
+          }
+        }
+        next++;
+      }
+      int length = next - cageStart[cage];
+      cageTuples[cage] = combinations.getTuples(
+          gameData.getOperators().get(cage), gameData.getTargets().get(cage),
+          size, peers, length);
+      if (cageTuples[cage] == null) {
+        throw new IllegalArgumentException("Cage " + (cage + 1) + " has too "
+                                           + "many ways to be filled");
+      }
+      int tuples = cageTuples[cage].length / length;
+      rowCount += tuples;
+      /** A cell, its row's number and its column's number, then the cage. */
+      nodeCount += tuples * (3 * length + 1);
+    }
+    cageStart[cageCount] = next;
+
+    int columnCount = 3 * cellCount + cageCount;
+    int length = 1 + columnCount + nodeCount;
+    left = new int[length];
+    right = new int[length];
+    up = new int[length];
+    down = new int[length];
+    columnOf = new int[length];
+    rowOf = new int[length];
+    counts = new int[1 + columnCount];
+    rowCages = new int[rowCount];
+    rowTuples = new int[rowCount];
+    chosen = new int[cageCount + 1];
+    solutions = new int[2][cellCount];
+
+    /** Links the column nodes in a ring with the head. */
+    for (int column = 0; column <= columnCount; column++) {
+      left[column] = column == 0 ? columnCount : column - 1;
+      right[column] = column == columnCount ? 0 : column + 1;
+      up[column] = column;
+      down[column] = column;
+      columnOf[column] = column;
+      rowOf[column] = -1;
+    }
+
+    /** Adds a row for each tuple of each cage. */
+    int node = columnCount + 1;
+    int row = 0;
+    for (int cage = 0; cage < cageCount; cage++) {
+      int start = cageStart[cage];
+      int cells = cageStart[cage + 1] - start;
+      for (int tuple = 0; tuple < cageTuples[cage].length; tuple += cells) {
+        rowCages[row] = cage;
+        rowTuples[row] = tuple;
+        int first = node;
+        for (int position = 0; position < cells; position++) {
+          int cell = cageCells[start + position];
+          int number = Integer.numberOfTrailingZeros(
+              cageTuples[cage][tuple + position]);
+          node = addNode(node, first, row, 1 + cell);
+          node = addNode(node, first, row,
+                         1 + cellCount + cell / size * size + number);
+          node = addNode(node, first, row,
+                         1 + 2 * cellCount + cell % size * size + number);
+        }
+        node = addNode(node, first, row, 1 + 3 * cellCount + cage);
+        row++;
+      }
+    }
+
+    initial = new int[][] {left.clone(), right.clone(), up.clone(),
+                           down.clone(), counts.clone()};
+  }
+
+  /**
+   * Adds a node to the bottom of a column and the end of a row.
+   * @param node      the new node.
+   * @param first     the first node of the row.
+   * @param row       the row.
+   * @param column    the column's node.
+   * @return the node after the new one.
+   */
+  private int addNode(int node, int first, int row, int column) {
+    columnOf[node] = column;
+    rowOf[node] = row;
+    up[node] = up[column];
+    down[node] = column;
+    down[up[column]] = node;
+    up[column] = node;
+    counts[column]++;
+    left[node] = node == first ? node : left[first];
+    right[node] = first;
+    right[left[node]] = node;
+    left[first] = node;
+    return node + 1;
+  }
+
+  /**
+   * Accessor for the number of columns/rows.
+   * @return {@link #size}
+   */
+  @Override
+  public int getSize() {
+    return size;
+  }
+
+  /**
+   * Returns the number of search nodes visited by the last search.
+   * @return {@link #nodes}
+   */
+  @Override
+  public long getNodes() {
+    return nodes;
+  }
+
+  /**
+   * Returns the number of rows of the matrix, one for each valid tuple of
+   * each cage.
+   * @return the number of rows.
+   */
+  public int getRowCount() {
+    return rowCages.length;
+  }
+
+  /**
+   * Finds one solution of the puzzle.
+   * @return the grid of numbers indexed by [row][column], or null if the
+   *         puzzle cannot be solved.
+   * @throws CancellationException if the thread is interrupted.
+   */
+  @Override
+  public int[][] solve() {
+    if (countSolutions(1) == 0) {
+      return null;
+    }
+    return getSolution(0);
+  }
+
+  /**
+   * Counts the solutions of the puzzle, stopping early at a limit.
+   * @param limit   the search stops once this many solutions are found.
+   * @return the number of solutions found, at most limit.
+   * @throws CancellationException if the thread is interrupted.
+   */
+  @Override
+  public int countSolutions(int limit) {
+    /** Undoes whatever an earlier search left covered. */
+    System.arraycopy(initial[0], 0, left, 0, left.length);
+    System.arraycopy(initial[1], 0, right, 0, right.length);
+    System.arraycopy(initial[2], 0, up, 0, up.length);
+    System.arraycopy(initial[3], 0, down, 0, down.length);
+    System.arraycopy(initial[4], 0, counts, 0, counts.length);
+    solutionLimit = limit;
+    solutionCount = 0;
+    nodes = 0;
+    search(0);
+    return solutionCount;
+  }
+
+  /**
+   * Returns one of the first two solutions found by the last search.
+   * @param index   0 for the first solution, 1 for the second.
+   * @return the grid indexed by [row][column], or null if fewer solutions
+   *         were found.
+   */
+  @Override
+  public int[][] getSolution(int index) {
+    if (index >= Math.min(solutionCount, solutions.length)) {
+      return null;
+    }
+    int[][] grid = new int[size][size];
+    for (int cell = 0; cell < cellCount; cell++) {
+      grid[cell / size][cell % size] = solutions[index][cell];
+    }
+    return grid;
+  }
+
+  /**
+   * Depth first search, covering the column with the fewest rows left.
+   * Stops as soon as enough solutions have been found, leaving the
+   * columns covered for the next search to reset.
+   * @param depth   how many rows have been chosen.
+   * @return true if enough solutions have been found to stop.
+   */
+  private boolean search(int depth) {
+    nodes++;
+    if ((nodes & INTERRUPT_MASK) == 0
+        && Thread.currentThread().isInterrupted()) {
+      throw new CancellationException("The search was interrupted");
+    }
+    if (right[0] == 0) {
+      return addSolution(depth);
+    }
+
+    int column = right[0];
+    for (int other = right[column]; other != 0; other = right[other]) {
+      if (counts[other] < counts[column]) {
+        column = other;
+      }
+    }
+    if (counts[column] == 0) {
+      return false;
+    }
+
+    cover(column);
+    for (int row = down[column]; row != column; row = down[row]) {
+      chosen[depth] = row;
+      for (int node = right[row]; node != row; node = right[node]) {
+        cover(columnOf[node]);
+      }
+      if (search(depth + 1)) {
+        return true;
+      }
+      for (int node = left[row]; node != row; node = left[node]) {
+        uncover(columnOf[node]);
+      }
+    }
+    uncover(column);
+    return false;
+  }
+
+  /**
+   * Fills in the grid from the rows chosen, keeping it if it is one of the
+   * first two solutions, and counts it.
+   * @param depth   how many rows have been chosen.
+   * @return true if enough solutions have been found to stop.
+   */
+  private boolean addSolution(int depth) {
+    if (solutionCount < solutions.length) {
+      int[] values = solutions[solutionCount];
+      for (int index = 0; index < depth; index++) {
+        int row = rowOf[chosen[index]];
+        int cage = rowCages[row];
+        int start = cageStart[cage];
+        for (int position = 0; position < cageStart[cage + 1] - start;
+             position++) {
+          values[cageCells[start + position]] = Integer.numberOfTrailingZeros(
+              cageTuples[cage][rowTuples[row] + position]) + 1;
+        }
+      }
+    }
+    solutionCount++;
+    return solutionCount >= solutionLimit;
+  }
+
+  /**
+   * Takes a column out of the list and every row crossing it out of the
+   * other columns.
+   * @param column    the column's node.
+   */
+  private void cover(int column) {
+    right[left[column]] = right[column];
+    left[right[column]] = left[column];
+    for (int row = down[column]; row != column; row = down[row]) {
+      for (int node = right[row]; node != row; node = right[node]) {
+        down[up[node]] = down[node];
+        up[down[node]] = up[node];
+        counts[columnOf[node]]--;
+      }
+    }
+  }
+
+  /**
+   * Puts back a column taken out by {@link #cover(int)}, in the reverse
+   * order.
+   * @param column    the column's node.
+   */
+  private void uncover(int column) {
+    for (int row = up[column]; row != column; row = up[row]) {
+      for (int node = left[row]; node != row; node = left[node]) {
+        counts[columnOf[node]]++;
+        down[up[node]] = node;
+        up[down[node]] = node;
+      }
+    }
+    right[left[column]] = column;
+    left[right[column]] = column;
+  }
+}
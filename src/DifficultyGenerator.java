@@ -0,0 +1,167 @@
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Generates puzzles in parallel until enough of them fall inside a band of
+ * difficulty, as graded by {@link GradedPuzzle}. Candidates are drawn from a
+ * {@link PuzzleBatch} by index, so the puzzles found only depend on the base
+ * seed and not on the number of threads.
+ * @author starp
+ *
+ */
+public class DifficultyGenerator {
+  /**
+   * Where the candidate puzzles come from.
+   */
+  private final PuzzleBatch batch;
+  /**
+   * Number of threads generating candidates.
+   */
+  private int threads = Runtime.getRuntime().availableProcessors();
+  /**
+   * Generation gives up after this many candidates, in case the band is
+   * never reached.
+   */
+  private int candidateLimit = Integer.MAX_VALUE;
+  /**
+   * Number of candidates graded by the last call to generate.
+   */
+  private final AtomicInteger candidates = new AtomicInteger();
+
+  /**
+   * Creates a generator for puzzles of one size.
+   * @param size    number of columns/rows of each puzzle.
+   * @param max     maximum number of cells in a cage.
+   */
+  public DifficultyGenerator(int size, int max) {
+    batch = new PuzzleBatch(size, max);
+  }
+
+  /**
+   * Mutator for whether generated puzzles must have a unique solution.
+   * @param unique    true if ambiguous cage layouts should be repaired.
+   */
+  public void setUnique(boolean unique) {
+    batch.setUnique(unique);
+  }
+
+  /**
+   * Mutator for the number of threads generating candidates.
+   * @param threads   the number of threads, at least 1.
+   */
+  public void setThreads(int threads) {
+    this.threads = Math.max(1, threads);
+  }
+
+  /**
+   * Mutator for the number of candidates tried before giving up.
+   * @param candidateLimit    the maximum number of candidates.
+   */
+  public void setCandidateLimit(int candidateLimit) {
+    this.candidateLimit = candidateLimit;
+  }
+
+  /**
+   * Accessor for the number of candidates graded by the last generate.
+   * @return the number of candidates.
+   */
+  public int getCandidates() {
+    return candidates.get();
+  }
+
+  /**
+   * Generates puzzles until enough have a score inside the band. Once the
+   * quota is met, workers stop taking new candidates and drop any they
+   * were building that come after the last puzzle needed.
+   * @param baseSeed    the seed the candidates are derived from.
+   * @param count       number of puzzles wanted.
+   * @param minScore    lowest score accepted.
+   * @param maxScore    highest score accepted.
+   * @return the first puzzles of the batch inside the band, in index order.
+   *         Fewer than count are returned if the candidate limit is reached
+   *         or the thread is interrupted.
+   */
+  public List<GradedPuzzle> generate(long baseSeed, int count, long minScore,
+                                     long maxScore) {
+    List<GradedPuzzle> found = new ArrayList<GradedPuzzle>();
+    if (count <= 0) {
+      return found;
+    }
+    AtomicInteger nextIndex = new AtomicInteger();
+    /** Candidates after this index can no longer be among the first found. */
+    AtomicInteger cutoff = new AtomicInteger(candidateLimit - 1);
+    candidates.set(0);
+
+    Runnable worker = () -> {
+      while (!Thread.currentThread().isInterrupted()) {
+        int index = nextIndex.getAndIncrement();
+        if (index > cutoff.get() || index < 0) {
+          return;
+        }
+        GameData gameData = batch.generate(baseSeed, index);
+        /** The quota may have been met while the puzzle was generated. */
+        if (index > cutoff.get()) {
+          return;
+        }
+        GradedPuzzle puzzle = new GradedPuzzle(gameData, index);
+        candidates.incrementAndGet();
+        long score = puzzle.getScore();
+        if (score >= minScore && score <= maxScore) {
+          accept(found, puzzle, count, cutoff);
+        }
+      }
+    };
+
+    ExecutorService pool = Executors.newFixedThreadPool(threads);
+    try {
+      List<Future<?>> futures = new ArrayList<Future<?>>();
+      for (int thread = 0; thread < threads; thread++) {
+        futures.add(pool.submit(worker));
+      }
+      for (Future<?> future : futures) {
+        future.get();
+      }
+    }
+    catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+    catch (ExecutionException e) {
+      throw new IllegalStateException("Puzzle generation failed",
+                                      e.getCause());
+    }
+    finally {
+      pool.shutdownNow();
+    }
+
+    synchronized (found) {
+      found.sort(Comparator.comparingInt(GradedPuzzle::getIndex));
+      return new ArrayList<GradedPuzzle>(
+          found.subList(0, Math.min(count, found.size())));
+    }
+  }
+
+  /**
+   * Adds a puzzle inside the band, lowering the cutoff once the quota is
+   * met.
+   * @param found     the puzzles accepted so far.
+   * @param puzzle    the puzzle to be added.
+   * @param count     number of puzzles wanted.
+   * @param cutoff    the last index workers should still build.
+   */
+  private static void accept(List<GradedPuzzle> found, GradedPuzzle puzzle,
+                             int count, AtomicInteger cutoff) {
+    synchronized (found) {
+      found.add(puzzle);
+      if (found.size() >= count) {
+        found.sort(Comparator.comparingInt(GradedPuzzle::getIndex));
+        cutoff.set(Math.min(cutoff.get(), found.get(count - 1).getIndex()));
+      }
+    }
+  }
+}
@@ -1,7 +1,5 @@
-import java.util.ArrayList;
-import java.util.Collections;
-
 import javafx.scene.layout.Pane;
+import javafx.scene.shape.Shape;
 
 /**
  * Cage where the division operation will be applied to the numbers.
@@ -19,53 +17,37 @@ class DivisionCage extends Cage {
   public DivisionCage(GCell[] cellArray, Pane paneToDraw, int target) {
     super(cellArray, paneToDraw, target);
   }
+  
+  /**
+   * Calls the parent constructor with an outline that has already been
+   * traced.
+   * @param cellArray     the cells that make up the cage.
+   * @param paneToDraw    the pane where the cage will be drawn.
+   * @param target        the target number.
+   * @param outline       the border of the cells.
+   */
+  public DivisionCage(GCell[] cellArray, Pane paneToDraw, int target, 
+                      Shape outline) {
+    super(cellArray, paneToDraw, target, outline);
+  }
 
   /**
    * Creates the label for the target and the operations. 
-   * @param target        the label will take the form "target"
+   * @param target        the label will take the form "target÷"
    * @param paneToDraw    where the label will be added to.
    */
   @Override
   protected void createTargetLabel(int target, Pane paneToDraw) {
-    super.createTargetLabel("", target, paneToDraw);      
+    super.createTargetLabel("÷", target, paneToDraw);      
   }
 
-  /** 
-   * @return true if the cells can be arranged and divided to make the 
-   *         target.
+  /**
+   * The largest number is divided by each of the others.
+   * @return {@link Operations#DIVIDE}
    */
   @Override
-  protected boolean completedCorrectly() {
-    /** Gets the numbers from the cells. */
-    ArrayList<Integer> numbers = new ArrayList<Integer>();
-    
-    for (GCell cell : cells) {
-      numbers.add(cell.getContent());
-    }
-    
-    /** Firstly checks whether there is a zero error. */
-    if (numbers.contains(0)) {
-      return false;
-    }
-    
-    /** 
-     * Because the target must be an integer, the other numbers must be
-     * factors of the largest number. 
-     */
-    Integer maxNumber = Collections.max(numbers);
-    numbers.remove(maxNumber);
-    int numberAfterDivision = maxNumber.intValue();
-    for (Integer number : numbers) {
-      if (maxNumber % number != 0) {
-        return false;
-      }
-      
-      /** Otherwise divide by that number. */
-      numberAfterDivision /= number;
-    }
-    
-    /** Returns whether the divided number is equal to the target. */
-    return target == numberAfterDivision;    
+  protected Operations getOperator() {
+    return Operations.DIVIDE;
   }
   
 }
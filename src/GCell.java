@@ -1,7 +1,5 @@
-import javafx.scene.image.Image;
 import javafx.scene.layout.Pane;
 import javafx.scene.paint.Color;
-import javafx.scene.paint.ImagePattern;
 import javafx.scene.shape.Rectangle;
 import javafx.scene.shape.StrokeType;
 
@@ -110,48 +108,8 @@ public class GCell extends Rectangle {
   public void enterNumber(int input, int type) {
     /** First checks that the input is valid. */
     if (input <= type && input > 0) {
-      /** Stores the path of the number image. */
-      String imagePath = "";
-      switch (fontSize) {
-        case MEDIUM:
-          imagePath = input == 1 ? "one.png" 
-                                  : input == 2 ? "two.png"
-                                  : input == 3 ? "three.png"
-                                  : input == 4 ? "four.png"
-                                  : input == 5 ? "five.png"
-                                  : input == 6 ? "six.png"
-                                  : input == 7 ? "seven.png"
-                                  : input == 8 ? "eight.png"
-                                  : "nine.png";
-          break;
-        case BIG:
-          imagePath = input == 1? "oneBig.png"
-                                : input == 2 ? "twoBig.png"
-                                : input == 3 ? "threeBig.png"
-                                : input == 4 ? "fourBig.png"
-                                : input == 5 ? "fiveBig.png"
-                                : input == 6 ? "sixBig.png"
-                                : input == 7 ? "sevenBig.png"
-                                : input == 8 ? "eightBig.png"
-                                : "nineBig.png";
-          break;
-        case SMALL:
-          imagePath = input == 1? "oneSmall.png"
-                                : input == 2 ? "twoSmall.png"
-                                : input == 3 ? "threeSmall.png"
-                                : input == 4 ? "fourSmall.png"
-                                : input == 5 ? "fiveSmall.png"
-                                : input == 6 ? "sixSmall.png"
-                                : input == 7 ? "sevenSmall.png"
-                                : input == 8 ? "eightSmall.png"
-                                : "nineSmall.png";
-          break;
-          
-      }
-      
-      /** Finds the image containing the number. */
-      Image image = new Image(imagePath);
-      setFill(new ImagePattern(image));   
+      /** Reuses the shared drawing of the number. */
+      setFill(NumberImages.get(input, fontSize));
       content = input;
     }
   }
@@ -175,7 +133,8 @@ public class GCell extends Rectangle {
       selected.unselect();
     }
     selected = this;
-    setStrokeWidth(10);
+    /** Keeps the border thinner than the cell on large grids. */
+    setStrokeWidth(Math.min(10, getWidth() / 5));
     setStroke(Color.PLUM);
   }
   
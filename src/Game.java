@@ -1,9 +1,17 @@
 
 import java.io.File;
+import java.io.IOException;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 import javafx.application.Application;
+import javafx.animation.PauseTransition;
+import javafx.application.Platform;
+import javafx.concurrent.Task;
 import javafx.beans.value.ChangeListener;
 import javafx.beans.value.ObservableValue;
 import javafx.event.ActionEvent;
@@ -17,20 +25,25 @@ import javafx.scene.control.Button;
 import javafx.scene.control.CheckBox;
 import javafx.scene.control.ChoiceBox;
 import javafx.scene.control.Label;
+import javafx.scene.control.ProgressIndicator;
 import javafx.scene.control.Slider;
 import javafx.scene.control.TextArea;
 import javafx.scene.control.TextField;
+import javafx.scene.control.ToggleButton;
 import javafx.scene.image.Image;
 import javafx.scene.image.ImageView;
 import javafx.scene.input.KeyEvent;
 import javafx.scene.input.MouseEvent;
 import javafx.scene.layout.BorderPane;
+import javafx.scene.layout.FlowPane;
 import javafx.scene.layout.HBox;
 import javafx.scene.layout.Pane;
 import javafx.scene.layout.Priority;
 import javafx.scene.layout.VBox;
+import javafx.scene.shape.Path;
 import javafx.stage.FileChooser;
 import javafx.stage.Stage; 
+import javafx.util.Duration;
 
 /**
  * This will be the main class for the game.
@@ -74,10 +87,97 @@ public class Game extends Application {
    * Contains the history of the action performed.
    */
   private History history;
+  /**
+   * Saves the game as it is played, or null if it isn't being saved.
+   */
+  private MoveJournal journal;
+  /**
+   * Where the game being played is saved, to be resumed next time.
+   */
+  private final File SAVEFILE = new File(System.getProperty("user.home"),
+                                         ".mathdoku-save");
   /**
    * The cell that has been currently selected.
    */
   private GCell selected;
+  /**
+   * Holds a button for each number that can be entered.
+   */
+  private FlowPane numberPane;
+  /**
+   * When the last digit key was pressed; digits typed in quick succession
+   * on the same cell make up one number on grids larger than 9x9.
+   */
+  private long lastDigitTime;
+  /**
+   * Whether the last digit key was recorded as an action of its own, which
+   * a second digit can then be added to.
+   */
+  private boolean digitRecorded;
+  /**
+   * The pencil marks as they were before the last digit key, kept while a
+   * second digit could still be added to it, or null.
+   */
+  private int[] marksBeforeDigit;
+  /**
+   * How long after a digit key the next one still adds to the number.
+   */
+  private final long DIGITDELAY = 1000;
+  /**
+   * How many seconds generating a puzzle may take before it is given up.
+   */
+  private final long GENERATIONTIMEOUT = 60;
+  /**
+   * Grids at least this large check uniqueness on every core when they 
+   * are generated while the player waits.
+   */
+  private final int PARALLELSIZE = 12;
+  /**
+   * Looks for hints one at a time away from the application thread, so 
+   * the grid can still be played while one is found.
+   */
+  private final ExecutorService hintExecutor = 
+      Executors.newSingleThreadExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "Hints");
+        thread.setDaemon(true);
+        return thread;
+      });
+  /**
+   * Puzzles generated ahead of time, so unseeded ones are ready at once.
+   */
+  private final PuzzlePool puzzlePool = new PuzzlePool();
+  /**
+   * Finds hints for the puzzle being played, or null until one is asked 
+   * for.
+   */
+  private HintEngine hintEngine;
+  /**
+   * The hint being looked for, or null if there isn't one.
+   */
+  private Future<?> pendingHint;
+  /**
+   * Counts the hints asked for, so a hint found after the grid has changed 
+   * is never shown.
+   */
+  private long hintRequest;
+  /**
+   * Explains the last hint found, or how the last puzzle was generated.
+   */
+  private Label statusLabel;
+  /**
+   * The cages of the puzzle being played along with the pencil marks of 
+   * each cell. Its numbers are only brought up to date for the cage of a
+   * cell whose number has just changed.
+   */
+  private GridState board;
+  /**
+   * Draws the pencil marks over the grid.
+   */
+  private PencilMarkLayer markLayer;
+  /**
+   * Selected while numbers entered are pencil marks rather than answers.
+   */
+  private ToggleButton pencilButton;
 
     
   /**
@@ -92,6 +192,8 @@ public class Game extends Application {
    * This will create the main user interface.
    */
   public void start(Stage primaryStage) {
+    /** Loads the number images while the window is being built. */
+    NumberImages.warmUp();
     /** Creates the primary pane and scene. */
     pane = new BorderPane();
     pane.setPrefSize(WINDOWSIZE, WINDOWSIZE);
@@ -108,12 +210,228 @@ public class Game extends Application {
     /** Adds the buttons around the grid. */
     addControls(pane);
     createGrid(true);   
+    resumeSavedGame();
     
     /** Adds some finishing touches to and shows the pane. */
     primaryStage.setTitle("Mathdoku");
     primaryStage.show();   
   }
   
+  /**
+   * Finishes saving the game when the application closes.
+   */
+  @Override
+  public void stop() {
+    puzzlePool.shutdown();
+    closeJournal();
+  }
+  
+  /**
+   * Carries on with the game that was being played last time, along with
+   * its undo and redo history, if it was saved.
+   */
+  private void resumeSavedGame() {
+    if (!SAVEFILE.isFile()) {
+      return;
+    }
+    try {
+      MoveJournal.Resumed resumed = MoveJournal.resume(SAVEFILE.toPath());
+      showGame(resumed.getGameData());
+      history.resume(resumed.getHistory(), grid);
+      journal = resumed.getJournal();
+      mistakeChecker.gridChanged(cages, grid);
+      showAllMarks();
+    }
+    catch (IOException e) {
+      Alert alert = new Alert(AlertType.WARNING, 
+                              "The saved game cannot be resumed.");
+      alert.show();
+    }
+  }
+  
+  /**
+   * Stops saving the current game, waiting for what has been played to be
+   * written. The player is warned if it couldn't be, waiting for them to
+   * see it as the application may be closing.
+   */
+  private void closeJournal() {
+    if (journal != null) {
+      try {
+        journal.close();
+      }
+      catch (IOException e) {
+        Alert alert = new Alert(AlertType.WARNING, 
+                                "The last moves of the game could not be "
+                                + "saved.");
+        alert.showAndWait();
+      }
+      journal = null;
+    }
+  }
+  
+  /**
+   * Starts looking for a hint on the numbers in the grid now, in the 
+   * background. Any hint still being looked for is given up.
+   */
+  private void requestHint() {
+    cancelHint();
+    if (hintEngine == null) {
+      /** The built in puzzle isn't loaded from game data. */
+      hintEngine = new HintEngine(Cage.describe(cages, type));
+    }
+    HintEngine engine = hintEngine;
+    int[] values = new int[type * type];
+    for (int cell = 0; cell < values.length; cell++) {
+      values[cell] = grid[cell / type][cell % type].getContent();
+    }
+    long request = hintRequest;
+    statusLabel.setText("Looking for a hint...");
+    pendingHint = hintExecutor.submit(() -> {
+      Hint hint = engine.findHint(values);
+      if (!Thread.currentThread().isInterrupted()) {
+        Platform.runLater(() -> showHint(hint, request));
+      }
+    });
+  }
+  
+  /**
+   * Gives up on the hint being looked for, as the grid has changed.
+   */
+  private void cancelHint() {
+    hintRequest++;
+    if (pendingHint != null) {
+      pendingHint.cancel(true);
+      pendingHint = null;
+    }
+    if (statusLabel != null) {
+      statusLabel.setText("");
+    }
+  }
+  
+  /**
+   * Selects the cell a hint is about and explains it, unless the grid has 
+   * changed since it was asked for.
+   * @param hint      the hint, or null if none was found.
+   * @param request   which hint this is.
+   */
+  private void showHint(Hint hint, long request) {
+    if (request != hintRequest) {
+      return;
+    }
+    pendingHint = null;
+    if (hint == null) {
+      statusLabel.setText("No hint could be found.");
+      return;
+    }
+    GCell cell = grid[hint.getRow()][hint.getColumn()];
+    cell.select(selected);
+    selected = cell;
+    statusLabel.setText(hint.toString());
+  }
+  
+  /**
+   * Notes a number in the selected cell's pencil marks, or rubs it out if
+   * it was already noted.
+   * @param number    the number.
+   */
+  private void toggleMark(int number) {
+    if (selected == null || number < 1 || number > type) {
+      return;
+    }
+    int cell = selected.getColumn() * type + selected.getRow();
+    lastDigitTime = 0;
+    board.toggleMark(cell, number);
+    showMarks(cell);
+  }
+  
+  /**
+   * Rubs out every pencil mark of the selected cell.
+   */
+  private void clearMarks() {
+    if (selected == null) {
+      return;
+    }
+    int cell = selected.getColumn() * type + selected.getRow();
+    lastDigitTime = 0;
+    board.setMarks(cell, 0);
+    showMarks(cell);
+  }
+  
+  /**
+   * Copies the pencil marks of every cell, so they can be put back.
+   * @return the marks, indexed row * type + column.
+   */
+  private int[] saveMarks() {
+    int[] marks = new int[type * type];
+    for (int cell = 0; cell < marks.length; cell++) {
+      marks[cell] = board.getMarks(cell);
+    }
+    return marks;
+  }
+  
+  /**
+   * Puts back the pencil marks kept before the last digit key, if there
+   * are any, redrawing the cells that change.
+   */
+  private void restoreMarks() {
+    if (marksBeforeDigit == null) {
+      return;
+    }
+    for (int cell = 0; cell < marksBeforeDigit.length; cell++) {
+      if (board.getMarks(cell) != marksBeforeDigit[cell]) {
+        board.setMarks(cell, marksBeforeDigit[cell]);
+        showMarks(cell);
+      }
+    }
+    marksBeforeDigit = null;
+  }
+  
+  /**
+   * Updates the pencil marks after a cell's number has changed. A number
+   * hides the cell's own marks and rubs out the marks it rules out in the
+   * cell's row, column and cage; an empty cell shows its marks again.
+   * @param cell    the cell that changed.
+   */
+  private void updateMarks(GCell cell) {
+    int index = cell.getColumn() * type + cell.getRow();
+    int number = cell.getContent();
+    int cage = board.getCageOf(index);
+    /** Only the numbers of the cell's cage are needed. */
+    if (cage >= 0) {
+      for (int position = 0; position < board.getCageSize(cage); position++) {
+        int other = board.getCageCell(cage, position);
+        board.setValue(other, grid[other / type][other % type].getContent());
+      }
+    }
+    board.setValue(index, number);
+    showMarks(index);
+    if (number != 0) {
+      int changed = board.eliminateMarks(index, number);
+      for (int position = 0; position < changed; position++) {
+        showMarks(board.getChangedMark(position));
+      }
+    }
+  }
+  
+  /**
+   * Draws the pencil marks of a cell, unless it holds a number.
+   * @param cell    the cell's index, row * type + column.
+   */
+  private void showMarks(int cell) {
+    boolean empty = grid[cell / type][cell % type].getContent() == 0;
+    markLayer.draw(cell, empty ? board.getMarks(cell) : 0);
+  }
+  
+  /**
+   * Draws the pencil marks of every cell, after many numbers may have 
+   * changed at once.
+   */
+  private void showAllMarks() {
+    for (int cell = 0; cell < type * type; cell++) {
+      showMarks(cell);
+    }
+  }
+  
   /**
    * Creates the buttons around the grid.
    */
@@ -139,12 +457,22 @@ public class Game extends Application {
     Image undoImage = new Image("undo.png", 50, 50, false, false);
     Button undoButton = new Button("", new ImageView(undoImage));   
     undoButton.setPrefSize(50, 50);
-    undoButton.setOnAction(e -> history.undo(grid, mistakeChecker, cages));
+    undoButton.setOnAction(e -> {
+      cancelHint();
+      lastDigitTime = 0;
+      history.undo(grid, mistakeChecker, cages);
+      showAllMarks();
+    });
     
     Image redoImage = new Image("redo.png", 50, 50, false, false);
     Button redoButton = new Button("", new ImageView(redoImage));
     redoButton.setPrefSize(50, 50);
-    redoButton.setOnAction(e -> history.redo(grid, mistakeChecker, cages));
+    redoButton.setOnAction(e -> {
+      cancelHint();
+      lastDigitTime = 0;
+      history.redo(grid, mistakeChecker, cages);
+      showAllMarks();
+    });
     history.setButtons(undoButton, redoButton);
     
     Button clearAllButton = new Button("Clear All");  
@@ -152,8 +480,11 @@ public class Game extends Application {
       /** When the button is clicked, the grid will be cleared. */
       @Override
       public void handle(ActionEvent event) {
-        history.addHistory(grid);
+        cancelHint();
+        lastDigitTime = 0;
         ClearAll.clearAll(type, grid, cages, mistakeChecker);
+        history.addHistory(grid);
+        showAllMarks();
       }     
     });
     
@@ -165,8 +496,16 @@ public class Game extends Application {
       /** Clears the selected cell and records this in history. */
       @Override
       public void handle(MouseEvent event) {
-        history.addHistory(grid);
+        if (pencilButton.isSelected()) {
+          clearMarks();
+          return;
+        }
+        cancelHint();
+        lastDigitTime = 0;
         selected.clear();
+        history.addHistory(grid, selected);
+        mistakeChecker.cellChanged(cages, grid, selected);
+        updateMarks(selected);
       }     
     });
     
@@ -175,8 +514,20 @@ public class Game extends Application {
     generateGameButton.addEventHandler(MouseEvent.MOUSE_CLICKED, 
                                        new GenerationHandler());
     
+    /** Adds a button that points out the next cell that can be worked out. */
+    Button hintButton = new Button("Hint");
+    hintButton.setOnAction(e -> requestHint());
+    
+    /** 
+     * Switches the numbers entered between answers and pencil marks, also 
+     * done with the P key.
+     */
+    pencilButton = new ToggleButton("Pencil");
+    pencilButton.setFocusTraversable(false);
+    
     topPane.getChildren().addAll(undoButton, redoButton, clearAllButton,
-                                 clearButton, generateGameButton);
+                                 clearButton, generateGameButton, hintButton,
+                                 pencilButton);
     
     /** Creates the buttons for loading. */  
     Button loadButtonFile = new Button("Load\nfrom\nFile");
@@ -215,25 +566,53 @@ public class Game extends Application {
     BorderPane.setAlignment(showMistakeBox, Pos.CENTER);
     bottomPane.getChildren().add(showMistakeBox);
     
+    /** Explains the last hint or generated puzzle. */
+    statusLabel = new Label();
+    statusLabel.setWrapText(true);
+    statusLabel.setMaxWidth(250);
+    BorderPane.setAlignment(statusLabel, Pos.CENTER);
+    bottomPane.getChildren().add(statusLabel);
+    
     /** Buttons the user can press to enter numbers into the boxes. */
-    for (int number = 1; number <= 9; number++) {
-      /** The number that will be entered when the button is clicked. */
-      final int finalNumber = number;
-      Button numberButton = new Button(Integer.toString(finalNumber));
-      numberButton.addEventHandler(MouseEvent.MOUSE_CLICKED, 
-                                   e -> selected.enterNumber(finalNumber, 
-                                                             type));
-      numberButton.addEventHandler(MouseEvent.MOUSE_CLICKED,
-                                   e -> mistakeChecker.checkMistakes(cages, 
-                                                                     grid));
-      numberButton.setPrefSize(40, 40);
-      bottomPane.getChildren().add(numberButton);
-    }
+    numberPane = new FlowPane();
+    numberPane.setHgap(2);
+    numberPane.setVgap(2);
+    HBox.setHgrow(numberPane, Priority.ALWAYS);
+    bottomPane.getChildren().add(numberPane);
+    createNumberButtons();
     
     /** Adds the event listener for keys pressed by the user. */
     primaryPane.addEventHandler(KeyEvent.KEY_RELEASED, new KeyBoardHandler());
   } 
   
+  /**
+   * Creates a button for each number that can be entered into the grid.
+   */
+  private void createNumberButtons() {
+    numberPane.getChildren().clear();
+    for (int number = 1; number <= Math.max(type, 9); number++) {
+      /** The number that will be entered when the button is clicked. */
+      final int finalNumber = number;
+      Button numberButton = new Button(Integer.toString(finalNumber));
+      numberButton.addEventHandler(MouseEvent.MOUSE_CLICKED, e -> {
+        /** Notes the number in pencil instead of entering it. */
+        if (pencilButton.isSelected()) {
+          toggleMark(finalNumber);
+          return;
+        }
+        cancelHint();
+        lastDigitTime = 0;
+        selected.enterNumber(finalNumber, type);
+        history.addHistory(grid, selected);
+        mistakeChecker.cellChanged(cages, grid, selected);
+        updateMarks(selected);
+      });
+      /** Smaller buttons so that they fit under a large grid. */
+      numberButton.setPrefSize(type > 9 ? 36 : 40, type > 9 ? 30 : 40);
+      numberPane.getChildren().add(numberButton);
+    }
+  }
+  
   /**
    * Creates the grid to be played on.
    * @param isDefault   whether a default grid is being drawn.
@@ -262,11 +641,14 @@ public class Game extends Application {
               public void handle(MouseEvent event) {
                 cell.select(selected);
                 selected = cell;
+                lastDigitTime = 0;
               }        
             });
               
         }
     }
+    /** Lays the pencil marks over the cells, below the cages. */
+    markLayer = new PencilMarkLayer(type, cellWidth, gridPane);
     
     if (isDefault) {
       /** Draws the cages. */
@@ -289,14 +671,36 @@ public class Game extends Application {
       cages.add(new MultiplicationCage(new GCell[] {grid[3][4], grid[3][5]}, gridPane, 30));
       cages.add(new DivisionCage(new GCell[] {grid[5][3], grid[5][4]}, gridPane, 2));
       cages.add(new AdditionCage(new GCell[] {grid[4][5], grid[5][5]}, gridPane, 9));
+      board = new GridState(Cage.describe(cages, type));
     }
   }  
  
   /**
-   * Resets the state of the game.
+   * Resets the state of the game and starts saving the new one.
    * @param gameData    used to extract data from a text area/file.
    */
   private void resetGame(GameData gameData) {
+    closeJournal();
+    showGame(gameData);
+    try {
+      journal = MoveJournal.create(SAVEFILE.toPath(), gameData, 
+                                   history.getMoves());
+    }
+    catch (IOException e) {
+      Alert alert = new Alert(AlertType.WARNING, 
+                              "The game cannot be saved as it is played.");
+      alert.show();
+    }
+  }
+  
+  /**
+   * Replaces the grid and cages with those of a puzzle.
+   * @param gameData    the puzzle.
+   */
+  private void showGame(GameData gameData) {
+    cancelHint();
+    hintEngine = new HintEngine(gameData);
+    board = new GridState(gameData);
     /** Removes the grid from the pane. */
     gridPane.getChildren().clear();
     grid = null;
@@ -306,6 +710,8 @@ public class Game extends Application {
     history.clear();
     /** Unselects a cell. */
     selected = null;
+    lastDigitTime = 0;
+    marksBeforeDigit = null;
     
     /** Removes everything from the mistake checker. */
     mistakeChecker.resetMistakeChecker();   
@@ -319,6 +725,21 @@ public class Game extends Application {
     /** Updates the size of the history object and mistake checker. */
     history.setSize(type);
     mistakeChecker.setType(type);
+    createNumberButtons();
+    
+    /** Traces the outlines of all the cages in one pass over the grid. */
+    int[] cageOf = new int[type * type];
+    Arrays.fill(cageOf, -1);
+    for (int i = 0; i < data.getCages().size(); i++) {
+      for (Integer cellNo : data.getCages().get(i)) {
+        cageOf[cellNo - 1] = i;
+      }
+    }
+    Path[] outlines = CageOutline.traceAll(type, type, cageOf, 
+                                           data.getCages().size(), 
+                                           grid[0][0].getWidth(), 
+                                           grid[0][0].getX(), 
+                                           grid[0][0].getY());
     
     /** Creates the cages. */
     for (int i = 0; i < data.getCages().size(); i++) {
@@ -334,22 +755,27 @@ public class Game extends Application {
       switch (data.getOperators().get(i)) {
         case ADD:
           cages.add(new AdditionCage(cageCells, gridPane, 
-                                     data.getTargets().get(i)));
+                                     data.getTargets().get(i), 
+                                     outlines[i]));
           break;
         case MINUS:
           cages.add(new SubtractionCage(cageCells, gridPane, 
-                                        data.getTargets().get(i)));
+                                        data.getTargets().get(i), 
+                                        outlines[i]));
           break;
         case DIVIDE:
           cages.add(new DivisionCage(cageCells, gridPane, 
-                                     data.getTargets().get(i)));
+                                     data.getTargets().get(i), 
+                                     outlines[i]));
           break;
         case TIMES:
           cages.add(new MultiplicationCage(cageCells, gridPane, 
-                                           data.getTargets().get(i))); 
+                                           data.getTargets().get(i), 
+                                           outlines[i])); 
           break;
         case NONE:
-          cages.add(new Cage(cageCells, gridPane, data.getTargets().get(i)));
+          cages.add(new Cage(cageCells, gridPane, data.getTargets().get(i), 
+                             outlines[i]));
           break;
       }
     }
@@ -395,11 +821,21 @@ public class Game extends Application {
             newSelected = grid[selected.getColumn() + 1][selected.getRow()];
           }
           break;
-        /** Clears a cell. */
+        /** Clears a cell, or only its pencil marks in pencil mode. */
         case BACK_SPACE:
-          history.addHistory(grid);
+          if (pencilButton.isSelected()) {
+            clearMarks();
+            break;
+          }
+          cancelHint();
           selected.clear();
+          history.addHistory(grid, selected);
+          updateMarks(selected);
           break;        
+        /** Switches between entering answers and pencil marks. */
+        case P:
+          pencilButton.setSelected(!pencilButton.isSelected());
+          break;
       default:
         break;
       }
@@ -408,60 +844,89 @@ public class Game extends Application {
       if (newSelected != selected) {
         newSelected.select(selected);
         selected = newSelected;
+        lastDigitTime = 0;
       }
       
       /** If a new number is entered then it is recorded. */
-      if (event.getCode().isDigitKey() || event.getCode().isKeypadKey()) {
+      if ((event.getCode().isDigitKey() || event.getCode().isKeypadKey())
+          && pencilButton.isSelected()) {
+        toggleMark(digitOf(event));
+      }
+      else if (event.getCode().isDigitKey() 
+               || event.getCode().isKeypadKey()) {
+        cancelHint();
         /** New value entered. */
-        int value = 0;
-        /** Enters the corresponding number when number key pressed. */
-        switch (event.getCode()) {
-          case NUMPAD1:
-          case DIGIT1:
-            value = 1;          
-            break;
-          case NUMPAD2:
-          case DIGIT2:
-            value = 2;
-            break;
-          case NUMPAD3:
-          case DIGIT3:
-            value = 3;
-            break;
-          case NUMPAD4:
-          case DIGIT4:
-            value = 4;
-            break;
-          case NUMPAD5:
-          case DIGIT5:
-            value = 5;
-            break;
-          case NUMPAD6:
-          case DIGIT6:
-            value = 6;
-            break;
-          case NUMPAD7:
-          case DIGIT7:
-            value = 7;
-            break;
-          case NUMPAD8:
-          case DIGIT8:
-            value = 8;
-            break;
-          case NUMPAD9:
-          case DIGIT9:
-            value = 9;
-            break;
-        default:
-          break;
+        int value = digitOf(event);
+        
+        /** A quick second digit adds to the number on large grids. */
+        long now = System.currentTimeMillis();
+        int previous = selected.getContent();
+        int combined = previous * 10 + value;
+        boolean combine = type > 9 && now - lastDigitTime < DIGITDELAY 
+                          && previous != 0 && combined <= type;
+        if (combine) {
+          value = combined;
+          /** Puts back the marks the first digit rubbed out on its own. */
+          restoreMarks();
         }
-        history.addHistory(grid);
+        lastDigitTime = now;
+        
         selected.enterNumber(value, type);
+        /** Both digits make up one move. */
+        if (combine && digitRecorded) {
+          history.amendHistory(grid, selected);
+        }
+        else {
+          history.addHistory(grid, selected);
+        }
+        digitRecorded = previous != value;
+        marksBeforeDigit = !combine && type > 9 && value * 10 + 1 <= type
+                           ? saveMarks() : null;
+        updateMarks(selected);
       }
       
-      /** Checks if there are any mistakes. */
-      mistakeChecker.checkMistakes(cages, grid);
+      /** Checks if there are any mistakes in the selected cell's lines. */
+      mistakeChecker.cellChanged(cages, grid, selected);
     }    
+    
+    /**
+     * Works out which number a digit key stands for.
+     * @param event   the key released.
+     * @return the number, or 0 for a key that isn't 1 to 9.
+     */
+    private int digitOf(KeyEvent event) {
+      switch (event.getCode()) {
+        case NUMPAD1:
+        case DIGIT1:
+          return 1;
+        case NUMPAD2:
+        case DIGIT2:
+          return 2;
+        case NUMPAD3:
+        case DIGIT3:
+          return 3;
+        case NUMPAD4:
+        case DIGIT4:
+          return 4;
+        case NUMPAD5:
+        case DIGIT5:
+          return 5;
+        case NUMPAD6:
+        case DIGIT6:
+          return 6;
+        case NUMPAD7:
+        case DIGIT7:
+          return 7;
+        case NUMPAD8:
+        case DIGIT8:
+          return 8;
+        case NUMPAD9:
+        case DIGIT9:
+          return 9;
+      default:
+        return 0;
+      }
+    }
   }
   
   /**
@@ -587,10 +1052,38 @@ public class Game extends Application {
      * The maximum number of cells in a cage. 
      */
     private Slider maxSlider;
+    /**
+     * Whether the generated puzzle must have only one solution.
+     */
+    private CheckBox uniqueBox;
     /**
      * Closes the stage.
      */
     private Stage loadStage;
+    /**
+     * Starts generating a puzzle.
+     */
+    private Button submitButton;
+    /**
+     * Stops the puzzle being generated.
+     */
+    private Button cancelButton;
+    /**
+     * Spins while a puzzle is being generated.
+     */
+    private ProgressIndicator progressIndicator;
+    /**
+     * Says how generation is going.
+     */
+    private Label progressLabel;
+    /**
+     * The puzzle being generated, or null if there isn't one.
+     */
+    private Task<GameData> generation;
+    /**
+     * Gives up on the puzzle being generated once it has taken too long.
+     */
+    private PauseTransition timeout;
     
     /**
      * @param event     the mouse event.
@@ -623,6 +1116,7 @@ public class Game extends Application {
         public void changed(ObservableValue<? extends Number> observable, 
                             Number oldValue, Number newValue) {
           maxValueLabel.setText(Double.toString(maxSlider.getValue()));
+          prefetch();
         }
       });
       maxSlider.setMajorTickUnit(1);
@@ -653,7 +1147,7 @@ public class Game extends Application {
       Label dimensionLabel = new Label("Grid size:");
       dimensionChoiceBox = new ChoiceBox<String>();
       /** Adds the different dimensions to the box. */
-      for (int i = 2; i <= 9; i++) {
+      for (int i = 2; i <= GameData.MAXSIZE; i++) {
         dimensionChoiceBox.getItems().add(String.format("%d x %d", i, i));
       }
       dimensionChoiceBox.setValue("2 x 2");
@@ -663,29 +1157,66 @@ public class Game extends Application {
                             String oldValue, String newValue) {
           int size = Integer.parseInt((newValue.split(" x "))[0]);
           maxSlider.setMax(size * size);
+          prefetch();
         }
       });
       HBox dimensionBox = new HBox();
       dimensionBox.setSpacing(10);
       dimensionBox.getChildren().addAll(dimensionLabel, dimensionChoiceBox);
       
+      /** Check box for asking for a puzzle with a unique solution. */
+      uniqueBox = new CheckBox("Unique solution");
+      uniqueBox.setOnAction(e -> prefetch());
+      
       /** Submit button. */
-      Button submitButton = new Button("Submit");
+      submitButton = new Button("Submit");
       submitButton.setOnAction(e -> generateNewGame());
       
+      /** Shows how generation is going and lets it be stopped. */
+      cancelButton = new Button("Cancel");
+      cancelButton.setDisable(true);
+      cancelButton.setOnAction(e -> cancelGeneration());
+      progressIndicator = new ProgressIndicator();
+      progressIndicator.setPrefSize(30, 30);
+      progressIndicator.setVisible(false);
+      progressLabel = new Label();
+      HBox submitBox = new HBox();
+      submitBox.setSpacing(10);
+      submitBox.setAlignment(Pos.CENTER_LEFT);
+      submitBox.getChildren().addAll(submitButton, cancelButton, 
+                                     progressIndicator, progressLabel);
+      
       loadPane.getChildren().addAll(dimensionBox, seedBox, maxBox, 
-                                    submitButton);
+                                    uniqueBox, submitBox);
       
+      /** Closing the window stops the puzzle being generated. */
+      loadStage.setOnHidden(e -> cancelGeneration());
       loadStage.show();
+      prefetch();
     }
     
     /**
-     * Generates a new game and restarts.
+     * Starts filling the pool of ready puzzles for the settings chosen, so 
+     * one is likely to be ready once they are submitted.
+     */
+    private void prefetch() {
+      if (seedField.getText().isEmpty()) {
+        int size = Integer.parseInt((dimensionChoiceBox.getValue().split(" x "))[0]);
+        puzzlePool.prefetch(size, (int) maxSlider.getValue(), 
+                            uniqueBox.isSelected());
+      }
+    }
+    
+    /**
+     * Starts generating a new game in the background, which restarts the 
+     * game once it is ready. Unseeded games are taken from the pool of 
+     * ready puzzles if there is one.
      */
     private void generateNewGame() {
+      PuzzleGenerator generator;
+      int size;
+      int max;
       try {
-        PuzzleGenerator generator;
-        
         String seedString = seedField.getText();
         /** Uses the correct puzzle generator constructor. */
         if (!seedString.equals(new String(""))) {
@@ -694,20 +1225,110 @@ public class Game extends Application {
         else {
           generator = new PuzzleGenerator();
         }
+        generator.setUnique(uniqueBox.isSelected());
         
         /** Size of the grid. */
-        int size = Integer.parseInt((dimensionChoiceBox.getValue().split(" x "))[0]); 
-        /** Sees if the user has entered a maximum cage size. */
-        
-        resetGame(generator.createGameData(size, (int)maxSlider.getValue()));
-        loadStage.close();
+        size = Integer.parseInt((dimensionChoiceBox.getValue().split(" x "))[0]); 
+        max = (int) maxSlider.getValue();
+        /** Seeded puzzles must not depend on how the threads run. */
+        if (size >= PARALLELSIZE && seedString.isEmpty()) {
+          generator.setParallelism(Runtime.getRuntime().availableProcessors());
+        }
       }
       catch (Exception e) {
         Alert errorAlert = new Alert(AlertType.ERROR);
         errorAlert.setContentText("Failed to generate a new game.");
         errorAlert.show();
+        return;
+      }
+      
+      /** Seeded games are always generated so they come out the same. */
+      if (seedField.getText().isEmpty()) {
+        GameData ready = puzzlePool.take(size, max, uniqueBox.isSelected());
+        if (ready != null) {
+          resetGame(ready);
+          statusLabel.setText(String.format("Ready at once; %.0f%% of "
+                                            + "puzzles have been.", 
+                                            puzzlePool.getHitRate() * 100));
+          loadStage.close();
+          return;
+        }
+      }
+      
+      /** Only the puzzle is made on the background thread. */
+      Task<GameData> task = new Task<GameData>() {
+        @Override
+        protected GameData call() {
+          generator.setProgressListener(
+              statistics -> updateMessage("Checked " 
+                                          + statistics.getAttempts() 
+                                          + " cage layouts..."));
+          return generator.createGameData(size, max);
+        }
+      };
+      task.setOnSucceeded(e -> {
+        finishGeneration();
+        resetGame(task.getValue());
+        GenerationStatistics statistics = generator.getStatistics();
+        statusLabel.setText(String.format("Generated in %.1f s after %d "
+                                          + "attempts.", 
+                                          statistics.getElapsed() / 1e9, 
+                                          statistics.getAttempts()));
+        loadStage.close();
+      });
+      task.setOnCancelled(e -> finishGeneration());
+      task.setOnFailed(e -> {
+        finishGeneration();
+        progressLabel.setText("");
+        Alert errorAlert = new Alert(AlertType.ERROR);
+        errorAlert.setContentText("Failed to generate a new game: " 
+                                  + task.getException().getMessage());
+        errorAlert.show();
+      });
+      
+      generation = task;
+      submitButton.setDisable(true);
+      cancelButton.setDisable(false);
+      progressIndicator.setVisible(true);
+      progressLabel.textProperty().bind(task.messageProperty());
+      
+      /** Gives up once generating has taken too long. */
+      timeout = new PauseTransition(Duration.seconds(GENERATIONTIMEOUT));
+      timeout.setOnFinished(e -> {
+        if (task.cancel(true)) {
+          progressLabel.textProperty().unbind();
+          progressLabel.setText("Gave up after " + GENERATIONTIMEOUT 
+                                + " s; try smaller cages.");
+        }
+      });
+      timeout.play();
+      
+      Thread thread = new Thread(task, "Generator");
+      thread.setDaemon(true);
+      thread.start();
+    }
+    
+    /**
+     * Stops the puzzle being generated, if there is one.
+     */
+    private void cancelGeneration() {
+      if (generation != null && generation.cancel(true)) {
+        progressLabel.textProperty().unbind();
+        progressLabel.setText("Cancelled.");
       }
     }
+    
+    /**
+     * Puts the window back to how it was before generation started.
+     */
+    private void finishGeneration() {
+      timeout.stop();
+      generation = null;
+      progressLabel.textProperty().unbind();
+      submitButton.setDisable(false);
+      cancelButton.setDisable(true);
+      progressIndicator.setVisible(false);
+    }
   }
   
   /**
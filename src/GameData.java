@@ -7,6 +7,10 @@ import java.util.List;
    *
    */
   public class GameData {
+    /**
+     * The largest number of columns/rows a grid can have.
+     */
+    public static final int MAXSIZE = 25;
     /**
      * Stores the size of a side of the new game grid.
      */
@@ -1,4 +1,401 @@
+import java.io.BufferedWriter;
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.function.Consumer;
 
-public class GameFile {
+/**
+ * An archive of puzzles in a compact binary form, which can be read by
+ * puzzle number without looking at the others. The file starts with a
+ * header, followed by the puzzles one after another, then an index
+ * holding where each puzzle starts as 8 bytes.
+ * <p>
+ * Each puzzle is its size and number of cages, then for each cage one
+ * byte for the operator, its target, its number of cells and its cells.
+ * Numbers are written as varints: 7 bits per byte with the top bit set on
+ * every byte but the last. Targets are zigzag encoded so negative ones
+ * still fit. Cells are written in increasing order as the gap from the
+ * previous one, so most take one byte.
+ * <p>
+ * The archive is memory mapped when opened, so it must be smaller than
+ * 2 GB. Reading puzzles from several threads at once is safe.
+ * @author starp
+ *
+ */
+public class GameFile implements Closeable {
+  /**
+   * Marks the start of an archive.
+   */
+  public static final int MAGIC = 0x4D444B41;
+  /**
+   * Version of the format written.
+   */
+  public static final int VERSION = 1;
+  /**
+   * Size of the header: magic, version, puzzle count and index offset.
+   */
+  private static final int HEADERSIZE = 24;
+  /**
+   * Size of each entry of the index.
+   */
+  private static final int INDEXENTRY = 8;
+  /**
+   * The operators in the order of their bytes.
+   */
+  private static final Operations[] OPERATORS = Operations.values();
+  /**
+   * The channel the archive was mapped from.
+   */
+  private final FileChannel channel;
+  /**
+   * The whole archive.
+   */
+  private final MappedByteBuffer mapped;
+  /**
+   * Number of puzzles in the archive.
+   */
+  private final int count;
+  /**
+   * Where the index starts.
+   */
+  private final int indexOffset;
 
+  /**
+   * Opens an archive and checks its header.
+   * @param path    the archive.
+   * @throws IOException if it can't be read or isn't an archive.
+   */
+  public GameFile(Path path) throws IOException {
+    channel = FileChannel.open(path, StandardOpenOption.READ);
+    try {
+      long length = channel.size();
+      if (length > Integer.MAX_VALUE) {
+        throw new IOException("Archives must be smaller than 2 GB");
+      }
+      if (length < HEADERSIZE) {
+        throw new IOException("Not a puzzle archive");
+      }
+      mapped = channel.map(FileChannel.MapMode.READ_ONLY, 0, length);
+      if (mapped.getInt(0) != MAGIC) {
+        throw new IOException("Not a puzzle archive");
+      }
+      if (mapped.getInt(4) != VERSION) {
+        throw new IOException("Unknown archive version " + mapped.getInt(4));
+      }
+      long puzzles = mapped.getLong(8);
+      long index = mapped.getLong(16);
+      if (puzzles < 0 || index < HEADERSIZE
+          || index + puzzles * INDEXENTRY != length) {
+        throw new IOException("The archive's index is damaged");
+      }
+      count = (int) puzzles;
+      indexOffset = (int) index;
+    }
+    catch (IOException e) {
+      channel.close();
+      throw e;
+    }
+  }
+
+  /**
+   * Returns the number of puzzles in the archive.
+   * @return {@link #count}
+   */
+  public int size() {
+    return count;
+  }
+
+  /**
+   * Reads a single puzzle. Its cells come back in increasing order.
+   * @param number    which puzzle, from 0.
+   * @return the puzzle.
+   * @throws IOException if the puzzle has been damaged.
+   */
+  public GameData get(int number) throws IOException {
+    if (number < 0 || number >= count) {
+      throw new IndexOutOfBoundsException("No puzzle " + number + " in an "
+                                          + "archive of " + count);
+    }
+    long start = mapped.getLong(indexOffset + number * INDEXENTRY);
+    long end = number + 1 < count
+               ? mapped.getLong(indexOffset + (number + 1) * INDEXENTRY)
+               : indexOffset;
+    if (start < HEADERSIZE || end < start || end > indexOffset) {
+      throw new IOException("The index entry of puzzle " + number
+                            + " is damaged");
+    }
+
+    /** Each reader gets its own position in the shared mapping. */
+    ByteBuffer record = mapped.duplicate();
+    record.position((int) start).limit((int) end);
+    try {
+      int size = readVarint(record);
+      int cageCount = readVarint(record);
+      if (size < 1 || size > GameData.MAXSIZE || cageCount > size * size) {
+        throw new IOException("Puzzle " + number + " is damaged");
+      }
+      List<ArrayList<Integer>> cages =
+          new ArrayList<ArrayList<Integer>>(cageCount);
+      List<Operations> operators = new ArrayList<Operations>(cageCount);
+      List<Integer> targets = new ArrayList<Integer>(cageCount);
+      for (int cage = 0; cage < cageCount; cage++) {
+        int operator = record.get();
+        if (operator < 0 || operator >= OPERATORS.length) {
+          throw new IOException("Puzzle " + number + " is damaged");
+        }
+        operators.add(OPERATORS[operator]);
+        int zigzag = readVarint(record);
+        targets.add((zigzag >>> 1) ^ -(zigzag & 1));
+
+        int cellCount = readVarint(record);
+        if (cellCount > size * size) {
+          throw new IOException("Puzzle " + number + " is damaged");
+        }
+        ArrayList<Integer> cells = new ArrayList<Integer>(cellCount);
+        int cell = 0;
+        for (int index = 0; index < cellCount; index++) {
+          cell += readVarint(record);
+          cells.add(cell);
+        }
+        cages.add(cells);
+      }
+
+      GameData gameData = new GameData();
+      gameData.setSize(size);
+      gameData.setCages(cages);
+      gameData.setOperators(operators);
+      gameData.setTargets(targets);
+      return gameData;
+    }
+    catch (BufferUnderflowException e) {
+      throw new IOException("Puzzle " + number + " is cut short");
+    }
+  }
+
+  /**
+   * Closes the file. Puzzles must not be read afterwards.
+   * @throws IOException if the file can't be closed.
+   */
+  @Override
+  public void close() throws IOException {
+    channel.close();
+  }
+
+  /**
+   * Converts a text pack into an archive, skipping invalid puzzles.
+   * @param text          the pack, in the format {@link PuzzlePackReader}
+   *                      reads.
+   * @param archive       the archive to write.
+   * @param diagnostics   told about each puzzle that was skipped.
+   * @return the number of puzzles written.
+   * @throws IOException if either file can't be used.
+   */
+  public static int fromText(Path text, Path archive,
+                             Consumer<PuzzleDiagnostic> diagnostics)
+      throws IOException {
+    try (PuzzlePackReader reader = new PuzzlePackReader(text);
+         Writer writer = new Writer(archive)) {
+      reader.setDiagnosticHandler(diagnostics);
+      while (reader.hasNext()) {
+        writer.add(reader.next());
+      }
+      return writer.getCount();
+    }
+  }
+
+  /**
+   * Converts an archive into a text pack, with a blank line between
+   * puzzles.
+   * @param archive     the archive.
+   * @param text        the pack to write, in UTF-8.
+   * @throws IOException if either file can't be used.
+   */
+  public static void toText(Path archive, Path text) throws IOException {
+    try (GameFile gameFile = new GameFile(archive);
+         BufferedWriter out = Files.newBufferedWriter(
+             text, StandardCharsets.UTF_8)) {
+      for (int number = 0; number < gameFile.size(); number++) {
+        if (number > 0) {
+          out.write('\n');
+        }
+        PuzzleParser.format(gameFile.get(number), out);
+      }
+    }
+  }
+
+  /**
+   * Reads an unsigned varint.
+   * @param buffer    where the varint is read from.
+   * @return the number.
+   * @throws IOException if the varint is too long.
+   */
+  private static int readVarint(ByteBuffer buffer) throws IOException {
+    int value = 0;
+    for (int shift = 0; shift < 35; shift += 7) {
+      byte next = buffer.get();
+      value |= (next & 0x7F) << shift;
+      if (next >= 0) {
+        return value;
+      }
+    }
+    throw new IOException("A number in the archive is too long");
+  }
+
+  /**
+   * Writes an archive one puzzle at a time. The header and index are
+   * written when it is closed.
+   * @author starp
+   *
+   */
+  public static class Writer implements Closeable {
+    /**
+     * Number of bytes collected before they are written to the file.
+     */
+    private static final int BUFFERSIZE = 1 << 16;
+    /**
+     * The file being written.
+     */
+    private final FileChannel channel;
+    /**
+     * Bytes not yet written to the file.
+     */
+    private final ByteBuffer buffer = ByteBuffer.allocate(BUFFERSIZE);
+    /**
+     * Where each puzzle starts.
+     */
+    private long[] offsets = new long[64];
+    /**
+     * Number of puzzles added.
+     */
+    private int count = 0;
+    /**
+     * Where the next byte will go in the file.
+     */
+    private long position = HEADERSIZE;
+
+    /**
+     * Creates an archive, replacing any file already there.
+     * @param path    the archive.
+     * @throws IOException if the file can't be created.
+     */
+    public Writer(Path path) throws IOException {
+      channel = FileChannel.open(path, StandardOpenOption.CREATE,
+                                 StandardOpenOption.WRITE,
+                                 StandardOpenOption.TRUNCATE_EXISTING);
+      channel.position(HEADERSIZE);
+    }
+
+    /**
+     * Accessor for the number of puzzles added.
+     * @return {@link #count}
+     */
+    public int getCount() {
+      return count;
+    }
+
+    /**
+     * Adds a puzzle to the end of the archive.
+     * @param gameData    the puzzle.
+     * @throws IOException if it can't be written.
+     */
+    public void add(GameData gameData) throws IOException {
+      if (count == offsets.length) {
+        offsets = Arrays.copyOf(offsets, count * 2);
+      }
+      offsets[count++] = position + buffer.position();
+
+      List<? extends List<Integer>> cages = gameData.getCages();
+      ensure(10);
+      writeVarint(gameData.getSize());
+      writeVarint(cages.size());
+      for (int cage = 0; cage < cages.size(); cage++) {
+        List<Integer> cells = new ArrayList<Integer>(cages.get(cage));
+        Collections.sort(cells);
+        /** Operator, target and length, then at most 5 bytes a cell. */
+        ensure(11 + 5 * cells.size());
+        buffer.put((byte) gameData.getOperators().get(cage).ordinal());
+        int target = gameData.getTargets().get(cage);
+        writeVarint((target << 1) ^ (target >> 31));
+        writeVarint(cells.size());
+        int previous = 0;
+        for (int cell : cells) {
+          writeVarint(cell - previous);
+          previous = cell;
+        }
+      }
+    }
+
+    /**
+     * Writes the index and header, then closes the file.
+     * @throws IOException if they can't be written.
+     */
+    @Override
+    public void close() throws IOException {
+      try {
+        long indexOffset = position + buffer.position();
+        for (int number = 0; number < count; number++) {
+          ensure(INDEXENTRY);
+          buffer.putLong(offsets[number]);
+        }
+        flush();
+
+        ByteBuffer header = ByteBuffer.allocate(HEADERSIZE);
+        header.putInt(MAGIC).putInt(VERSION).putLong(count)
+              .putLong(indexOffset);
+        header.flip();
+        while (header.hasRemaining()) {
+          channel.write(header, header.position());
+        }
+      }
+      finally {
+        channel.close();
+      }
+    }
+
+    /**
+     * Makes room in the buffer, writing it out if needed.
+     * @param bytes     the number of bytes that are about to be put in.
+     * @throws IOException if the buffer can't be written.
+     */
+    private void ensure(int bytes) throws IOException {
+      if (buffer.remaining() < bytes) {
+        flush();
+      }
+    }
+
+    /**
+     * Writes out the buffer.
+     * @throws IOException if it can't be written.
+     */
+    private void flush() throws IOException {
+      buffer.flip();
+      while (buffer.hasRemaining()) {
+        position += channel.write(buffer);
+      }
+      buffer.clear();
+    }
+
+    /**
+     * Puts an unsigned varint into the buffer.
+     * @param value   the number, treated as unsigned.
+     */
+    private void writeVarint(int value) {
+      while ((value & ~0x7F) != 0) {
+        buffer.put((byte) ((value & 0x7F) | 0x80));
+        value >>>= 7;
+      }
+      buffer.put((byte) value);
+    }
+  }
 }
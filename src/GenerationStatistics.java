@@ -0,0 +1,90 @@
+/**
+ * Records how much work it took to generate a puzzle. Acts as a record.
+ * @author starp
+ *
+ */
+public class GenerationStatistics {
+  /**
+   * Number of times the solver was run on a cage layout.
+   */
+  private int attempts = 0;
+  /**
+   * Number of times ambiguous cages were merged or split again.
+   */
+  private int resplits = 0;
+  /**
+   * Total number of search nodes visited by the solver.
+   */
+  private long solverNodes = 0;
+  /**
+   * How long generating the puzzle took, in nanoseconds.
+   */
+  private long elapsed = 0;
+
+  /**
+   * Accessor for the number of layouts checked by the solver.
+   * @return {@link #attempts}
+   */
+  public int getAttempts() {
+    return attempts;
+  }
+
+  /**
+   * Accessor for the number of times cages were repaired.
+   * @return {@link #resplits}
+   */
+  public int getResplits() {
+    return resplits;
+  }
+
+  /**
+   * Accessor for the number of search nodes visited.
+   * @return {@link #solverNodes}
+   */
+  public long getSolverNodes() {
+    return solverNodes;
+  }
+
+  /**
+   * Accessor for how long generating the puzzle took.
+   * @return {@link #elapsed}, in nanoseconds.
+   */
+  public long getElapsed() {
+    return elapsed;
+  }
+
+  /**
+   * Mutator for how long generating the puzzle took.
+   * @param elapsed   the time in nanoseconds.
+   */
+  public void setElapsed(long elapsed) {
+    this.elapsed = elapsed;
+  }
+
+  /**
+   * Records that the solver has checked another layout.
+   * @param nodes   number of search nodes the check visited.
+   */
+  public void addAttempt(long nodes) {
+    attempts++;
+    solverNodes += nodes;
+  }
+
+  /**
+   * Records that ambiguous cages have been merged or split again.
+   */
+  public void addResplit() {
+    resplits++;
+  }
+
+  /**
+   * Summarises the statistics.
+   * @return the statistics as a single line.
+   */
+  @Override
+  public String toString() {
+    return String.format("attempts: %d, re-splits: %d, solver nodes: %d, "
+                         + "time: %d ms", attempts, resplits, solverNodes,
+                         elapsed / 1000000);
+  }
+}
@@ -0,0 +1,112 @@
+/**
+ * A generated puzzle along with how hard the solver found it. Acts as a
+ * record.
+ * @author starp
+ *
+ */
+public class GradedPuzzle {
+  /**
+   * How much a guess adds to the score compared to a propagation round.
+   */
+  public static final int BRANCHWEIGHT = 4;
+  /**
+   * How much a wrong guess adds to the score compared to a propagation round.
+   */
+  public static final int BACKTRACKWEIGHT = 8;
+  /**
+   * The puzzle itself.
+   */
+  private final GameData gameData;
+  /**
+   * Position of the puzzle in the batch it was drawn from.
+   */
+  private final int index;
+  /**
+   * Number of propagation rounds the solver needed.
+   */
+  private final long rounds;
+  /**
+   * Number of cells the solver had to guess.
+   */
+  private final long branchPoints;
+  /**
+   * Number of guesses the solver had to take back.
+   */
+  private final long backtracks;
+
+  /**
+   * Grades a puzzle by solving it.
+   * @param gameData    the puzzle to be graded.
+   * @param index       position of the puzzle in its batch.
+   */
+  public GradedPuzzle(GameData gameData, int index) {
+    this.gameData = gameData;
+    this.index = index;
+    ConstraintSolver solver = new ConstraintSolver(gameData);
+    solver.solve();
+    rounds = solver.getRounds();
+    branchPoints = solver.getBranchPoints();
+    backtracks = solver.getBacktracks();
+  }
+
+  /**
+   * Accessor for the puzzle.
+   * @return {@link #gameData}
+   */
+  public GameData getGameData() {
+    return gameData;
+  }
+
+  /**
+   * Accessor for the position of the puzzle in its batch.
+   * @return {@link #index}
+   */
+  public int getIndex() {
+    return index;
+  }
+
+  /**
+   * Accessor for the number of propagation rounds.
+   * @return {@link #rounds}
+   */
+  public long getRounds() {
+    return rounds;
+  }
+
+  /**
+   * Accessor for the number of guesses.
+   * @return {@link #branchPoints}
+   */
+  public long getBranchPoints() {
+    return branchPoints;
+  }
+
+  /**
+   * Accessor for the number of guesses taken back.
+   * @return {@link #backtracks}
+   */
+  public long getBacktracks() {
+    return backtracks;
+  }
+
+  /**
+   * Combines the solver's effort into a single difficulty. Puzzles that
+   * can be solved by deduction alone score only their propagation rounds.
+   * @return the difficulty score, higher being harder.
+   */
+  public long getScore() {
+    return rounds + BRANCHWEIGHT * branchPoints
+        + BACKTRACKWEIGHT * backtracks;
+  }
+
+  /**
+   * Summarises the grade.
+   * @return the grade as a single line.
+   */
+  @Override
+  public String toString() {
+    return String.format(
+        "score: %d, rounds: %d, branch points: %d, backtracks: %d",
+        getScore(), rounds, branchPoints, backtracks);
+  }
+}
@@ -0,0 +1,381 @@
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * The numbers entered into a grid, along with the cages of its puzzle and
+ * the pencil marks noted in each cell. Cells are packed into ints as
+ * row * size + column, and 0 stands for an empty cell. The pencil marks of
+ * a cell are a bitmask with bit number - 1 set for each number noted.
+ * Nothing here depends on how the grid is shown.
+ * @author starp
+ *
+ */
+public class GridState {
+  /**
+   * Number of columns/rows.
+   */
+  private final int size;
+  /**
+   * The number in each cell, or 0 if it is empty.
+   */
+  private final int[] values;
+  /**
+   * The cage of each cell, or -1 if it isn't in a cage.
+   */
+  private final int[] cageOf;
+  /**
+   * Where each cage's cells start in {@link #cageCells}, with an extra
+   * entry after the last cage.
+   */
+  private final int[] cageStart;
+  /**
+   * The cells of every cage, one cage after another.
+   */
+  private final int[] cageCells;
+  /**
+   * The operator of each cage.
+   */
+  private final Operations[] operators;
+  /**
+   * The target of each cage.
+   */
+  private final int[] targets;
+  /**
+   * The numbers of a cage, filled in each time one is checked.
+   */
+  private final int[] numbers;
+  /**
+   * The pencil marks of each cell.
+   */
+  private final int[] marks;
+  /**
+   * The cells whose pencil marks changed when marks were last eliminated.
+   */
+  private final int[] changedMarks;
+
+  /**
+   * Creates an empty grid without any cages.
+   * @param size    number of columns/rows.
+   */
+  public GridState(int size) {
+    this.size = size;
+    values = new int[size * size];
+    marks = new int[size * size];
+    changedMarks = new int[size * size];
+    cageOf = new int[size * size];
+    Arrays.fill(cageOf, -1);
+    cageStart = new int[1];
+    cageCells = new int[0];
+    operators = new Operations[0];
+    targets = new int[0];
+    numbers = new int[0];
+  }
+
+  /**
+   * Creates an empty grid for a puzzle.
+   * @param gameData    the puzzle's size and cages.
+   */
+  public GridState(GameData gameData) {
+    size = gameData.getSize();
+    values = new int[size * size];
+    marks = new int[size * size];
+    changedMarks = new int[size * size];
+    cageOf = new int[size * size];
+    Arrays.fill(cageOf, -1);
+
+    List<? extends List<Integer>> cages = gameData.getCages();
+    int cageCount = cages.size();
+    cageStart = new int[cageCount + 1];
+    operators = new Operations[cageCount];
+    targets = new int[cageCount];
+    int cellCount = 0;
+    int largest = 0;
+    for (int cage = 0; cage < cageCount; cage++) {
+      cellCount += cages.get(cage).size();
+      largest = Math.max(largest, cages.get(cage).size());
+    }
+    cageCells = new int[cellCount];
+    numbers = new int[largest];
+
+    int next = 0;
+    for (int cage = 0; cage < cageCount; cage++) {
+      cageStart[cage] = next;
+      for (int cellNo : cages.get(cage)) {
+        cageCells[next++] = cellNo - 1;
+        cageOf[cellNo - 1] = cage;
+      }
+      operators[cage] = gameData.getOperators().get(cage);
+      targets[cage] = gameData.getTargets().get(cage);
+    }
+    cageStart[cageCount] = next;
+  }
+
+  /**
+   * Accessor for the number of columns/rows.
+   * @return {@link #size}
+   */
+  public int getSize() {
+    return size;
+  }
+
+  /**
+   * Returns the number in a cell.
+   * @param cell    the cell, row * size + column.
+   * @return the number, or 0 if the cell is empty.
+   */
+  public int getValue(int cell) {
+    return values[cell];
+  }
+
+  /**
+   * Puts a number into a cell, or empties it.
+   * @param cell      the cell, row * size + column.
+   * @param number    the number, from 1 to the size, or 0 to empty it.
+   * @return the number the cell held before.
+   */
+  public int setValue(int cell, int number) {
+    if (number < 0 || number > size) {
+      throw new IllegalArgumentException("No number " + number
+                                         + " in a grid of size " + size);
+    }
+    int old = values[cell];
+    values[cell] = number;
+    return old;
+  }
+
+  /**
+   * Empties every cell. The pencil marks are kept.
+   */
+  public void clear() {
+    Arrays.fill(values, 0);
+  }
+
+  /**
+   * Returns the pencil marks of a cell.
+   * @param cell    the cell, row * size + column.
+   * @return the marks, bit number - 1 set for each number noted.
+   */
+  public int getMarks(int cell) {
+    return marks[cell];
+  }
+
+  /**
+   * Replaces the pencil marks of a cell.
+   * @param cell    the cell, row * size + column.
+   * @param mask    the marks, bit number - 1 set for each number noted.
+   * @return the marks the cell had before.
+   */
+  public int setMarks(int cell, int mask) {
+    int old = marks[cell];
+    marks[cell] = mask & ((1 << size) - 1);
+    return old;
+  }
+
+  /**
+   * Notes a number in a cell, or rubs it out if it was already noted.
+   * @param cell      the cell, row * size + column.
+   * @param number    the number, from 1 to the size.
+   * @return the cell's marks afterwards.
+   */
+  public int toggleMark(int cell, int number) {
+    if (number < 1 || number > size) {
+      throw new IllegalArgumentException("No number " + number
+                                         + " in a grid of size " + size);
+    }
+    marks[cell] ^= 1 << (number - 1);
+    return marks[cell];
+  }
+
+  /**
+   * Rubs out every pencil mark.
+   */
+  public void clearMarks() {
+    Arrays.fill(marks, 0);
+  }
+
+  /**
+   * Rubs out the pencil marks a number placed in a cell rules out: the
+   * number from the rest of the cell's row and column, and from the empty
+   * cells of its cage any number that would stop the cage reaching its
+   * target. Only those cells are looked at, and nothing is allocated. The
+   * numbers of the cell's cage, including the one placed, must already
+   * be in the grid.
+   * @param cell      the cell, row * size + column.
+   * @param number    the number placed, from 1 to the size.
+   * @return the number of cells whose marks changed, which can be read
+   *         with {@link #getChangedMark(int)}.
+   */
+  public int eliminateMarks(int cell, int number) {
+    int bit = 1 << (number - 1);
+    int row = cell / size;
+    int column = cell % size;
+    int changed = 0;
+    for (int index = 0; index < size; index++) {
+      changed = removeMarks(row * size + index, bit, cell, changed);
+      changed = removeMarks(index * size + column, bit, cell, changed);
+    }
+
+    int cage = cageOf[cell];
+    if (cage < 0) {
+      return changed;
+    }
+    int start = cageStart[cage];
+    int length = getCageSize(cage);
+    for (int index = 0; index < length; index++) {
+      numbers[index] = values[cageCells[start + index]];
+    }
+    for (int index = 0; index < length; index++) {
+      int other = cageCells[start + index];
+      if (other == cell || values[other] != 0) {
+        continue;
+      }
+      /** Tries each number noted in the cell on its own. */
+      int ruledOut = 0;
+      for (int left = marks[other]; left != 0; left &= left - 1) {
+        numbers[index] = Integer.numberOfTrailingZeros(left) + 1;
+        if (!CageEvaluator.canReach(operators[cage], targets[cage], numbers,
+                                    length, size)) {
+          ruledOut |= left & -left;
+        }
+      }
+      numbers[index] = 0;
+      /** A cell in the same line may already have been listed. */
+      boolean listed = other / size == row || other % size == column;
+      changed = listed ? removeListedMarks(other, ruledOut, changed)
+                       : removeMarks(other, ruledOut, cell, changed);
+    }
+    return changed;
+  }
+
+  /**
+   * Returns one of the cells whose pencil marks changed when marks were
+   * last eliminated.
+   * @param index   which of the cells, from 0.
+   * @return the cell, row * size + column.
+   */
+  public int getChangedMark(int index) {
+    return changedMarks[index];
+  }
+
+  /**
+   * Rubs out some pencil marks of a cell, listing it if they changed.
+   * @param cell      the cell, row * size + column.
+   * @param bits      the marks to rub out.
+   * @param placed    the cell a number was placed in, which is left alone.
+   * @param changed   number of cells listed so far.
+   * @return number of cells listed afterwards.
+   */
+  private int removeMarks(int cell, int bits, int placed, int changed) {
+    if (cell == placed || (marks[cell] & bits) == 0) {
+      return changed;
+    }
+    marks[cell] &= ~bits;
+    changedMarks[changed] = cell;
+    return changed + 1;
+  }
+
+  /**
+   * Rubs out some pencil marks of a cell that may already be listed,
+   * listing it only if it isn't.
+   * @param cell      the cell, row * size + column.
+   * @param bits      the marks to rub out.
+   * @param changed   number of cells listed so far.
+   * @return number of cells listed afterwards.
+   */
+  private int removeListedMarks(int cell, int bits, int changed) {
+    if ((marks[cell] & bits) == 0) {
+      return changed;
+    }
+    marks[cell] &= ~bits;
+    for (int index = 0; index < changed; index++) {
+      if (changedMarks[index] == cell) {
+        return changed;
+      }
+    }
+    changedMarks[changed] = cell;
+    return changed + 1;
+  }
+
+  /**
+   * Returns the number of cages.
+   * @return the number of cages of the puzzle.
+   */
+  public int getCageCount() {
+    return targets.length;
+  }
+
+  /**
+   * Returns the cage a cell is in.
+   * @param cell    the cell, row * size + column.
+   * @return the cage, or -1 if the cell isn't in one.
+   */
+  public int getCageOf(int cell) {
+    return cageOf[cell];
+  }
+
+  /**
+   * Returns the number of cells in a cage.
+   * @param cage    the cage.
+   * @return how many cells it has.
+   */
+  public int getCageSize(int cage) {
+    return cageStart[cage + 1] - cageStart[cage];
+  }
+
+  /**
+   * Returns one of the cells of a cage.
+   * @param cage      the cage.
+   * @param index     which of its cells, from 0.
+   * @return the cell, row * size + column.
+   */
+  public int getCageCell(int cage, int index) {
+    return cageCells[cageStart[cage] + index];
+  }
+
+  /**
+   * Returns the operator of a cage.
+   * @param cage    the cage.
+   * @return its operator.
+   */
+  public Operations getOperator(int cage) {
+    return operators[cage];
+  }
+
+  /**
+   * Returns the target of a cage.
+   * @param cage    the cage.
+   * @return its target.
+   */
+  public int getTarget(int cage) {
+    return targets[cage];
+  }
+
+  /**
+   * Checks whether the numbers in a cage reach its target.
+   * @param cage    the cage.
+   * @return true if the cage has been completed correctly.
+   */
+  public boolean isCageSatisfied(int cage) {
+    int length = getCageSize(cage);
+    for (int index = 0; index < length; index++) {
+      numbers[index] = values[cageCells[cageStart[cage] + index]];
+    }
+    return CageEvaluator.isSatisfied(operators[cage], targets[cage], numbers,
+                                     length);
+  }
+
+  /**
+   * Checks whether the numbers in a cage can still reach its target once
+   * its empty cells are filled.
+   * @param cage    the cage.
+   * @return false if the cage is wrong however its empty cells are filled.
+   */
+  public boolean isCageReachable(int cage) {
+    int length = getCageSize(cage);
+    for (int index = 0; index < length; index++) {
+      numbers[index] = values[cageCells[cageStart[cage] + index]];
+    }
+    return CageEvaluator.canReach(operators[cage], targets[cage], numbers,
+                                  length, size);
+  }
+}
@@ -0,0 +1,121 @@
+/**
+ * A cell whose number can be worked out from the entries so far, or an
+ * entry that is wrong, along with why. Acts as a record.
+ * @author starp
+ *
+ */
+public class Hint {
+  /**
+   * The ways a hint can be found, roughly from easiest to hardest.
+   */
+  public enum Reason {
+    /** An entry clashes with its row, column or cage. */
+    MISTAKE,
+    /** Only one number isn't used in the cell's row and column. */
+    ROW_COLUMN,
+    /** A number can only go in one cell of a row or column. */
+    HIDDEN_SINGLE,
+    /** Only one number fits the combinations of the cell's cage. */
+    CAGE,
+    /** Two cells of a row or column share the same two numbers. */
+    NAKED_PAIR,
+    /** The number was found by solving the puzzle. */
+    SEARCH
+  }
+
+  /**
+   * The cell, row * size + column.
+   */
+  private final int cell;
+  /**
+   * Number of columns/rows in the grid.
+   */
+  private final int size;
+  /**
+   * The number that goes in the cell, or 0 if the cell's entry is wrong.
+   */
+  private final int number;
+  /**
+   * How the hint was found.
+   */
+  private final Reason reason;
+  /**
+   * Explains the hint to the player.
+   */
+  private final String description;
+
+  /**
+   * Creates the record.
+   * @param cell          the cell, row * size + column.
+   * @param size          number of columns/rows in the grid.
+   * @param number        the number for the cell, or 0 for a mistake.
+   * @param reason        how the hint was found.
+   * @param description   explains the hint to the player.
+   */
+  public Hint(int cell, int size, int number, Reason reason,
+              String description) {
+    this.cell = cell;
+    this.size = size;
+    this.number = number;
+    this.reason = reason;
+    this.description = description;
+  }
+
+  /**
+   * Accessor for the cell.
+   * @return {@link #cell}
+   */
+  public int getCell() {
+    return cell;
+  }
+
+  /**
+   * Returns the row of the cell, counting from 0.
+   * @return the row.
+   */
+  public int getRow() {
+    return cell / size;
+  }
+
+  /**
+   * Returns the column of the cell, counting from 0.
+   * @return the column.
+   */
+  public int getColumn() {
+    return cell % size;
+  }
+
+  /**
+   * Accessor for the number that goes in the cell.
+   * @return {@link #number}, or 0 if the cell's entry is wrong.
+   */
+  public int getNumber() {
+    return number;
+  }
+
+  /**
+   * Accessor for how the hint was found.
+   * @return {@link #reason}
+   */
+  public Reason getReason() {
+    return reason;
+  }
+
+  /**
+   * Accessor for the explanation.
+   * @return {@link #description}
+   */
+  public String getDescription() {
+    return description;
+  }
+
+  /**
+   * Describes the hint with its cell.
+   * @return the row, column and explanation.
+   */
+  @Override
+  public String toString() {
+    return "Row " + (getRow() + 1) + ", column " + (getColumn() + 1) + ": "
+           + description;
+  }
+}
@@ -0,0 +1,430 @@
+/**
+ * Finds the next cell whose number follows from the entries in a grid, and
+ * why. The candidates of each cell are kept as a bitmask (bit d - 1 set
+ * means d is still possible) and narrowed in stages, from the reasons a
+ * player finds easiest to the hardest: the numbers in the cell's row and
+ * column, the combinations that make its cage's target, then pairs of
+ * cells in a row or column sharing the same two candidates. A cell is
+ * handed out as soon as a stage leaves it with one candidate, or leaves a
+ * number with one place in a row or column. If none of these work, the
+ * hint comes from the puzzle's solution.
+ * <p>
+ * Hints are looked for in a copy of the numbers passed in, so they can be
+ * found on another thread while the player carries on. The search gives up
+ * and returns null as soon as its thread is interrupted.
+ * @author starp
+ *
+ */
+public class HintEngine {
+  /**
+   * The puzzle.
+   */
+  private final GameData gameData;
+  /**
+   * Number of columns/rows.
+   */
+  private final int size;
+  /**
+   * Mask with a bit set for every number that can be placed in the grid.
+   */
+  private final int fullMask;
+  /**
+   * The cages of the puzzle, and the numbers a hint is being found for.
+   */
+  private final GridState state;
+  /**
+   * Every valid tuple of each cage as one bit per cell, or null if the cage
+   * has too many to be kept. Looked up the first time a hint is needed.
+   */
+  private int[][] cageTuples;
+  /**
+   * The puzzle's solution indexed by [row][column], or null if it hasn't
+   * been found yet.
+   */
+  private int[][] solution;
+  /**
+   * Whether the solution found is the only one.
+   */
+  private boolean unique;
+
+  /**
+   * Sets up hints for a puzzle. Nothing is worked out until the first hint
+   * is asked for.
+   * @param gameData    the puzzle.
+   */
+  public HintEngine(GameData gameData) {
+    this.gameData = gameData;
+    size = gameData.getSize();
+    fullMask = size == 32 ? -1 : (1 << size) - 1;
+    state = new GridState(gameData);
+  }
+
+  /**
+   * Accessor for the puzzle.
+   * @return {@link #gameData}
+   */
+  public GameData getGameData() {
+    return gameData;
+  }
+
+  /**
+   * Finds the easiest cell to fill in next, or the first entry found to be
+   * wrong.
+   * @param values    the number in each cell, row * size + column, with 0
+   *                  for an empty cell. It isn't changed.
+   * @return the hint, or null if there isn't one or the thread was
+   *         interrupted.
+   */
+  public synchronized Hint findHint(int[] values) {
+    for (int cell = 0; cell < values.length; cell++) {
+      state.setValue(cell, values[cell]);
+    }
+    if (cageTuples == null) {
+      lookUpTuples();
+    }
+
+    Hint hint = findClash();
+    if (hint != null) {
+      return hint;
+    }
+
+    /** Starts with the numbers left in each cell's row and column. */
+    int[] candidates = new int[size * size];
+    int[] rowMasks = new int[size];
+    int[] columnMasks = new int[size];
+    for (int cell = 0; cell < candidates.length; cell++) {
+      int number = state.getValue(cell);
+      if (number > 0) {
+        rowMasks[cell / size] |= 1 << (number - 1);
+        columnMasks[cell % size] |= 1 << (number - 1);
+      }
+    }
+    for (int cell = 0; cell < candidates.length; cell++) {
+      int number = state.getValue(cell);
+      candidates[cell] = number > 0 ? 1 << (number - 1)
+                         : fullMask & ~rowMasks[cell / size]
+                           & ~columnMasks[cell % size];
+    }
+    hint = findSingle(candidates, Hint.Reason.ROW_COLUMN);
+    if (hint != null) {
+      return hint;
+    }
+
+    /** Narrows the candidates until nothing more can be worked out. */
+    boolean changed = true;
+    while (changed) {
+      if (Thread.currentThread().isInterrupted()) {
+        return null;
+      }
+      changed = false;
+      for (int cage = 0; cage < cageTuples.length; cage++) {
+        if (!filterCage(cage, candidates)) {
+          return new Hint(state.getCageCell(cage, 0), size, 0,
+                          Hint.Reason.MISTAKE, "The numbers in this cage "
+                          + "can't be finished to make its target.");
+        }
+      }
+      hint = findSingle(candidates, Hint.Reason.CAGE);
+      if (hint != null) {
+        return hint;
+      }
+      for (int line = 0; line < 2 * size; line++) {
+        changed |= removePairs(line, candidates);
+      }
+      hint = findSingle(candidates, Hint.Reason.NAKED_PAIR);
+      if (hint != null) {
+        return hint;
+      }
+    }
+
+    if (Thread.currentThread().isInterrupted()) {
+      return null;
+    }
+    return findFromSolution(candidates);
+  }
+
+  /**
+   * Looks up the valid tuples of every cage, in the same way as the
+   * solver. Nothing is kept if the thread is interrupted part way, so the
+   * next hint looks them up again.
+   * @throws java.util.concurrent.CancellationException if the thread is
+   *                                                    interrupted.
+   */
+  private void lookUpTuples() {
+    int cageCount = state.getCageCount();
+    int[][] tuples = new int[cageCount][];
+    for (int cage = 0; cage < cageCount; cage++) {
+      int length = state.getCageSize(cage);
+      if (length > 32) {
+        continue;
+      }
+
+      /** Marks the earlier cells of the cage sharing a row or column. */
+      int[] peers = new int[length];
+      for (int index = 0; index < length; index++) {
+        int cell = state.getCageCell(cage, index);
+        for (int other = 0; other < index; other++) {
+          int otherCell = state.getCageCell(cage, other);
+          if (otherCell / size == cell / size
+              || otherCell % size == cell % size) {
+            peers[index] |= 1 << other;
+          }
+        }
+      }
+      tuples[cage] = CageCombinations.getShared().getTuples(
+          state.getOperator(cage), state.getTarget(cage), size, peers,
+          length);
+    }
+    cageTuples = tuples;
+  }
+
+  /**
+   * Looks for entries that break the rules: a number twice in a row or
+   * column, or a full cage that misses its target.
+   * @return a hint pointing at the wrong entry, or null if there isn't one.
+   */
+  private Hint findClash() {
+    for (int line = 0; line < 2 * size; line++) {
+      int seen = 0;
+      for (int index = 0; index < size; index++) {
+        int cell = lineCell(line, index);
+        int number = state.getValue(cell);
+        if (number == 0) {
+          continue;
+        }
+        if ((seen & 1 << (number - 1)) != 0) {
+          return new Hint(cell, size, 0, Hint.Reason.MISTAKE, "There is "
+                          + "already a " + number + " in its "
+                          + describeLine(line) + ".");
+        }
+        seen |= 1 << (number - 1);
+      }
+    }
+
+    for (int cage = 0; cage < state.getCageCount(); cage++) {
+      boolean full = true;
+      for (int index = 0; index < state.getCageSize(cage); index++) {
+        full &= state.getValue(state.getCageCell(cage, index)) != 0;
+      }
+      if (!state.isCageReachable(cage)) {
+        return new Hint(state.getCageCell(cage, 0), size, 0,
+                        Hint.Reason.MISTAKE, "The numbers in this cage "
+                        + (full ? "don't make its target."
+                           : "can't be finished to make its target."));
+      }
+    }
+    return null;
+  }
+
+  /**
+   * Looks for an empty cell with one candidate, then for a number with
+   * one place left in a row or column.
+   * @param candidates    the numbers each cell can still contain.
+   * @param reason        the stage that narrowed the candidates last.
+   * @return the hint, or null if there isn't one.
+   */
+  private Hint findSingle(int[] candidates, Hint.Reason reason) {
+    for (int cell = 0; cell < candidates.length; cell++) {
+      if (state.getValue(cell) != 0) {
+        continue;
+      }
+      if (candidates[cell] == 0) {
+        return new Hint(cell, size, 0, Hint.Reason.MISTAKE, "No number "
+                        + "fits here any more, so one of the entries is "
+                        + "wrong.");
+      }
+      if (Integer.bitCount(candidates[cell]) == 1) {
+        int number = Integer.numberOfTrailingZeros(candidates[cell]) + 1;
+        return new Hint(cell, size, number, reason,
+                        describeSingle(reason, number));
+      }
+    }
+
+    /** Counts where each missing number can still go in each line. */
+    for (int line = 0; line < 2 * size; line++) {
+      int placed = 0;
+      for (int index = 0; index < size; index++) {
+        int number = state.getValue(lineCell(line, index));
+        if (number > 0) {
+          placed |= 1 << (number - 1);
+        }
+      }
+      for (int number = 1; number <= size; number++) {
+        if ((placed & 1 << (number - 1)) != 0) {
+          continue;
+        }
+        int place = -1;
+        int places = 0;
+        for (int index = 0; index < size && places < 2; index++) {
+          int cell = lineCell(line, index);
+          if (state.getValue(cell) == 0
+              && (candidates[cell] & 1 << (number - 1)) != 0) {
+            place = cell;
+            places++;
+          }
+        }
+        if (places == 1) {
+          return new Hint(place, size, number,
+                          reason == Hint.Reason.ROW_COLUMN
+                          ? Hint.Reason.HIDDEN_SINGLE : reason,
+                          number + " can't go anywhere else in its "
+                          + describeLine(line) + ".");
+        }
+      }
+    }
+    return null;
+  }
+
+  /**
+   * Removes the candidates of a cage's cells that aren't in any of its
+   * tuples which still fit.
+   * @param cage          the cage.
+   * @param candidates    the numbers each cell can still contain.
+   * @return false if no tuple fits, so the entries can't be right.
+   */
+  private boolean filterCage(int cage, int[] candidates) {
+    int[] tuples = cageTuples[cage];
+    if (tuples == null) {
+      return true;
+    }
+    int length = state.getCageSize(cage);
+    int[] supported = new int[length];
+    boolean any = false;
+    for (int start = 0; start < tuples.length; start += length) {
+      boolean fits = true;
+      for (int index = 0; index < length && fits; index++) {
+        fits = (tuples[start + index]
+                & candidates[state.getCageCell(cage, index)]) != 0;
+      }
+      if (fits) {
+        any = true;
+        for (int index = 0; index < length; index++) {
+          supported[index] |= tuples[start + index];
+        }
+      }
+    }
+    for (int index = 0; index < length; index++) {
+      candidates[state.getCageCell(cage, index)] &= supported[index];
+    }
+    return any;
+  }
+
+  /**
+   * Finds two empty cells of a line with the same two candidates, and
+   * removes those numbers from the line's other cells.
+   * @param line          rows from 0, then columns from size.
+   * @param candidates    the numbers each cell can still contain.
+   * @return true if any candidate was removed.
+   */
+  private boolean removePairs(int line, int[] candidates) {
+    boolean changed = false;
+    for (int first = 0; first < size; first++) {
+      int firstCell = lineCell(line, first);
+      int pair = candidates[firstCell];
+      if (state.getValue(firstCell) != 0 || Integer.bitCount(pair) != 2) {
+        continue;
+      }
+      for (int second = first + 1; second < size; second++) {
+        int secondCell = lineCell(line, second);
+        if (state.getValue(secondCell) != 0
+            || candidates[secondCell] != pair) {
+          continue;
+        }
+        for (int index = 0; index < size; index++) {
+          int cell = lineCell(line, index);
+          if (index != first && index != second
+              && (candidates[cell] & pair) != 0) {
+            candidates[cell] &= ~pair;
+            changed = true;
+          }
+        }
+      }
+    }
+    return changed;
+  }
+
+  /**
+   * Falls back on the puzzle's solution, which is only found once.
+   * @param candidates    the numbers each cell can still contain.
+   * @return the empty cell with the fewest candidates, or an entry that
+   *         doesn't match the only solution, or null if neither can be
+   *         given.
+   */
+  private Hint findFromSolution(int[] candidates) {
+    if (solution == null) {
+      ConstraintSolver solver = new ConstraintSolver(gameData);
+      int count = solver.countSolutions(2);
+      if (count == 0) {
+        return null;
+      }
+      solution = solver.getSolution(0);
+      unique = count == 1;
+    }
+
+    int best = -1;
+    for (int cell = 0; cell < candidates.length; cell++) {
+      int number = state.getValue(cell);
+      int answer = solution[cell / size][cell % size];
+      if (number != 0 && number != answer) {
+        /**
+         * Another solution might still match the entries if the puzzle
+         * has more than one.
+         */
+        return unique ? new Hint(cell, size, 0, Hint.Reason.MISTAKE,
+                                 "This doesn't match the puzzle's "
+                                 + "solution.")
+                      : null;
+      }
+      if (number == 0 && (best < 0 || Integer.bitCount(candidates[cell])
+                                      < Integer.bitCount(candidates[best]))) {
+        best = cell;
+      }
+    }
+    if (best < 0) {
+      return null;
+    }
+    int number = solution[best / size][best % size];
+    return new Hint(best, size, number, Hint.Reason.SEARCH,
+                    "This one needs trying out the numbers; the solution "
+                    + "has a " + number + " here.");
+  }
+
+  /**
+   * Explains why a cell is down to one candidate.
+   * @param reason    the stage that narrowed the candidates last.
+   * @param number    the candidate left.
+   * @return the explanation.
+   */
+  private static String describeSingle(Hint.Reason reason, int number) {
+    switch (reason) {
+      case ROW_COLUMN:
+        return "Every other number is already in its row or column, so it "
+               + "must be " + number + ".";
+      case CAGE:
+        return "Of the numbers that make its cage's target, only " + number
+               + " still fits here.";
+      default:
+        return "Two cells in its row or column share the same two numbers,"
+               + " which leaves only " + number + " here.";
+    }
+  }
+
+  /**
+   * Names a line for a hint.
+   * @param line    rows from 0, then columns from size.
+   * @return the line's name.
+   */
+  private String describeLine(int line) {
+    return line < size ? "row" : "column";
+  }
+
+  /**
+   * Returns one of the cells of a line.
+   * @param line    rows from 0, then columns from size.
+   * @param index   which of its cells, from 0.
+   * @return the cell, row * size + column.
+   */
+  private int lineCell(int line, int index) {
+    return line < size ? line * size + index : index * size + line - size;
+  }
+}
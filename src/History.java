@@ -1,25 +1,33 @@
+import java.util.ArrayList;
 import java.util.List;
-import java.util.Stack;
 
 import javafx.scene.control.Button;
 
 /**
- * Will keep a record of previous actions taken. Used for redoing and 
- * undoing.
+ * Will keep a record of previous actions taken. Used for redoing and
+ * undoing. The actions are kept by a {@link MoveHistory} over its own copy
+ * of the grid's numbers; this class compares the cells against that copy,
+ * puts undone and redone numbers back into the cells and keeps the buttons
+ * up to date.
  * @author starp
  *
  */
 public class History {
   /**
-   * State of the grid beforehand.
+   * Default number of bytes the changes may take up.
    */
-  private Stack<String> previousStack = new Stack<String>();
-  /** 
-   * State of the grid after.
+  public static final int DEFAULTMEMORY = MoveHistory.DEFAULTMEMORY;
+  /**
+   * The actions taken, over the numbers each cell held when history last
+   * looked at it.
+   */
+  private MoveHistory moves;
+  /**
+   * Number of bytes the changes may take up.
    */
-  private Stack<String> nextStack = new Stack<String>();
+  private int memoryLimit = DEFAULTMEMORY;
   /**
-   * The grid will have "TYPE" columns and "TYPE" rows. 
+   * The grid will have "TYPE" columns and "TYPE" rows.
    */
   private int type;
   /**
@@ -30,15 +38,15 @@ public class History {
    * The redo button will be disabled if not valid.
    */
   private Button redoButton;
-  
+
   /**
    * Creates the object and passes in the would be size of the grid.
    * @param type
    */
   public History(int type) {
-    this.type = type;
+    setSize(type);
   }
-  
+
   /**
    * Sets the undo and redo buttons.
    * @param undoButton    used to undo actions.
@@ -50,140 +58,177 @@ public class History {
     this.redoButton = redoButton;
     redoButton.setDisable(true);
   }
-  
+
   /**
-   * Updates the size/type.
+   * Updates the size/type. The grid is taken to be empty.
    * @param size    the new size of the table.
    */
   public void setSize(int size) {
     type = size;
-  } 
-  
+    moves = new MoveHistory(new GridState(size), memoryLimit);
+    updateButtons();
+  }
+
+  /**
+   * Accessor for the actions taken, so they can be saved.
+   * @return {@link #moves}
+   */
+  public MoveHistory getMoves() {
+    return moves;
+  }
+
+  /**
+   * Carries on from a saved history, putting its numbers into the cells.
+   * @param resumed   the saved history, over a grid of the current size.
+   * @param grid      the grid of cells.
+   */
+  public void resume(MoveHistory resumed, GCell[][] grid) {
+    moves = resumed;
+    memoryLimit = resumed.getMemoryLimit();
+    for (int cell = 0; cell < type * type; cell++) {
+      apply(grid, cell);
+    }
+    updateButtons();
+  }
+
+  /**
+   * Mutator for the memory the changes may take up. Forgets every action.
+   * @param bytes   the number of bytes.
+   */
+  public void setMemoryLimit(int bytes) {
+    memoryLimit = bytes;
+    moves.setMemoryLimit(bytes);
+    updateButtons();
+  }
+
+  /**
+   * Records a change to a single cell as one action. Must be called after
+   * the cell has changed.
+   * @param grid      state of the grid.
+   * @param cell      the cell which may have changed.
+   */
+  public void addHistory(GCell[][] grid, GCell cell) {
+    moves.change(cell.getColumn() * type + cell.getRow(), cell.getContent());
+    updateButtons();
+  }
+
+  /**
+   * Folds a further change to a single cell into the action that last
+   * changed it, so a number typed as two digits is undone in one go. Must
+   * be called after the cell has changed.
+   * @param grid      state of the grid.
+   * @param cell      the cell which may have changed.
+   */
+  public void amendHistory(GCell[][] grid, GCell cell) {
+    moves.amend(cell.getColumn() * type + cell.getRow(), cell.getContent());
+    updateButtons();
+  }
+
   /**
-   * Adds the state of the newly changed grid to the stack. 
+   * Records every cell that has changed since history last looked at the
+   * grid as one action. Must be called after the cells have changed.
    * @param grid      state of the grid.
    */
   public void addHistory(GCell[][] grid) {
-    String state = convertGridToString(grid);
-    
-    /** Checks if the stack is empty. */
-    if (!previousStack.isEmpty()) {
-      /** If something has changed to the grid, then the new state is added. */
-      if (!state.equals(previousStack.peek())) {
-        previousStack.push(state);
-        nextStack.clear();
+    GridState contents = moves.getState();
+    boolean changed = false;
+    for (int i = 0; i < type; i++) {
+      for (int j = 0; j < type; j++) {
+        int number = grid[i][j].getContent();
+        if (number != contents.getValue(i * type + j)) {
+          /** Only starts an action once something has changed. */
+          if (!changed) {
+            moves.beginAction();
+            changed = true;
+          }
+          moves.set(i * type + j, number);
+        }
       }
     }
-    else {
-      previousStack.push(state);
-      nextStack.clear();
+    if (changed) {
+      moves.endAction();
     }
-    
-    /** Enables the undo button. */
-    undoButton.setDisable(false);
-    /** Disables the redo button. */
-    redoButton.setDisable(true);
+    updateButtons();
   }
-  
+
   /**
-   * Undoes the action done, and make changes to the stacks.
+   * Undoes the last action, changing only the cells it changed.
    * @param grid              the grid of cells.
+   * @param mistakeChecker    checks if there are any mistakes.
+   * @param cages             the cages of the grid.
    */
-  public void undo(GCell[][] grid, MistakeChecker mistakeChecker, 
+  public void undo(GCell[][] grid, MistakeChecker mistakeChecker,
                    List<Cage> cages) {
-    
-    /** Prevents popping from an empty stack. */
-    if (!previousStack.empty()) {
-      String state = previousStack.pop();
-      nextStack.push(convertGridToString(grid));
-      redoButton.setDisable(false);
-      intepretStateString(state, grid, cages, mistakeChecker);
-    }   
-    
-    /** If there are no previous actions, disable the undo button. */
-    if (previousStack.empty()) {
-      undoButton.setDisable(true);
-    }
+    applyMoved(grid, mistakeChecker, cages, moves.undo());
   }
-  
-  /** 
-   * Redos the action done, and make changes to the stacks.
+
+  /**
+   * Redos the last action undone, changing only the cells it changed.
    * @param grid              the grid of cells.
    * @param mistakeChecker    checks if there are any mistakes.
    * @param cages             the cages of the grid.
    */
   public void redo(GCell[][] grid, MistakeChecker mistakeChecker,
                    List<Cage> cages) {
-    /** Prevents popping from an empty stack. */
-    if (!nextStack.empty()) {
-      String state = nextStack.pop();
-      previousStack.push(convertGridToString(grid));
-      undoButton.setDisable(false);
-      intepretStateString(state, grid, cages, mistakeChecker);
-    }
-    
-    /** If there are no actions to redo, disable the redo button. */
-    if (nextStack.empty()) {
-      redoButton.setDisable(true);
-    }
+    applyMoved(grid, mistakeChecker, cages, moves.redo());
   }
-  
+
   /**
-   * Resets history by removing everything from the two stacks.
+   * Puts the numbers of the cells changed by an undo or redo into the grid.
+   * @param grid              the grid of cells.
+   * @param mistakeChecker    checks if there are any mistakes.
+   * @param cages             the cages of the grid.
+   * @param count             number of cells that were changed.
    */
-  public void clear() {
-    previousStack.clear();
-    nextStack.clear();
-  }
-  
-  /**
-   * Convert grid state into string.
-   * @param grid    the grid of cells.    
-   * @return a string containing the contents of all cells.
-   */
-  private String convertGridToString(GCell[][] grid) {
-    /** Stores the content of each cell in the grid. */
-    String state = "";
-    for (int row = 0; row < type; row++) {
-      for (int column = 0; column < type; column++) {
-        state += grid[row][column].getContent();
+  private void applyMoved(GCell[][] grid, MistakeChecker mistakeChecker,
+                          List<Cage> cages, int count) {
+    if (count > 0) {
+      List<GCell> changed = new ArrayList<GCell>(count);
+      for (int index = 0; index < count; index++) {
+        changed.add(apply(grid, moves.getMovedCell(index)));
       }
+      mistakeChecker.cellsChanged(cages, grid, changed);
     }
-    
-    return state;
+    updateButtons();
   }
 
   /**
-   * Changes the state of the grid to the given string.
-   * @param state             a string holding the content of all the cells.
-   * @param grid              grid of cells.
-   * @param cages             the cages within the grid.
-   * @param mistakeChecker    checks the mistakes within the grid.
-   */
-  private void intepretStateString(String state, GCell[][] grid, List<Cage> cages,
-                                   MistakeChecker mistakeChecker) {
-    /** Keeps track at what point we are in intepreting the state string. */
-    int index = 0;
-    /** Loops through the cells in the grid. */
-    for (int row = 0; row < type; row++) {
-      for (int column = 0; column < type; column++) {
-        /** If needed, clear cell, else it's assigned the stored value. */
-        if (state.charAt(index) == '0') {
-          grid[row][column].clear();
-        }
-        else {
-          /** Enters the number of the cell. */
-          int number = Integer.parseInt(String.valueOf(state.charAt(index)));
-          grid[row][column].enterNumber(number, type);          
-        }       
-
-        index++;
-      }
+   * Enables the undo and redo buttons only if there is something to undo
+   * or redo.
+   */
+  private void updateButtons() {
+    if (undoButton != null) {
+      undoButton.setDisable(!moves.canUndo());
+      redoButton.setDisable(!moves.canRedo());
     }
-    
-    /** Redo error checking. */
-    mistakeChecker.checkMistakes(cages, grid);
   }
-               
 
+  /**
+   * Resets history by forgetting every action. The grid is taken to be 
+   * empty.
+   */
+  public void clear() {
+    moves.getState().clear();
+    moves.clear();
+    updateButtons();
+  }
+
+  /**
+   * Puts a cell's number from history's copy of the grid into the cell, or
+   * clears it for 0.
+   * @param grid      grid of cells.
+   * @param cell      the cell's index, row * type + column.
+   * @return the cell that was changed.
+   */
+  private GCell apply(GCell[][] grid, int cell) {
+    GCell gCell = grid[cell / type][cell % type];
+    int number = moves.getState().getValue(cell);
+    if (number == 0) {
+      gCell.clear();
+    }
+    else {
+      gCell.enterNumber(number, type);
+    }
+    return gCell;
+  }
 }
@@ -1,5 +1,3 @@
-import java.util.ArrayList;
-
 import java.util.List;
 
 import javafx.animation.FillTransition;
@@ -11,6 +9,7 @@ import javafx.scene.control.Alert.AlertType;
 import javafx.scene.control.ButtonType;
 import javafx.scene.layout.Pane;
 import javafx.scene.paint.Color;
+import javafx.scene.shape.Rectangle;
 import javafx.scene.shape.Shape;
 import javafx.util.Duration;
 
@@ -23,9 +22,10 @@ class MistakeChecker {
    */
   private int type;
   /**
-   * The numbers which each row and column must contain.
+   * The numbers which each row and column must contain, as a bitmask where
+   * bit n - 1 stands for the number n.
    */
-  private ArrayList<Integer> mustContain = new ArrayList<Integer>();
+  private int mustContain;
   /**
    * Will highlight incorrect rows and columns.
    */
@@ -38,6 +38,25 @@ class MistakeChecker {
    * Pane where the grid will be contained.
    */
   Pane paneToAdd;
+  /**
+   * Whether every change re-checks the whole grid rather than only the 
+   * row, column and cage of the changed cell. Kept to verify the counts.
+   */
+  private boolean fullRecheck = false;
+  /**
+   * The cages the counts were worked out for; the counts are rebuilt when
+   * this is null.
+   */
+  private List<Cage> indexedCages;
+  /**
+   * The grid the counts were worked out for.
+   */
+  private GCell[][] indexedGrid;
+  /**
+   * Counts the numbers of the grid, so a change only has to look at the 
+   * row, column and cage of each changed cell.
+   */
+  private PuzzleChecker checker;
   
   /** 
    * Constructor will initialise some of the local variables.
@@ -47,10 +66,8 @@ class MistakeChecker {
    */
   public MistakeChecker(Pane paneToAdd, int type) {
     this.type = type;
-    /** Creates list of numbers which each row/column should contain. */
-    for (int i = 1; i <= type; i++) {
-      mustContain.add(i);
-    }  
+    /** Creates mask of numbers which each row/column should contain. */
+    mustContain = (1 << type) - 1;
     this.paneToAdd = paneToAdd;
     /** Initialises the highlighter. */
     highlighter = new Highlighter(paneToAdd);
@@ -70,12 +87,20 @@ class MistakeChecker {
    */
   public void setType(int size) {
     type = size;
-    mustContain.clear();
-    for (int i = 1; i <= size; i++) {
-      mustContain.add(i);
-    }
+    mustContain = (1 << size) - 1;
     
+    highlighter.dispose();
     highlighter = new Highlighter(paneToAdd);
+    indexedCages = null;
+  }
+  
+  /**
+   * Mutator for whether every change re-checks the whole grid.
+   * @param fullRecheck   true to check every cage, row and column after 
+   *                      each change, as a check on the counts.
+   */
+  public void setFullRecheck(boolean fullRecheck) {
+    this.fullRecheck = fullRecheck;
   }
   
   /**
@@ -105,8 +130,8 @@ class MistakeChecker {
     /** Checks if each cage has been completed correctly. */
     for (Cage cage : cages) {
       correct = correct && cage.completedCorrectly();
-      /** Highlights cages if completed incorrectly. */
-      if (!cage.completedCorrectly() && showMistakes) {
+      /** Highlights cages which can no longer reach their target. */
+      if (showMistakes && !cage.canStillReach(type)) {
         cage.highlightWrong(showMistakes);
       }
       else {
@@ -122,10 +147,162 @@ class MistakeChecker {
     notifyWon(correct, grid);
   }
   
+  /**
+   * Checks for mistakes after a single cell has changed. Only the row, 
+   * column and cage of the cell are looked at, and whether the grid has 
+   * been won is found by comparing counts.
+   * @param cages   the cages on the grid currently.
+   * @param grid    the grid of cells.
+   * @param cell    the cell which may have changed.
+   */
+  public void cellChanged(List<Cage> cages, GCell[][] grid, GCell cell) {
+    if (fullRecheck) {
+      checkMistakes(cages, grid);
+      return;
+    }
+    if (cell != null) {
+      index(cages, grid);
+      updateCell(cages, grid, cell.getColumn(), cell.getRow());
+    }
+    notifyWon(isWon(), grid);
+  }
+  
+  /**
+   * Checks for mistakes after a few cells have changed, looking only at 
+   * their rows, columns and cages.
+   * @param cages   the cages on the grid currently.
+   * @param grid    the grid of cells.
+   * @param cells   the cells which may have changed.
+   */
+  public void cellsChanged(List<Cage> cages, GCell[][] grid, 
+                           List<GCell> cells) {
+    if (fullRecheck) {
+      checkMistakes(cages, grid);
+      return;
+    }
+    index(cages, grid);
+    for (GCell cell : cells) {
+      updateCell(cages, grid, cell.getColumn(), cell.getRow());
+    }
+    notifyWon(isWon(), grid);
+  }
+  
+  /**
+   * Checks for mistakes after any number of cells have changed, only doing
+   * work for the cells whose numbers differ from when they were counted.
+   * @param cages   the cages on the grid currently.
+   * @param grid    the grid of cells.
+   */
+  public void gridChanged(List<Cage> cages, GCell[][] grid) {
+    if (fullRecheck) {
+      checkMistakes(cages, grid);
+      return;
+    }
+    index(cages, grid);
+    for (int i = 0; i < type; i++) {
+      for (int j = 0; j < type; j++) {
+        updateCell(cages, grid, i, j);
+      }
+    }
+    notifyWon(isWon(), grid);
+  }
+  
+  /**
+   * Whether the counts show every cage, row and column completed.
+   * @return true if the grid has been completed correctly.
+   */
+  private boolean isWon() {
+    return indexedCages != null && checker.isWon();
+  }
+  
+  /**
+   * Describes the cages on screen as a puzzle and counts the numbers of 
+   * the grid from scratch, unless that has already been done for these 
+   * cages.
+   * @param cages   the cages on the grid currently.
+   * @param grid    the grid of cells.
+   */
+  private void index(List<Cage> cages, GCell[][] grid) {
+    if (indexedCages == cages && indexedGrid == grid) {
+      return;
+    }
+    indexedCages = cages;
+    indexedGrid = grid;
+    
+    GameData gameData = Cage.describe(cages, type);
+    
+    /** Starts from an empty grid then adds each cell's number. */
+    checker = new PuzzleChecker(new GridState(gameData));
+    for (int i = 0; i < type; i++) {
+      for (int j = 0; j < type; j++) {
+        checker.setValue(i * type + j, grid[i][j].getContent());
+      }
+    }
+    for (int line = 0; line < type * 2; line++) {
+      updateLine(grid, line);
+    }
+    for (int index = 0; index < cages.size(); index++) {
+      updateCage(cages, index);
+    }
+  }
+  
+  /**
+   * Updates the highlights of a cell's row, column and cage if its number
+   * has changed since it was last counted.
+   * @param cages   the cages on the grid currently.
+   * @param grid    the grid of cells.
+   * @param i       first index of the cell in the grid.
+   * @param j       second index of the cell in the grid.
+   */
+  private void updateCell(List<Cage> cages, GCell[][] grid, int i, int j) {
+    int number = grid[i][j].getContent();
+    if (checker.setValue(i * type + j, number) == number) {
+      return;
+    }
+    
+    updateLine(grid, i);
+    updateLine(grid, j + type);
+    int cage = checker.getState().getCageOf(i * type + j);
+    if (cage >= 0) {
+      updateCage(cages, cage);
+    }
+  }
+  
+  /**
+   * Updates the highlight of a row or column from its counts.
+   * @param grid    the grid of cells.
+   * @param line    the row, or type + the column.
+   */
+  private void updateLine(GCell[][] grid, int line) {
+    /** Highlights the row or column if there are duplicate numbers. */
+    if (checker.hasDuplicates(line) && showMistakes) {
+      highlighter.highlightColumnRow(line % type, grid, line < type);
+    }
+    else {
+      highlighter.remove(line);
+    }
+  }
+  
+  /**
+   * Updates the highlight of a single cage from the counts.
+   * @param cages   the cages on the grid currently.
+   * @param index   position of the cage in the list.
+   */
+  private void updateCage(List<Cage> cages, int index) {
+    /** Highlights cages which can no longer reach their target. */
+    if (!checker.isCageReachable(index) && showMistakes) {
+      cages.get(index).highlightWrong(showMistakes);
+    }
+    else {
+      cages.get(index).resetFill();
+    }
+  }
+  
   /** 
    * Removes all highlights. 
    */
   public void resetMistakeChecker() {
+    indexedCages = null;
     /** Removes every row and column highlight. */
     for (int i = 0; i < type * 2; i++) {
       highlighter.remove(i);
@@ -142,18 +319,21 @@ class MistakeChecker {
     boolean correct = true;
     /** Checks whether each row has been completed correctly. */
     for (int variable = 0; variable < type; variable++) {
-      /** Keeps track of the numbers in the row. */
-      List<Integer> numbersContained = new ArrayList<Integer>();
+      /** Keeps track of the numbers in the row as a bitmask. */
+      int numbersContained = 0;
       boolean shouldHighlight = false;
       for (int cellNo = 0; cellNo < type; cellNo++) {        
         int cellContent = isRow ? grid[variable][cellNo].getContent()
                                 : grid[cellNo][variable].getContent();
-        /** Sees if there are any duplicate numbers. */
-        if (numbersContained.contains(cellContent) && cellContent != 0) {
-          shouldHighlight = true;
-        } else {
-          /** Adds the number. */
-          numbersContained.add(cellContent);
+        if (cellContent != 0) {
+          int bit = 1 << (cellContent - 1);
+          /** Sees if there are any duplicate numbers. */
+          if ((numbersContained & bit) != 0) {
+            shouldHighlight = true;
+          } else {
+            /** Adds the number. */
+            numbersContained |= bit;
+          }
         }
       }        
       /** Highlights the row or column if there are duplicate numbers. */
@@ -165,7 +345,7 @@ class MistakeChecker {
       }
     
       /** False if the row does not contain all the numbers required. */
-      correct = correct && numbersContained.containsAll(mustContain); 
+      correct = correct && numbersContained == mustContain; 
     }
     return correct;
   }
@@ -214,14 +394,21 @@ class MistakeChecker {
   }
   
   /**
-   * Will be used to highlight incorrect rows and columns.
+   * Will be used to highlight incorrect rows and columns. A rectangle is 
+   * made for every row and column the first time one is highlighted, and
+   * after that they are only shown or hidden.
    * @author starp   
    */
   private class Highlighter {
     /**
-     * Highlights for rows and columns (stored in the last half).
+     * Highlights for rows and columns (stored in the last half), or null 
+     * until they have been made.
      */
-    private Shape[] highlights;
+    private Rectangle[] highlights;
+    /**
+     * The grid the highlights were made to cover.
+     */
+    private GCell[][] highlightedGrid;
     /**
      * The pane where the shapes will be added to.
      */
@@ -232,57 +419,71 @@ class MistakeChecker {
      * @param paneToAdd   where the highlights will be created.
      */
     private Highlighter(Pane paneToAdd) {
-      /** The shapes highlighted. */
-      highlights = new Shape[type * 2];
       this.paneToAdd = paneToAdd;
     }
     
+    /**
+     * Makes a hidden rectangle covering each row and column of the grid, 
+     * unless they have already been made for it.
+     * @param grid    grid of cells.
+     */
+    private void createHighlights(GCell[][] grid) {
+      if (highlightedGrid == grid) {
+        return;
+      }
+      dispose();
+      highlightedGrid = grid;
+      highlights = new Rectangle[type * 2];
+      
+      for (int index = 0; index < type * 2; index++) {
+        /** The cells at either end of the row/column. */
+        GCell first = index < type ? grid[index][0] : grid[0][index - type];
+        GCell last = index < type ? grid[index][type - 1] 
+                                  : grid[type - 1][index - type];
+        double x = Math.min(first.getX(), last.getX());
+        double y = Math.min(first.getY(), last.getY());
+        Rectangle highlight = new Rectangle(
+            x, y, Math.max(first.getX(), last.getX()) + last.getWidth() - x,
+            Math.max(first.getY(), last.getY()) + last.getHeight() - y);
+        setShapeProperties(highlight);
+        highlight.setVisible(false);
+        highlights[index] = highlight;
+      }
+      paneToAdd.getChildren().addAll(highlights);
+    }
+    
     /** 
-     * Creates a bright transparent shape to cover a row/column to indicate it 
+     * Shows a bright transparent shape covering a row/column to indicate it 
      * has been completed incorrectly.
      * @param index   which row/column is to be highlighted.
      * @param grid    grid of cells.
      * @param isRow   true if a row is to be highlighted, else a column.
      */
     private void highlightColumnRow(int index, GCell[][] grid, boolean isRow) {
-      /** The space in the highlights array which will be checked. */
-      int indexInArray = isRow ? index : index + type;
-      /** If the row is not already highlighted. */
-      if (highlights[indexInArray] == null) {
-        /** Shape that will be used to highlight the row/column. */
-        Shape shape = isRow ? grid[index][0] : grid[0][index];
-        
-        /** Adds the other cell in the row/column to the shape. */
-        for (int i = 1; i < type; i++) {
-          shape = Shape.union(shape, isRow ? grid[index][i] : grid[i][index]);
-        }
-        
-        /** Keeps a record the new highlight shape. */
-        highlights[indexInArray] = shape;
-        setShapeProperties(shape);
-        paneToAdd.getChildren().add(shape);
-      }
+      createHighlights(grid);
+      highlights[isRow ? index : index + type].setVisible(true);
     }
 
-    
     /**
-     * Removes a highlight shape from the pane. 
-     * @param isRow     if true, a row is to be removed, else if false a 
-     *                  column is removed. 
-     * @param index     indicates which highlight shape is to be removed.
+     * Hides a highlight shape. 
+     * @param index     indicates which highlight shape is to be hidden; 
+     *                  columns come after the rows.
      */
     private void remove(int index) {
-      /** 
-       * Retrieves the shape to be removed. Index depends on whether a row or 
-       * column is fetched.
-       */
-      Shape shapeToRemove = highlights[index];
-            
-      /** If there is a shape to remove, then remove. */
-      if (shapeToRemove != null) {
-        paneToAdd.getChildren().remove(shapeToRemove);
-        highlights[index] = null;
-      }     
+      if (highlights != null) {
+        highlights[index].setVisible(false);
+      }
+    }
+    
+    /**
+     * Takes the highlights off the pane, such as when the grid is replaced.
+     */
+    private void dispose() {
+      if (highlights != null) {
+        paneToAdd.getChildren().removeAll(highlights);
+        highlights = null;
+        highlightedGrid = null;
+      }
     }
     
     /**
@@ -302,7 +503,7 @@ class MistakeChecker {
         cage.resetFill();
       }
 
-      for (int index = 0; index < highlights.length; index++) {
+      for (int index = 0; index < type * 2; index++) {
         remove(index);
       }
     }
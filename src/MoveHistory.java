@@ -0,0 +1,384 @@
+/**
+ * Keeps a record of the actions taken on a grid so they can be undone and
+ * redone. Each action is stored as the cells it changed, with each change
+ * packed into an int holding the cell, its old number and its new number.
+ * The changes are kept in a ring buffer of bounded size; once it is full
+ * the oldest actions are forgotten.
+ * @author starp
+ *
+ */
+public class MoveHistory {
+  /**
+   * Default number of bytes the changes may take up.
+   */
+  public static final int DEFAULTMEMORY = 1 << 16;
+  /**
+   * Number of bits used for each number in a packed change.
+   */
+  private static final int NUMBERBITS = 5;
+  /**
+   * Mask for a single number in a packed change.
+   */
+  private static final int NUMBERMASK = (1 << NUMBERBITS) - 1;
+  /**
+   * Set on the last change of each action.
+   */
+  private static final int ACTIONEND = 1 << 30;
+  /**
+   * The grid the actions are applied to.
+   */
+  private final GridState state;
+  /**
+   * The changes, as a ring buffer.
+   */
+  private int[] changes;
+  /**
+   * Position of the oldest change that can still be undone. Positions
+   * only ever grow and are wrapped around the buffer when used.
+   */
+  private long oldest = 0;
+  /**
+   * Position after the last change that has been applied to the grid.
+   */
+  private long current = 0;
+  /**
+   * Position after the last change that can be redone.
+   */
+  private long newest = 0;
+  /**
+   * Position of the first change of the action being recorded, or -1 when
+   * no action is being recorded.
+   */
+  private long actionStart = -1;
+  /**
+   * Set while recording an action too big for the buffer, which can't be
+   * undone.
+   */
+  private boolean overflowing = false;
+  /**
+   * Position of the first change of the action last undone or redone.
+   */
+  private long movedStart = 0;
+  /**
+   * Number of changes in the action last undone or redone.
+   */
+  private int movedLength = 0;
+  /**
+   * Told about every change, undo and redo so they can be saved, or null.
+   */
+  private MoveJournal journal;
+
+  /**
+   * Creates an empty history with the default memory limit.
+   * @param state     the grid the actions are applied to.
+   */
+  public MoveHistory(GridState state) {
+    this(state, DEFAULTMEMORY);
+  }
+
+  /**
+   * Creates an empty history.
+   * @param state     the grid the actions are applied to.
+   * @param bytes     the number of bytes the changes may take up.
+   */
+  public MoveHistory(GridState state, int bytes) {
+    this.state = state;
+    changes = new int[Math.max(1, bytes / 4)];
+  }
+
+  /**
+   * Accessor for the grid the actions are applied to.
+   * @return {@link #state}
+   */
+  public GridState getState() {
+    return state;
+  }
+
+  /**
+   * Returns the memory the changes may take up.
+   * @return the number of bytes.
+   */
+  public int getMemoryLimit() {
+    return changes.length * 4;
+  }
+
+  /**
+   * Mutator for the journal told about every change, undo and redo.
+   * @param journal   the journal, or null to stop telling one.
+   */
+  public void setJournal(MoveJournal journal) {
+    this.journal = journal;
+  }
+
+  /**
+   * Accessor for the journal told about every change, undo and redo.
+   * @return {@link #journal}, or null if there isn't one.
+   */
+  public MoveJournal getJournal() {
+    return journal;
+  }
+
+  /**
+   * Mutator for the memory the changes may take up. Forgets every action.
+   * The limit is saved with a journal, so it can't change while one is
+   * attached.
+   * @param bytes   the number of bytes.
+   */
+  public void setMemoryLimit(int bytes) {
+    if (journal != null) {
+      throw new IllegalStateException("The memory limit is being saved");
+    }
+    changes = new int[Math.max(1, bytes / 4)];
+    clear();
+  }
+
+  /**
+   * Starts recording an action, forgetting anything that could be redone.
+   */
+  public void beginAction() {
+    newest = current;
+    actionStart = newest;
+    overflowing = false;
+  }
+
+  /**
+   * Changes a cell as part of the action being recorded, forgetting the
+   * oldest actions if the change would not fit.
+   * @param cell      the cell, row * size + column.
+   * @param number    the new number of the cell, or 0 to empty it.
+   */
+  public void set(int cell, int number) {
+    if (actionStart < 0) {
+      throw new IllegalStateException("No action is being recorded");
+    }
+    int old = state.setValue(cell, number);
+    if (old != number && journal != null) {
+      journal.recordChange(cell, number);
+    }
+    if (overflowing || old == number) {
+      return;
+    }
+    if (newest - oldest == changes.length) {
+      if (oldest == actionStart) {
+        /** The action alone fills the buffer, so it can't be kept. */
+        overflowing = true;
+        return;
+      }
+      /** Skips past the end of the oldest action. */
+      while ((changes[(int) (oldest % changes.length)] & ACTIONEND) == 0) {
+        oldest++;
+      }
+      oldest++;
+    }
+    changes[(int) (newest % changes.length)] =
+        cell << (2 * NUMBERBITS) | old << NUMBERBITS | number;
+    newest++;
+  }
+
+  /**
+   * Marks the end of the action being recorded.
+   */
+  public void endAction() {
+    /** An action too big to keep means nothing before it can be undone. */
+    if (overflowing) {
+      oldest = newest;
+      overflowing = false;
+    }
+    else if (newest > actionStart) {
+      changes[(int) ((newest - 1) % changes.length)] |= ACTIONEND;
+    }
+    current = newest;
+    actionStart = -1;
+    if (journal != null) {
+      journal.endAction();
+    }
+  }
+
+  /**
+   * Records a change to a single cell as one action, unless the cell
+   * already holds the number.
+   * @param cell      the cell, row * size + column.
+   * @param number    the new number of the cell, or 0 to empty it.
+   */
+  public void change(int cell, int number) {
+    if (state.getValue(cell) != number) {
+      beginAction();
+      set(cell, number);
+      endAction();
+    }
+  }
+
+  /**
+   * Changes the number the last action gave a cell, keeping it as one
+   * action, as when a second digit is added to a number just entered.
+   * The last action is undone and recorded again with the new number, so
+   * a journal replays the same history. If the last action changed more
+   * than this cell, or has been undone, the change is recorded as a new
+   * action instead.
+   * @param cell      the cell, row * size + column.
+   * @param number    the new number of the cell, or 0 to empty it.
+   */
+  public void amend(int cell, int number) {
+    if (current == newest && current > oldest) {
+      int last = changes[(int) ((current - 1) % changes.length)];
+      boolean alone = current - 1 == oldest
+          || (changes[(int) ((current - 2) % changes.length)]
+              & ACTIONEND) != 0;
+      if (alone && cellOf(last) == cell) {
+        undo();
+        /** Recorded even if empty, so the undone action can't be redone. */
+        beginAction();
+        set(cell, number);
+        endAction();
+        return;
+      }
+    }
+    change(cell, number);
+  }
+
+  /**
+   * Whether there is an action that can be undone.
+   * @return true if {@link #undo} would change the grid.
+   */
+  public boolean canUndo() {
+    return current > oldest;
+  }
+
+  /**
+   * Whether there is an action that can be redone.
+   * @return true if {@link #redo} would change the grid.
+   */
+  public boolean canRedo() {
+    return current < newest;
+  }
+
+  /**
+   * Undoes the last action, changing only the cells it changed.
+   * @return the number of cells changed; each is given by
+   *         {@link #getMovedCell}.
+   */
+  public int undo() {
+    movedLength = 0;
+    /** Prevents undoing past the oldest action. */
+    if (current > oldest) {
+      do {
+        current--;
+        int change = changes[(int) (current % changes.length)];
+        state.setValue(cellOf(change), (change >>> NUMBERBITS) & NUMBERMASK);
+        movedLength++;
+      }
+      while (current > oldest
+             && (changes[(int) ((current - 1) % changes.length)]
+                 & ACTIONEND) == 0);
+      movedStart = current;
+      if (journal != null) {
+        journal.undone();
+      }
+    }
+    return movedLength;
+  }
+
+  /**
+   * Redoes the last action undone, changing only the cells it changed.
+   * @return the number of cells changed; each is given by
+   *         {@link #getMovedCell}.
+   */
+  public int redo() {
+    movedLength = 0;
+    /** Prevents redoing past the newest action. */
+    if (current < newest) {
+      movedStart = current;
+      int change;
+      do {
+        change = changes[(int) (current % changes.length)];
+        current++;
+        state.setValue(cellOf(change), change & NUMBERMASK);
+        movedLength++;
+      }
+      while ((change & ACTIONEND) == 0);
+      if (journal != null) {
+        journal.redone();
+      }
+    }
+    return movedLength;
+  }
+
+  /**
+   * Returns one of the cells changed by the last undo or redo.
+   * @param index     which of the changed cells, from 0.
+   * @return the cell, row * size + column.
+   */
+  public int getMovedCell(int index) {
+    if (index < 0 || index >= movedLength) {
+      throw new IndexOutOfBoundsException("Only " + movedLength
+                                          + " cells were changed");
+    }
+    return cellOf(changes[(int) ((movedStart + index) % changes.length)]);
+  }
+
+  /**
+   * Forgets every action. The grid is left as it is.
+   */
+  public void clear() {
+    oldest = 0;
+    current = 0;
+    newest = 0;
+    actionStart = -1;
+    overflowing = false;
+    movedLength = 0;
+    if (journal != null) {
+      journal.cleared();
+    }
+  }
+
+  /**
+   * Copies out every change that can be undone or redone, oldest first,
+   * so the history can be saved.
+   * @return the packed changes.
+   */
+  public int[] exportChanges() {
+    int[] saved = new int[(int) (newest - oldest)];
+    for (int index = 0; index < saved.length; index++) {
+      saved[index] = changes[(int) ((oldest + index) % changes.length)];
+    }
+    return saved;
+  }
+
+  /**
+   * Returns how many of the exported changes can be undone; the rest can
+   * be redone.
+   * @return the number of changes before the current position.
+   */
+  public int getUndoableChanges() {
+    return (int) (current - oldest);
+  }
+
+  /**
+   * Replaces every action with saved ones. The grid must already hold the
+   * numbers it had when they were saved.
+   * @param saved       the packed changes from {@link #exportChanges}.
+   * @param undoable    how many of them can be undone.
+   */
+  public void restore(int[] saved, int undoable) {
+    if (saved.length > changes.length || undoable < 0
+        || undoable > saved.length) {
+      throw new IllegalArgumentException("The saved history doesn't fit");
+    }
+    System.arraycopy(saved, 0, changes, 0, saved.length);
+    oldest = 0;
+    current = undoable;
+    newest = saved.length;
+    actionStart = -1;
+    overflowing = false;
+    movedLength = 0;
+  }
+
+  /**
+   * Unpacks the cell of a change.
+   * @param change    the packed change.
+   * @return the cell, row * size + column.
+   */
+  private static int cellOf(int change) {
+    return (change & ~ACTIONEND) >>> (2 * NUMBERBITS);
+  }
+}
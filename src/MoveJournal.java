@@ -0,0 +1,636 @@
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.StringWriter;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.zip.CRC32;
+
+/**
+ * Saves a game as it is played, so it can be resumed with its undo and
+ * redo history. The save file holds the puzzle, a checkpoint of the grid
+ * and history, then every action, undo and redo since, appended as they
+ * happen. Each record is framed by its length and a checksum, so a record
+ * cut short by a crash is dropped when the game is resumed.
+ * <p>
+ * Records are written by a background thread, which syncs the file once
+ * for everything that has queued up, so entering numbers never waits for
+ * the disk. After {@link #CHECKPOINTINTERVAL} records a new checkpoint is
+ * taken and the file is rewritten around it, so resuming never has to
+ * replay more than that many records.
+ * @author starp
+ *
+ */
+public class MoveJournal implements Closeable {
+  /**
+   * Marks the start of a save file.
+   */
+  public static final int MAGIC = 0x4D444B4A;
+  /**
+   * Version of the format written.
+   */
+  public static final int VERSION = 1;
+  /**
+   * Number of records appended before a new checkpoint is taken.
+   */
+  public static final int CHECKPOINTINTERVAL = 1024;
+  /**
+   * Milliseconds the writer waits after the first queued record so a
+   * burst of typing is synced together.
+   */
+  public static final long SYNCDELAY = 20;
+  /**
+   * Record of an action: the cells it changed and their new numbers.
+   */
+  private static final byte ACTION = 'A';
+  /**
+   * Record of the last action being undone.
+   */
+  private static final byte UNDO = 'U';
+  /**
+   * Record of the last undone action being redone.
+   */
+  private static final byte REDO = 'R';
+  /**
+   * Record of every action being forgotten.
+   */
+  private static final byte CLEAR = 'X';
+  /**
+   * Record of the whole grid and history.
+   */
+  private static final byte CHECKPOINT = 'C';
+  /**
+   * Queued to make the writer finish.
+   */
+  private static final byte[] CLOSE = new byte[0];
+  /**
+   * Where the game is saved.
+   */
+  private final Path path;
+  /**
+   * The history being saved, read when a checkpoint is taken.
+   */
+  private final MoveHistory history;
+  /**
+   * The start of the save file: the puzzle and memory limit.
+   */
+  private final byte[] header;
+  /**
+   * Records waiting to be written, each already framed.
+   */
+  private final BlockingQueue<byte[]> queue = new LinkedBlockingQueue<byte[]>();
+  /**
+   * Writes the queued records.
+   */
+  private final Thread writer;
+  /**
+   * The cells changed by the action being recorded.
+   */
+  private int[] pendingCells = new int[16];
+  /**
+   * The new numbers of the cells changed by the action being recorded.
+   */
+  private int[] pendingNumbers = new int[16];
+  /**
+   * Number of changes in the action being recorded.
+   */
+  private int pendingCount = 0;
+  /**
+   * Number of records appended since the last checkpoint.
+   */
+  private int sinceCheckpoint = 0;
+  /**
+   * Number of times the file has been synced. Only changed by the writer.
+   */
+  private volatile long syncs = 0;
+  /**
+   * The first error the writer ran into, after which nothing more is
+   * written.
+   */
+  private volatile IOException error;
+  /**
+   * The open save file. Only used by the writer.
+   */
+  private FileChannel channel;
+
+  /**
+   * Starts saving a game to a file, replacing any file already there. The
+   * history's current grid and actions are written as the first
+   * checkpoint, and the journal is attached to the history.
+   * @param path        where the game is saved.
+   * @param gameData    the puzzle being played.
+   * @param history     the history of the game.
+   * @return the journal.
+   * @throws IOException if the file can't be written.
+   */
+  public static MoveJournal create(Path path, GameData gameData,
+                                   MoveHistory history) throws IOException {
+    MoveJournal journal = new MoveJournal(path, history,
+                                          writeHeader(gameData, history));
+    journal.channel = journal.rewrite(journal.checkpoint());
+    journal.start();
+    return journal;
+  }
+
+  /**
+   * Reads a saved game back, replaying everything after its checkpoint,
+   * and carries on saving to the same file.
+   * @param path    where the game was saved.
+   * @return the puzzle, with its grid and history as they were saved.
+   * @throws IOException if the file can't be read or isn't a save file.
+   */
+  public static Resumed resume(Path path) throws IOException {
+    ByteBuffer file = ByteBuffer.wrap(Files.readAllBytes(path));
+    GameData gameData;
+    MoveHistory history;
+    int headerLength;
+    try {
+      if (file.getInt() != MAGIC) {
+        throw new IOException("Not a saved game");
+      }
+      if (file.getInt() != VERSION) {
+        throw new IOException("Unknown save version");
+      }
+      int memory = file.getInt();
+      byte[] puzzle = new byte[file.getInt()];
+      file.get(puzzle);
+      headerLength = file.position();
+      gameData = PuzzleParser.parse(new String(puzzle,
+                                               StandardCharsets.UTF_8));
+      history = new MoveHistory(new GridState(gameData.getSize()), memory);
+    }
+    catch (PuzzleFormatException | RuntimeException e) {
+      throw new IOException("The saved puzzle is damaged", e);
+    }
+
+    /** Replays records until the end or the first damaged one. */
+    int records = 0;
+    int end = file.position();
+    while (true) {
+      ByteBuffer record = nextRecord(file);
+      if (record == null) {
+        break;
+      }
+      try {
+        replay(record, history);
+      }
+      catch (RuntimeException e) {
+        break;
+      }
+      end = file.position();
+      records++;
+    }
+    if (records == 0) {
+      throw new IOException("The saved game has no checkpoint");
+    }
+
+    byte[] header = Arrays.copyOf(file.array(), headerLength);
+    MoveJournal journal = new MoveJournal(path, history, header);
+    journal.sinceCheckpoint = records - 1;
+    journal.channel = FileChannel.open(path, StandardOpenOption.WRITE);
+    /** Drops whatever was cut short, then appends after the rest. */
+    journal.channel.truncate(end);
+    journal.channel.position(end);
+    journal.start();
+    return new Resumed(gameData, history, journal);
+  }
+
+  /**
+   * Creates a journal; it starts writing once the file is open.
+   * @param path      where the game is saved.
+   * @param history   the history being saved.
+   * @param header    the start of the save file.
+   */
+  private MoveJournal(Path path, MoveHistory history, byte[] header) {
+    this.path = path;
+    this.history = history;
+    this.header = header;
+    writer = new Thread(this::write, "Game journal writer");
+    writer.setDaemon(true);
+  }
+
+  /**
+   * Attaches the journal to the history and starts the writer.
+   */
+  private void start() {
+    history.setJournal(this);
+    writer.start();
+  }
+
+  /**
+   * Accessor for the number of times the file has been synced.
+   * @return {@link #syncs}
+   */
+  public long getSyncs() {
+    return syncs;
+  }
+
+  /**
+   * Accessor for the first error the writer ran into.
+   * @return {@link #error}, or null if everything has been written.
+   */
+  public IOException getError() {
+    return error;
+  }
+
+  /**
+   * Notes a change to a cell as part of the action being recorded.
+   * @param cell      the cell, row * size + column.
+   * @param number    its new number, or 0 if it was emptied.
+   */
+  void recordChange(int cell, int number) {
+    if (pendingCount == pendingCells.length) {
+      pendingCells = Arrays.copyOf(pendingCells, pendingCount * 2);
+      pendingNumbers = Arrays.copyOf(pendingNumbers, pendingCount * 2);
+    }
+    pendingCells[pendingCount] = cell;
+    pendingNumbers[pendingCount++] = number;
+  }
+
+  /**
+   * Saves the action that has just been recorded.
+   */
+  void endAction() {
+    ByteArrayOutputStream out = new ByteArrayOutputStream(
+        2 + pendingCount * 4);
+    out.write(ACTION);
+    writeVarint(out, pendingCount);
+    for (int index = 0; index < pendingCount; index++) {
+      writeVarint(out, pendingCells[index]);
+      out.write(pendingNumbers[index]);
+    }
+    pendingCount = 0;
+    append(out.toByteArray());
+  }
+
+  /**
+   * Saves that the last action was undone.
+   */
+  void undone() {
+    append(new byte[] {UNDO});
+  }
+
+  /**
+   * Saves that the last undone action was redone.
+   */
+  void redone() {
+    append(new byte[] {REDO});
+  }
+
+  /**
+   * Saves that every action was forgotten.
+   */
+  void cleared() {
+    append(new byte[] {CLEAR});
+  }
+
+  /**
+   * Queues a record, taking a checkpoint instead if enough records have
+   * been written since the last one.
+   * @param payload     the record without its framing.
+   */
+  private void append(byte[] payload) {
+    if (++sinceCheckpoint >= CHECKPOINTINTERVAL) {
+      sinceCheckpoint = 0;
+      queue.add(checkpoint());
+    }
+    else {
+      queue.add(frame(payload));
+    }
+  }
+
+  /**
+   * Makes a checkpoint of the grid and history as they are now.
+   * @return the framed checkpoint record.
+   */
+  private byte[] checkpoint() {
+    GridState state = history.getState();
+    int cells = state.getSize() * state.getSize();
+    int[] changes = history.exportChanges();
+    ByteArrayOutputStream out = new ByteArrayOutputStream(
+        cells + changes.length * 3 + 16);
+    out.write(CHECKPOINT);
+    writeVarint(out, cells);
+    for (int cell = 0; cell < cells; cell++) {
+      out.write(state.getValue(cell));
+    }
+    writeVarint(out, history.getUndoableChanges());
+    writeVarint(out, changes.length);
+    for (int change : changes) {
+      writeVarint(out, change);
+    }
+    return frame(out.toByteArray());
+  }
+
+  /**
+   * Finishes writing everything queued and closes the file. The journal
+   * is detached from the history.
+   * @throws IOException if anything couldn't be written.
+   */
+  @Override
+  public void close() throws IOException {
+    if (history.getJournal() == this) {
+      history.setJournal(null);
+    }
+    queue.add(CLOSE);
+    try {
+      writer.join();
+    }
+    catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+    if (error != null) {
+      throw error;
+    }
+  }
+
+  /**
+   * Runs on the writer thread: writes whatever has been queued, syncing
+   * once for each batch, until the journal is closed.
+   */
+  private void write() {
+    List<byte[]> batch = new ArrayList<byte[]>();
+    boolean closing = false;
+    while (!closing) {
+      try {
+        batch.add(queue.take());
+        /** Gives a burst of typing the chance to join the batch. */
+        if (batch.get(0) != CLOSE) {
+          Thread.sleep(SYNCDELAY);
+        }
+      }
+      catch (InterruptedException e) {
+        closing = true;
+      }
+      queue.drainTo(batch);
+
+      try {
+        boolean wrote = false;
+        for (byte[] record : batch) {
+          if (record == CLOSE) {
+            closing = true;
+          }
+          else if (error == null && record[8] == CHECKPOINT) {
+            /** Starts a new file so replay begins from this checkpoint. */
+            channel.close();
+            channel = rewrite(record);
+            wrote = false;
+          }
+          else if (error == null) {
+            ByteBuffer buffer = ByteBuffer.wrap(record);
+            while (buffer.hasRemaining()) {
+              channel.write(buffer);
+            }
+            wrote = true;
+          }
+        }
+        if (wrote) {
+          channel.force(false);
+          syncs++;
+        }
+      }
+      catch (IOException e) {
+        if (error == null) {
+          error = e;
+        }
+      }
+      batch.clear();
+    }
+
+    try {
+      channel.close();
+    }
+    catch (IOException e) {
+      if (error == null) {
+        error = e;
+      }
+    }
+  }
+
+  /**
+   * Writes a new save file holding the header and a checkpoint, and
+   * swaps it in for the old one in a single step.
+   * @param checkpoint    the framed checkpoint record.
+   * @return the new file, open for appending.
+   * @throws IOException if it can't be written.
+   */
+  private FileChannel rewrite(byte[] checkpoint) throws IOException {
+    Path temporary = path.resolveSibling(path.getFileName() + ".tmp");
+    try (FileChannel out = FileChannel.open(
+             temporary, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+             StandardOpenOption.TRUNCATE_EXISTING)) {
+      ByteBuffer buffer = ByteBuffer.allocate(header.length
+                                              + checkpoint.length);
+      buffer.put(header).put(checkpoint).flip();
+      while (buffer.hasRemaining()) {
+        out.write(buffer);
+      }
+      out.force(false);
+    }
+    Files.move(temporary, path, StandardCopyOption.REPLACE_EXISTING,
+               StandardCopyOption.ATOMIC_MOVE);
+    syncs++;
+    return FileChannel.open(path, StandardOpenOption.WRITE,
+                            StandardOpenOption.APPEND);
+  }
+
+  /**
+   * Writes the start of a save file.
+   * @param gameData    the puzzle being played.
+   * @param history     the history of the game.
+   * @return the header bytes.
+   * @throws IOException if the puzzle can't be written out.
+   */
+  private static byte[] writeHeader(GameData gameData, MoveHistory history)
+      throws IOException {
+    StringWriter text = new StringWriter();
+    PuzzleParser.format(gameData, text);
+    byte[] puzzle = text.toString().getBytes(StandardCharsets.UTF_8);
+    ByteBuffer buffer = ByteBuffer.allocate(16 + puzzle.length);
+    buffer.putInt(MAGIC).putInt(VERSION).putInt(history.getMemoryLimit())
+          .putInt(puzzle.length).put(puzzle);
+    return buffer.array();
+  }
+
+  /**
+   * Frames a record with its length and checksum.
+   * @param payload     the record.
+   * @return the length, a checksum, then the record.
+   */
+  private static byte[] frame(byte[] payload) {
+    CRC32 crc = new CRC32();
+    crc.update(payload);
+    ByteBuffer buffer = ByteBuffer.allocate(8 + payload.length);
+    buffer.putInt(payload.length).putInt((int) crc.getValue()).put(payload);
+    return buffer.array();
+  }
+
+  /**
+   * Reads the next framed record.
+   * @param file    the save file, positioned at a record.
+   * @return the record, or null at the end of the file or if the record
+   *         was cut short or damaged.
+   */
+  private static ByteBuffer nextRecord(ByteBuffer file) {
+    if (file.remaining() < 8) {
+      return null;
+    }
+    int length = file.getInt();
+    int checksum = file.getInt();
+    if (length < 1 || length > file.remaining()) {
+      return null;
+    }
+    CRC32 crc = new CRC32();
+    crc.update(file.array(), file.position(), length);
+    if ((int) crc.getValue() != checksum) {
+      return null;
+    }
+    ByteBuffer record = ByteBuffer.wrap(file.array(), file.position(),
+                                        length).slice();
+    file.position(file.position() + length);
+    return record;
+  }
+
+  /**
+   * Applies a record to a history that isn't attached to a journal.
+   * @param record    the record.
+   * @param history   the history being rebuilt.
+   */
+  private static void replay(ByteBuffer record, MoveHistory history) {
+    switch (record.get()) {
+      case ACTION:
+        int count = readVarint(record);
+        history.beginAction();
+        for (int index = 0; index < count; index++) {
+          int cell = readVarint(record);
+          history.set(cell, record.get());
+        }
+        history.endAction();
+        break;
+      case UNDO:
+        history.undo();
+        break;
+      case REDO:
+        history.redo();
+        break;
+      case CLEAR:
+        history.clear();
+        break;
+      case CHECKPOINT:
+        GridState state = history.getState();
+        int cells = readVarint(record);
+        if (cells != state.getSize() * state.getSize()) {
+          throw new IllegalArgumentException("Checkpoint of another grid");
+        }
+        for (int cell = 0; cell < cells; cell++) {
+          state.setValue(cell, record.get());
+        }
+        int undoable = readVarint(record);
+        int[] changes = new int[readVarint(record)];
+        for (int index = 0; index < changes.length; index++) {
+          changes[index] = readVarint(record);
+        }
+        history.restore(changes, undoable);
+        break;
+      default:
+        throw new IllegalArgumentException("Unknown record");
+    }
+  }
+
+  /**
+   * Writes an unsigned varint.
+   * @param out       where it is written.
+   * @param value     the number, treated as unsigned.
+   */
+  private static void writeVarint(ByteArrayOutputStream out, int value) {
+    while ((value & ~0x7F) != 0) {
+      out.write((value & 0x7F) | 0x80);
+      value >>>= 7;
+    }
+    out.write(value);
+  }
+
+  /**
+   * Reads an unsigned varint.
+   * @param buffer    where it is read from.
+   * @return the number.
+   */
+  private static int readVarint(ByteBuffer buffer) {
+    int value = 0;
+    for (int shift = 0; shift < 35; shift += 7) {
+      byte next = buffer.get();
+      value |= (next & 0x7F) << shift;
+      if (next >= 0) {
+        return value;
+      }
+    }
+    throw new IllegalArgumentException("Varint too long");
+  }
+
+  /**
+   * A game read back from its save file. Acts as a record.
+   * @author starp
+   *
+   */
+  public static class Resumed {
+    /**
+     * The puzzle being played.
+     */
+    private final GameData gameData;
+    /**
+     * The history, over the grid as it was saved, still being saved.
+     */
+    private final MoveHistory history;
+    /**
+     * The journal carrying on saving the game.
+     */
+    private final MoveJournal journal;
+
+    /**
+     * Creates the record.
+     * @param gameData    the puzzle being played.
+     * @param history     the history over the saved grid.
+     * @param journal     the journal carrying on saving the game.
+     */
+    private Resumed(GameData gameData, MoveHistory history,
+                    MoveJournal journal) {
+      this.gameData = gameData;
+      this.history = history;
+      this.journal = journal;
+    }
+
+    /**
+     * Accessor for the puzzle being played.
+     * @return {@link #gameData}
+     */
+    public GameData getGameData() {
+      return gameData;
+    }
+
+    /**
+     * Accessor for the history, whose grid holds the saved numbers.
+     * @return {@link #history}
+     */
+    public MoveHistory getHistory() {
+      return history;
+    }
+
+    /**
+     * Accessor for the journal carrying on saving the game.
+     * @return {@link #journal}
+     */
+    public MoveJournal getJournal() {
+      return journal;
+    }
+  }
+}
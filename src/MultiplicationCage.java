@@ -1,4 +1,5 @@
 import javafx.scene.layout.Pane;
+import javafx.scene.shape.Shape;
 
 /** 
  * Cage which will perform the multiplication operator on the cells.
@@ -14,27 +15,35 @@ class MultiplicationCage extends Cage {
     super(cellArray, paneToDraw, target);      
   }
   
+  /**
+   * Calls the parent constructor with an outline that has already been
+   * traced.
+   * @param cellArray     the cells that make up the cage.
+   * @param paneToDraw    the pane where the cage will be drawn.
+   * @param target        the target number.
+   * @param outline       the border of the cells.
+   */
+  public MultiplicationCage(GCell[] cellArray, Pane paneToDraw, int target, 
+                            Shape outline) {
+    super(cellArray, paneToDraw, target, outline);
+  }
+  
   /**
    * Creates the label.
-   * @param target        the label will be "target"
+   * @param target        the label will be "target×"
    * @param paneToDraw    the pane where the cage will be added.
    */
   @Override
   protected void createTargetLabel(int target, Pane paneToDraw) {
-    super.createTargetLabel("", target, paneToDraw);      
+    super.createTargetLabel("×", target, paneToDraw);      
   }
 
   /**
-   * @true if the cells multiply to the target.
+   * The numbers of the cells are multiplied together.
+   * @return {@link Operations#TIMES}
    */
   @Override
-  protected boolean completedCorrectly() {
-    int multiplied = 1;
-    
-    /** Calculates the product of all of the cells. */
-    for (GCell cell : cells) {
-      multiplied *= cell.getContent(); 
-    }
-    return target == multiplied;
+  protected Operations getOperator() {
+    return Operations.TIMES;
   }    
 }
@@ -0,0 +1,158 @@
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+import javafx.geometry.VPos;
+import javafx.scene.Group;
+import javafx.scene.image.Image;
+import javafx.scene.paint.Color;
+import javafx.scene.paint.ImagePattern;
+import javafx.scene.shape.Rectangle;
+import javafx.scene.text.Font;
+import javafx.scene.text.Text;
+import javafx.scene.text.TextAlignment;
+
+/**
+ * Shared cache of the patterns cells are filled with to show a number, one
+ * for each number and font size. The number images are loaded on a
+ * background thread when the game starts, so entering a number never has
+ * to decode an image.
+ * @author starp
+ *
+ */
+public class NumberImages {
+  /**
+   * Width and height of the number images.
+   */
+  private static final int IMAGESIZE = 400;
+  /**
+   * Largest number that has an image file.
+   */
+  private static final int LARGESTIMAGE = 9;
+  /**
+   * Start of the name of each number's image file, indexed by number.
+   */
+  private static final String[] NAMES = {"", "one", "two", "three", "four",
+                                         "five", "six", "seven", "eight",
+                                         "nine"};
+  /**
+   * The patterns, indexed by font size * (MAXSIZE + 1) + number.
+   */
+  private static final AtomicReferenceArray<ImagePattern> PATTERNS =
+      new AtomicReferenceArray<ImagePattern>(
+          FontSize.values().length * (GameData.MAXSIZE + 1));
+  /**
+   * Number of patterns that were already in the cache when asked for.
+   */
+  private static final AtomicLong HITS = new AtomicLong();
+  /**
+   * Number of patterns that had to be made when asked for.
+   */
+  private static final AtomicLong MISSES = new AtomicLong();
+
+  /**
+   * Only has static methods.
+   */
+  private NumberImages() {
+  }
+
+  /**
+   * Loads the images of every number that has an image file, for every
+   * font size, on a background thread.
+   */
+  public static void warmUp() {
+    Thread loader = new Thread(() -> {
+      for (FontSize fontSize : FontSize.values()) {
+        for (int number = 1; number <= LARGESTIMAGE; number++) {
+          PATTERNS.compareAndSet(indexOf(number, fontSize), null,
+                                 loadImage(number, fontSize));
+        }
+      }
+    }, "Number image loader");
+    loader.setDaemon(true);
+    loader.start();
+  }
+
+  /**
+   * Returns the pattern showing a number, making it if it isn't cached.
+   * Numbers without an image file have to be drawn, so this must be
+   * called on the JavaFX thread.
+   * @param number      the number to show, from 1 to the largest size.
+   * @param fontSize    how big the number should be drawn.
+   * @return the pattern to fill a cell with.
+   */
+  public static ImagePattern get(int number, FontSize fontSize) {
+    int index = indexOf(number, fontSize);
+    ImagePattern pattern = PATTERNS.get(index);
+    if (pattern != null) {
+      HITS.incrementAndGet();
+      return pattern;
+    }
+
+    MISSES.incrementAndGet();
+    pattern = number <= LARGESTIMAGE ? loadImage(number, fontSize)
+                                     : renderNumber(number, fontSize);
+    /** Keeps whichever pattern was stored first if the loader got there. */
+    if (!PATTERNS.compareAndSet(index, null, pattern)) {
+      pattern = PATTERNS.get(index);
+    }
+    return pattern;
+  }
+
+  /**
+   * Accessor for the number of patterns found in the cache.
+   * @return {@link #HITS}
+   */
+  public static long getHits() {
+    return HITS.get();
+  }
+
+  /**
+   * Accessor for the number of patterns that had to be made.
+   * @return {@link #MISSES}
+   */
+  public static long getMisses() {
+    return MISSES.get();
+  }
+
+  /**
+   * Works out where a pattern is kept.
+   * @param number      the number shown.
+   * @param fontSize    how big the number is drawn.
+   * @return the index into {@link #PATTERNS}.
+   */
+  private static int indexOf(int number, FontSize fontSize) {
+    return fontSize.ordinal() * (GameData.MAXSIZE + 1) + number;
+  }
+
+  /**
+   * Loads the image file of a number.
+   * @param number      the number, from 1 to 9.
+   * @param fontSize    how big the number is drawn.
+   * @return the pattern made from the image.
+   */
+  private static ImagePattern loadImage(int number, FontSize fontSize) {
+    String suffix = fontSize == FontSize.BIG ? "Big"
+                    : fontSize == FontSize.SMALL ? "Small" : "";
+    return new ImagePattern(new Image(NAMES[number] + suffix + ".png"));
+  }
+
+  /**
+   * Draws a number that has no image file, in the same style as the images.
+   * @param number      the number to draw.
+   * @param fontSize    how big the number is drawn.
+   * @return the drawing of the number, to fill the cell with.
+   */
+  private static ImagePattern renderNumber(int number, FontSize fontSize) {
+    Text text = new Text(Integer.toString(number));
+    /** Matches the height of the digits in the images. */
+    text.setFont(new Font(fontSize == FontSize.SMALL ? 90
+                          : fontSize == FontSize.BIG ? 180 : 130));
+    text.setTextAlignment(TextAlignment.CENTER);
+    text.setTextOrigin(VPos.CENTER);
+    text.setX((IMAGESIZE - text.getLayoutBounds().getWidth()) / 2);
+    text.setY(IMAGESIZE / 2);
+
+    Rectangle background = new Rectangle(IMAGESIZE, IMAGESIZE, Color.WHITE);
+    return new ImagePattern(new Group(background, text).snapshot(null, null));
+  }
+}
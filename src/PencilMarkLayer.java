@@ -0,0 +1,102 @@
+import javafx.geometry.VPos;
+import javafx.scene.canvas.Canvas;
+import javafx.scene.canvas.GraphicsContext;
+import javafx.scene.layout.Pane;
+import javafx.scene.paint.Color;
+import javafx.scene.text.Font;
+import javafx.scene.text.TextAlignment;
+
+/**
+ * Draws the pencil marks of every cell on a single canvas laid over the
+ * grid. Each number noted is drawn small, always in the same spot of its
+ * cell, in a block below where a cage's label goes. Changing a cell's
+ * marks only redraws that cell, so no nodes are made or replaced however
+ * often the marks change.
+ * @author starp
+ *
+ */
+public class PencilMarkLayer {
+  /**
+   * Fraction of the cell's height left free at the top for a cage's label.
+   */
+  private static final double LABELSPACE = 0.3;
+  /**
+   * Draws the marks. Clicks go through it to the cells below.
+   */
+  private final Canvas canvas;
+  /**
+   * Number of columns/rows of the grid.
+   */
+  private final int size;
+  /**
+   * Width and height of a cell.
+   */
+  private final double cellWidth;
+  /**
+   * Number of marks drawn side by side in a cell.
+   */
+  private final int columns;
+  /**
+   * Width of the space for each mark.
+   */
+  private final double markWidth;
+  /**
+   * Height of the space for each mark.
+   */
+  private final double markHeight;
+  /**
+   * The text of each number, indexed by number.
+   */
+  private final String[] labels;
+
+  /**
+   * Creates an empty layer and adds it to the pane, above the cells that
+   * are already in it.
+   * @param size        number of columns/rows of the grid.
+   * @param cellWidth   width and height of a cell.
+   * @param gridPane    where the cells are drawn.
+   */
+  public PencilMarkLayer(int size, double cellWidth, Pane gridPane) {
+    this.size = size;
+    this.cellWidth = cellWidth;
+    columns = (int) Math.ceil(Math.sqrt(size));
+    int rows = (size + columns - 1) / columns;
+    markWidth = cellWidth / columns;
+    markHeight = cellWidth * (1 - LABELSPACE) / rows;
+    labels = new String[size + 1];
+    for (int number = 1; number <= size; number++) {
+      labels[number] = Integer.toString(number);
+    }
+
+    canvas = new Canvas(size * cellWidth, size * cellWidth);
+    canvas.setMouseTransparent(true);
+    GraphicsContext graphics = canvas.getGraphicsContext2D();
+    /** Two digit numbers need narrower text. */
+    graphics.setFont(new Font(Math.min(markHeight * 0.8,
+                                       markWidth * (size > 9 ? 0.5 : 0.8))));
+    graphics.setFill(Color.DIMGRAY);
+    graphics.setTextAlign(TextAlignment.CENTER);
+    graphics.setTextBaseline(VPos.CENTER);
+    gridPane.getChildren().add(canvas);
+  }
+
+  /**
+   * Redraws the marks of one cell.
+   * @param cell    the cell, row * size + column.
+   * @param marks   the marks to show, bit number - 1 set for each number,
+   *                or 0 to show none.
+   */
+  public void draw(int cell, int marks) {
+    GraphicsContext graphics = canvas.getGraphicsContext2D();
+    double x = cell % size * cellWidth;
+    double y = cell / size * cellWidth;
+    graphics.clearRect(x, y, cellWidth, cellWidth);
+    for (int left = marks; left != 0; left &= left - 1) {
+      int slot = Integer.numberOfTrailingZeros(left);
+      graphics.fillText(labels[slot + 1],
+                        x + (slot % columns + 0.5) * markWidth,
+                        y + cellWidth * LABELSPACE
+                        + (slot / columns + 0.5) * markHeight);
+    }
+  }
+}
@@ -0,0 +1,128 @@
+import java.util.Random;
+import java.util.SplittableRandom;
+import java.util.stream.IntStream;
+import java.util.stream.Stream;
+
+/**
+ * Generates batches of puzzles in parallel. The randomness of each puzzle 
+ * is derived only from the base seed and its index in the batch, so a batch
+ * contains the same puzzles in the same order however many threads build 
+ * it.
+ * @author starp
+ *
+ */
+public class PuzzleBatch {
+  /**
+   * The step SplittableRandom takes between the seeds of its outputs.
+   */
+  private static final long GOLDEN_GAMMA = 0x9e3779b97f4a7c15L;
+  /**
+   * Number of columns/rows of each puzzle.
+   */
+  private final int size;
+  /**
+   * Maximum number of cells in a cage.
+   */
+  private final int max;
+  /**
+   * Whether each puzzle must have a unique solution.
+   */
+  private boolean unique = false;
+  /**
+   * Relative chance of each cage size, or null for the default.
+   */
+  private double[] sizeWeights = null;
+  
+  /**
+   * Creates a batch generator for puzzles of one size.
+   * @param size    number of columns/rows of each puzzle.
+   * @param max     maximum number of cells in a cage.
+   */
+  public PuzzleBatch(int size, int max) {
+    this.size = size;
+    this.max = max;
+  }
+  
+  /**
+   * Mutator for whether generated puzzles must have a unique solution.
+   * @param unique    true if ambiguous cage layouts should be repaired.
+   */
+  public void setUnique(boolean unique) {
+    this.unique = unique;
+  }
+  
+  /**
+   * Mutator for the distribution of cage sizes.
+   * @param sizeWeights   the relative chance of each cage size, starting
+   *                      with 1 cell, or null for the default.
+   */
+  public void setSizeWeights(double[] sizeWeights) {
+    this.sizeWeights = sizeWeights;
+  }
+  
+  /**
+   * Streams a batch of puzzles. The stream is parallel, ordered and sized, 
+   * and is split into fork/join tasks by index, so puzzles are built on the
+   * common pool (or the pool the terminal operation runs in) as they are
+   * consumed.
+   * @param baseSeed    the seed the whole batch is derived from.
+   * @param count       number of puzzles in the batch.
+   * @return the puzzles in index order.
+   */
+  public Stream<GameData> stream(long baseSeed, int count) {
+    return IntStream.range(0, count).parallel()
+                    .mapToObj(index -> generate(baseSeed, index));
+  }
+  
+  /**
+   * Generates a single puzzle of a batch.
+   * @param baseSeed    the seed the whole batch is derived from.
+   * @param index       the position of the puzzle in the batch.
+   * @return the same puzzle the batch's stream has at that index.
+   */
+  public GameData generate(long baseSeed, int index) {
+    /** 
+     * Seeds next to each other share a gamma and so give the same numbers
+     * one step apart; splitting gives each puzzle its own stream.
+     */
+    SplittableRandom puzzleRandom = 
+        new SplittableRandom(baseSeed + (index + 1) * GOLDEN_GAMMA).split();
+    PuzzleGenerator generator = 
+        new PuzzleGenerator(new SplittableRandomAdapter(puzzleRandom));
+    generator.setUnique(unique);
+    generator.setSizeWeights(sizeWeights);
+    return generator.createGameData(size, max);
+  }
+  
+  /**
+   * Lets the puzzle generator draw from a SplittableRandom, which unlike 
+   * Random isn't shared between threads.
+   * @author starp
+   *
+   */
+  private static class SplittableRandomAdapter extends Random {
+    private static final long serialVersionUID = 1L;
+    /**
+     * Where the random numbers come from.
+     */
+    private final SplittableRandom source;
+    
+    /**
+     * Wraps the random number generator.
+     * @param source    the generator that will supply the numbers.
+     */
+    private SplittableRandomAdapter(SplittableRandom source) {
+      this.source = source;
+    }
+    
+    /**
+     * Supplies the random bits that all of Random's methods are built on.
+     * @param bits    number of random bits wanted.
+     * @return an int whose low bits are random.
+     */
+    @Override
+    protected int next(int bits) {
+      return source.nextInt() >>> (32 - bits);
+    }
+  }
+}
@@ -0,0 +1,204 @@
+import java.util.Arrays;
+
+/**
+ * Keeps track of the mistakes in a grid as its numbers change. Each row and
+ * column keeps a count of each number, and each cage whether it reaches its
+ * target, so changing a cell only has to look at its row, column and cage.
+ * Lines are numbered with the rows first and then the columns.
+ * @author starp
+ *
+ */
+public class PuzzleChecker {
+  /**
+   * The grid being checked.
+   */
+  private final GridState state;
+  /**
+   * Number of columns/rows.
+   */
+  private final int size;
+  /**
+   * How many times each number appears in each row and then each column,
+   * indexed by line * (size + 1) + number.
+   */
+  private final int[] lineCounts;
+  /**
+   * Number of different numbers in each row and then each column.
+   */
+  private final int[] distinct;
+  /**
+   * Number of numbers appearing more than once in each row and then each
+   * column.
+   */
+  private final int[] duplicates;
+  /**
+   * Number of rows and columns which contain every number.
+   */
+  private int completeLines;
+  /**
+   * Whether each cage currently reaches its target.
+   */
+  private final boolean[] cageCorrect;
+  /**
+   * Whether each cage can still reach its target.
+   */
+  private final boolean[] cageReachable;
+  /**
+   * Number of cages which reach their target.
+   */
+  private int correctCages;
+
+  /**
+   * Counts the numbers already in a grid.
+   * @param state     the grid to check.
+   */
+  public PuzzleChecker(GridState state) {
+    this.state = state;
+    size = state.getSize();
+    lineCounts = new int[size * 2 * (size + 1)];
+    distinct = new int[size * 2];
+    duplicates = new int[size * 2];
+    cageCorrect = new boolean[state.getCageCount()];
+    cageReachable = new boolean[cageCorrect.length];
+    recount();
+  }
+
+  /**
+   * Accessor for the grid being checked.
+   * @return {@link #state}
+   */
+  public GridState getState() {
+    return state;
+  }
+
+  /**
+   * Counts every number of the grid from scratch, such as after it has
+   * been changed without going through the checker.
+   */
+  public void recount() {
+    Arrays.fill(lineCounts, 0);
+    Arrays.fill(distinct, 0);
+    Arrays.fill(duplicates, 0);
+    completeLines = 0;
+    for (int cell = 0; cell < size * size; cell++) {
+      int number = state.getValue(cell);
+      if (number != 0) {
+        updateLine(cell / size, 0, number);
+        updateLine(size + cell % size, 0, number);
+      }
+    }
+    correctCages = 0;
+    for (int cage = 0; cage < cageCorrect.length; cage++) {
+      cageCorrect[cage] = state.isCageSatisfied(cage);
+      cageReachable[cage] = state.isCageReachable(cage);
+      correctCages += cageCorrect[cage] ? 1 : 0;
+    }
+  }
+
+  /**
+   * Puts a number into a cell and updates the counts of its row, column
+   * and cage.
+   * @param cell      the cell, row * size + column.
+   * @param number    the number, or 0 to empty the cell.
+   * @return the number the cell held before.
+   */
+  public int setValue(int cell, int number) {
+    int old = state.setValue(cell, number);
+    if (old == number) {
+      return old;
+    }
+    updateLine(cell / size, old, number);
+    updateLine(size + cell % size, old, number);
+    int cage = state.getCageOf(cell);
+    if (cage >= 0) {
+      boolean correct = state.isCageSatisfied(cage);
+      if (correct != cageCorrect[cage]) {
+        cageCorrect[cage] = correct;
+        correctCages += correct ? 1 : -1;
+      }
+      cageReachable[cage] = state.isCageReachable(cage);
+    }
+    return old;
+  }
+
+  /**
+   * Moves a row or column's count from one number to another.
+   * @param line      the row, or size + the column.
+   * @param old       the number taken out, or 0.
+   * @param number    the number put in, or 0.
+   */
+  private void updateLine(int line, int old, int number) {
+    int base = line * (size + 1);
+    boolean wasComplete = distinct[line] == size;
+
+    if (old != 0) {
+      int count = --lineCounts[base + old];
+      if (count == 0) {
+        distinct[line]--;
+      }
+      else if (count == 1) {
+        duplicates[line]--;
+      }
+    }
+    if (number != 0) {
+      int count = ++lineCounts[base + number];
+      if (count == 1) {
+        distinct[line]++;
+      }
+      else if (count == 2) {
+        duplicates[line]++;
+      }
+    }
+
+    /** A line of size cells holding size different numbers is complete. */
+    boolean isComplete = distinct[line] == size;
+    if (isComplete != wasComplete) {
+      completeLines += isComplete ? 1 : -1;
+    }
+  }
+
+  /**
+   * Whether a row or column holds the same number more than once.
+   * @param line    the row, or size + the column.
+   * @return true if the line has a mistake.
+   */
+  public boolean hasDuplicates(int line) {
+    return duplicates[line] > 0;
+  }
+
+  /**
+   * Whether a row or column holds every number.
+   * @param line    the row, or size + the column.
+   * @return true if the line is complete.
+   */
+  public boolean isLineComplete(int line) {
+    return distinct[line] == size;
+  }
+
+  /**
+   * Whether a cage reaches its target.
+   * @param cage    the cage.
+   * @return true if the cage has been completed correctly.
+   */
+  public boolean isCageCorrect(int cage) {
+    return cageCorrect[cage];
+  }
+
+  /**
+   * Whether a cage can still reach its target once its empty cells are
+   * filled. A full cage can only if it is correct.
+   * @param cage    the cage.
+   * @return false if the cage has a mistake.
+   */
+  public boolean isCageReachable(int cage) {
+    return cageReachable[cage];
+  }
+
+  /**
+   * Whether every cage, row and column has been completed.
+   * @return true if the grid has been completed correctly.
+   */
+  public boolean isWon() {
+    return correctCages == cageCorrect.length && completeLines == size * 2;
+  }
+}
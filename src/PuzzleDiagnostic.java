@@ -0,0 +1,66 @@
+/**
+ * A problem found while reading a pack of puzzles. The puzzle it was found
+ * in is skipped, and reading carries on with the next one. Acts as a
+ * record.
+ * @author starp
+ *
+ */
+public class PuzzleDiagnostic {
+  /**
+   * Which puzzle of the pack had the problem, counting from 1.
+   */
+  private final long puzzleNumber;
+  /**
+   * The line of the pack the problem was found on, counting from 1.
+   */
+  private final long lineNumber;
+  /**
+   * What was wrong.
+   */
+  private final String reason;
+
+  /**
+   * Creates the record of a problem.
+   * @param puzzleNumber    which puzzle had the problem.
+   * @param lineNumber      the line the problem was found on.
+   * @param reason          what was wrong.
+   */
+  public PuzzleDiagnostic(long puzzleNumber, long lineNumber, String reason) {
+    this.puzzleNumber = puzzleNumber;
+    this.lineNumber = lineNumber;
+    this.reason = reason;
+  }
+
+  /**
+   * Accessor for which puzzle had the problem.
+   * @return {@link #puzzleNumber}
+   */
+  public long getPuzzleNumber() {
+    return puzzleNumber;
+  }
+
+  /**
+   * Accessor for the line the problem was found on.
+   * @return {@link #lineNumber}
+   */
+  public long getLineNumber() {
+    return lineNumber;
+  }
+
+  /**
+   * Accessor for what was wrong.
+   * @return {@link #reason}
+   */
+  public String getReason() {
+    return reason;
+  }
+
+  /**
+   * Describes the problem for the user.
+   * @return the puzzle, line and reason.
+   */
+  @Override
+  public String toString() {
+    return "Puzzle " + puzzleNumber + ", line " + lineNumber + ": " + reason;
+  }
+}
@@ -0,0 +1,56 @@
+/**
+ * Thrown when the text of a puzzle can't be turned into a game. Says which
+ * line was wrong, if the problem is with a single line, and why.
+ * @author starp
+ *
+ */
+public class PuzzleFormatException extends Exception {
+  /**
+   * Version of the serialised form.
+   */
+  private static final long serialVersionUID = 1L;
+  /**
+   * The line the problem was found on, counting from 1, or 0 if the
+   * problem is with the puzzle as a whole.
+   */
+  private final int lineNumber;
+  /**
+   * What was wrong, without the line number.
+   */
+  private final String reason;
+
+  /**
+   * Creates an exception for a problem with the puzzle as a whole.
+   * @param reason    what was wrong.
+   */
+  public PuzzleFormatException(String reason) {
+    this(0, reason);
+  }
+
+  /**
+   * Creates an exception for a problem on one line.
+   * @param lineNumber    the line, counting from 1.
+   * @param reason        what was wrong.
+   */
+  public PuzzleFormatException(int lineNumber, String reason) {
+    super(lineNumber > 0 ? "Line " + lineNumber + ": " + reason : reason);
+    this.lineNumber = lineNumber;
+    this.reason = reason;
+  }
+
+  /**
+   * Accessor for the line the problem was found on.
+   * @return {@link #lineNumber}
+   */
+  public int getLineNumber() {
+    return lineNumber;
+  }
+
+  /**
+   * Accessor for what was wrong.
+   * @return {@link #reason}
+   */
+  public String getReason() {
+    return reason;
+  }
+}
@@ -1,9 +1,11 @@
 import java.util.Random;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
-import java.util.HashSet;
 import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.function.Consumer;
 
 /**
  * Generates a puzzle using a random number generator.
@@ -16,9 +18,27 @@ public class PuzzleGenerator {
    */
   private Random random;
   /**
-   * The seed that will be fed into the number generator.
+   * Whether cage layouts should be repaired until the puzzle has exactly
+   * one solution.
    */
-  private int seed;
+  private boolean unique = false;
+  /**
+   * How much work it took to generate the last puzzle.
+   */
+  private GenerationStatistics statistics = new GenerationStatistics();
+  /**
+   * Relative chance of each cage size, starting with 1 cell, or null to
+   * use {@link CagePartitioner#defaultWeights(int)}.
+   */
+  private double[] sizeWeights = null;
+  /**
+   * Told about the statistics each time a cage layout has been checked.
+   */
+  private Consumer<GenerationStatistics> progressListener = statistics -> { };
+  /**
+   * Number of threads the solver checking uniqueness uses.
+   */
+  private int parallelism = 1;
     
     
   /**
@@ -36,54 +56,99 @@ public class PuzzleGenerator {
    */
   public PuzzleGenerator(int seed) {
     random = new Random(seed);
-    this.seed = seed;
+  }
+
+  /**
+   * Uses the random number generator given; lets callers decide where the
+   * randomness of each puzzle comes from.
+   * @param random      the random number generator for the puzzle.
+   */
+  PuzzleGenerator(Random random) {
+    this.random = random;
   }
     
+  /**
+   * Mutator for whether generated puzzles must have a unique solution.
+   * @param unique    true if ambiguous cage layouts should be repaired.
+   */
+  public void setUnique(boolean unique) {
+    this.unique = unique;
+  }
+
+  /**
+   * Mutator for the number of threads used to check that a puzzle has a
+   * unique solution, which is most of the work on large grids. Which two
+   * solutions of an ambiguous layout are found first then depends on the
+   * threads, so seeded puzzles only come out the same every time with 1.
+   * @param parallelism   the number of threads, or 1 to check on the
+   *                      calling thread.
+   */
+  public void setParallelism(int parallelism) {
+    this.parallelism = parallelism;
+  }
+
+  /**
+   * Mutator for the distribution of cage sizes. When set, the largest cage
+   * is limited by the number of weights rather than the maximum given to
+   * {@link #createGameData(int, int)}.
+   * @param sizeWeights   the relative chance of each cage size, starting
+   *                      with 1 cell, or null for the default.
+   */
+  public void setSizeWeights(double[] sizeWeights) {
+    this.sizeWeights = sizeWeights;
+  }
+
+  /**
+   * Mutator for what is told about the progress of a puzzle being made
+   * unique. It is called on the generating thread.
+   * @param progressListener    called with the statistics so far after 
+   *                            each cage layout is checked.
+   */
+  public void setProgressListener(
+      Consumer<GenerationStatistics> progressListener) {
+    this.progressListener = progressListener;
+  }
+
+  /**
+   * Accessor for the statistics of the last puzzle generated.
+   * @return {@link #statistics}
+   */
+  public GenerationStatistics getStatistics() {
+    return statistics;
+  }
+
   /**
    * Creates a game data object representing a randomly generated puzzle.
    * @param sizeOfTheGrid       dimensions of the would be puzzle.
    * @param max                 maximum size of one cage.
+   * @throws CancellationException if the thread is interrupted.
    */
   public GameData createGameData(int sizeOfTheGrid, int max) {
-    boolean valid = true;
-    int[][] grid = new int[sizeOfTheGrid][sizeOfTheGrid];
-        
-    /** Stops looping when a valid seed is found. */
-    do {
-      valid = true;
-      try {
-        /** Generates a grid of numbers without column/row clashes. */
-        GridNumberGenerator gridGen = new GridNumberGenerator(sizeOfTheGrid);
-        grid = gridGen.getGridOfNumbers();
-      }
-      catch (Exception e) {
-        /** If an error occurs, attempt again with a random seed. */
-        if (seed != 0) {
-          seed *= 7;
-          random = new Random(seed);
-        }
-        else {
-          random = new Random();
-        }
-          valid = false;
-      }
-    }  
-    while (valid == false);
+    long start = System.nanoTime();
+    /** Generates a grid of numbers without column/row clashes. */
+    GridNumberGenerator gridGen = new GridNumberGenerator(sizeOfTheGrid);
+    int[][] grid = gridGen.getGridOfNumbers();
         
+    statistics = new GenerationStatistics();
     CageGenerator cageGen = new CageGenerator(grid, max);
-    /** Creates the game data to store information on the new game. */
-    GameData gameData = new GameData();
-    gameData.setSize(grid.length);
-    gameData.setCages(cageGen.getCageCells());
-    gameData.setOperators(cageGen.getOperators());
-    gameData.setTargets(cageGen.getTargets());      
+    /** Repairs the cages in place rather than starting again. */
+    if (unique) {
+      cageGen.makeUnique(statistics);
+    }
         
+    GameData gameData = cageGen.toGameData();
+    statistics.setElapsed(System.nanoTime() - start);
     return gameData;
   }
     
     
   /**
    * A class containing code needed to generate a grid of random numbers. 
+   * Starts from a cyclic Latin square and shuffles it with Jacobson-Matthews
+   * moves, which reach every Latin square with equal probability. The 
+   * square is kept as an incidence cube where entry (row, column, number) 
+   * is 1 if the cell holds the number; a move may leave one entry at -1, 
+   * which the following moves then remove.
    * @author starp
    *
    */
@@ -93,17 +158,32 @@ public class PuzzleGenerator {
      */
     private int[][] grid;
     /**
-     * Numbers that should be filled in each column and row. 
+     * Number of columns/rows.
      */
-    private ArrayList<Integer> numbersToFill;
+    private int size;
     /**
-     * Represents the numbers that have yet to be filled in each column.
+     * The incidence cube, indexed by (row * size + column) * size + number.
      */
-    private ArrayList<ArrayList<Integer>> colNumbers;
-    /** 
-     * Represents the numebrs that have yet to be filled in each row.
+    private byte[] cube;
+    /**
+     * The numbers (counted from 0) whose entry is 1, two slots per cell. A 
+     * line of the cube holds two 1s only if it passes through the -1 entry,
+     * otherwise the second slot is -1. 
+     */
+    private int[] cellNumbers;
+    /**
+     * The columns holding each number, two slots per row and number.
+     */
+    private int[] rowColumns;
+    /**
+     * The rows holding each number, two slots per column and number.
+     */
+    private int[] columnRows;
+    /**
+     * Row, column and number (counted from 0) of the entry at -1, or -1 if 
+     * the square is proper.
      */
-    private ArrayList<ArrayList<Integer>> rowNumbers;
+    private int improperRow = -1, improperColumn, improperNumber;
     
     /**
      * Creates a two dimensional array ready to contain numbers. Will 
@@ -111,20 +191,21 @@ public class PuzzleGenerator {
      * @param sizeOfTheGrid     how many columns/rows.
      */
     public GridNumberGenerator(int sizeOfTheGrid) {
-      grid = new int[sizeOfTheGrid][sizeOfTheGrid];
-      
-      /** Initialises the numbers that should be filled in each column/row. */
-      numbersToFill = new ArrayList<Integer>();
-      for (int number = 1; number <= sizeOfTheGrid; number++) {
-          numbersToFill.add(number);
-      }
+      size = sizeOfTheGrid;
+      grid = new int[size][size];
+      cube = new byte[size * size * size];
+      cellNumbers = new int[size * size * 2];
+      rowColumns = new int[size * size * 2];
+      columnRows = new int[size * size * 2];
+      Arrays.fill(cellNumbers, -1);
+      Arrays.fill(rowColumns, -1);
+      Arrays.fill(columnRows, -1);
       
-      colNumbers = new ArrayList<ArrayList<Integer>>();
-      rowNumbers = new ArrayList<ArrayList<Integer>>();
-      /** Initialises the two array lists. */
-      for (int i = 0; i < sizeOfTheGrid; i++) {
-          colNumbers.add(new ArrayList<Integer>(numbersToFill));
-          rowNumbers.add(new ArrayList<Integer>(numbersToFill));
+      /** Starts from the cyclic square. */
+      for (int row = 0; row < size; row++) {
+        for (int column = 0; column < size; column++) {
+          change(row, column, (row + column) % size, 1);
+        }
       }
       
       fillGrid();
@@ -136,101 +217,139 @@ public class PuzzleGenerator {
     public int[][] getGridOfNumbers() {
       return grid;
     }
-            
-    
-    private void swapColumn(int column, int row) {
-      int columnToSwap = column;
-      
-      do {
-          columnToSwap--;
-      } 
-      while ((compatibleNumbersLeft(columnToSwap, row).size() == 0
-              || !colNumbers.get(column).contains(grid[row][columnToSwap])));
-      /** Swapped cell is assigned a new value. */
-      fillCell(row, column, clearCell(row, columnToSwap));
-      fillCell(row, columnToSwap);
-    }
     
     /** 
-     * Fills the grid with numbers.
+     * Shuffles the cube with size cubed moves, finishes on a proper square
+     * and reads the numbers off it.
      */
     private void fillGrid() {
-      /** Fills each row. */
-      for (int row = 0; row < grid.length; row++) {
-        /** Loops through each column. */
-        for (int column = 0; column < grid.length; column++) {
-          /** If there's no compatible columns left. */
-          if (compatibleNumbersLeft(column, row).size() == 0) {
-            swapColumn(column, row);
-          }
-          else {
-            /** Randomly choose a compatible value for the current column. */
-            fillCell(row, column);
-          }
+      if (size > 1) {
+        int moves = size * size * size;
+        for (int move = 0; move < moves || improperRow >= 0; move++) {
+          move();
+        }
+      }
+      
+      for (int row = 0; row < size; row++) {
+        for (int column = 0; column < size; column++) {
+          grid[row][column] = cellNumbers[(row * size + column) * 2] + 1;
         }
       }
     }
     
     /**
-     * Fills in the cell with a specified number. 
-     * @param row           which row the cell is part of.
-     * @param column        which column the cell is part of.
-     * @param number        which number the cell is part of.
+     * Performs one Jacobson-Matthews move.
      */
-    private void fillCell(int row, int column, Integer number) {
-      /** If there's a number within the cell previously. */
-      if (grid[row][column] != 0) {
-        clearCell(row, column);
+    private void move() {
+      int row, column, number;
+      /** Which of the two 1s to use in each line, if there are two. */
+      int choices = 0;
+      
+      if (improperRow < 0) {
+        /** Picks an empty entry. */
+        int entry;
+        do {
+          entry = random.nextInt(cube.length);
+        }
+        while (cube[entry] != 0);
+        number = entry % size;
+        column = (entry / size) % size;
+        row = entry / (size * size);
+      }
+      else {
+        /** Each line through the -1 entry has two 1s; picks one of each. */
+        row = improperRow;
+        column = improperColumn;
+        number = improperNumber;
+        choices = random.nextInt(8);
       }
       
-      /** Fills in the cell with the new number. */
-      grid[row][column] = number;
-      colNumbers.get(column).indexOf(number);
-      colNumbers.get(column).remove(colNumbers.get(column).indexOf(number));
-      rowNumbers.get(row).remove(rowNumbers.get(row).indexOf(number));
+      /** Finds the entries at 1 in the three lines through the entry. */
+      int otherRow = columnRows[(column * size + number) * 2 + (choices & 1)];
+      int otherColumn = rowColumns[(row * size + number) * 2 
+                                   + ((choices >> 1) & 1)];
+      int otherNumber = cellNumbers[(row * size + column) * 2 + (choices >> 2)];
+      
+      /** 
+       * Moves the 1s around the box spanned by the chosen entries, taking 
+       * away first so no line briefly holds three 1s.
+       */
+      change(row, column, otherNumber, -1);
+      change(row, otherColumn, number, -1);
+      change(otherRow, column, number, -1);
+      change(otherRow, otherColumn, otherNumber, -1);
+      change(row, column, number, 1);
+      change(row, otherColumn, otherNumber, 1);
+      change(otherRow, column, otherNumber, 1);
+      change(otherRow, otherColumn, number, 1);
+      
+      /** The far corner is the only entry that can drop to -1. */
+      if (cube[index(otherRow, otherColumn, otherNumber)] < 0) {
+        improperRow = otherRow;
+        improperColumn = otherColumn;
+        improperNumber = otherNumber;
+      }
+      else {
+        improperRow = -1;
+      }
     }
     
     /**
-     * Finds a number suitable for the cell.
-     * @param row           which row the cell is part of.
-     * @param column        which column the cell is part of.
+     * Adds to an entry of the cube, keeping the lists of 1s up to date.
+     * @param row       which row.
+     * @param column    which column.
+     * @param number    which number, counting from 0.
+     * @param amount    1 or -1.
      */
-    private void fillCell(int row, int column) {
-      /** If there's a number within the cell previously. */
-      if (grid[row][column] != 0) {
-        clearCell(row, column);
-      }
-      ArrayList<Integer> options = compatibleNumbersLeft(column, row);
+    private void change(int row, int column, int number, int amount) {
+      int index = index(row, column, number);
+      int before = cube[index];
+      cube[index] += amount;
       
-      /** If there are numbers available. */
-      if (options.size() != 0) {
-        fillCell(row, column, options.get(random.nextInt(options.size())));
+      if (before == 1) {
+        removeSlot(cellNumbers, row * size + column, number);
+        removeSlot(rowColumns, row * size + number, column);
+        removeSlot(columnRows, column * size + number, row);
+      }
+      else if (cube[index] == 1) {
+        addSlot(cellNumbers, row * size + column, number);
+        addSlot(rowColumns, row * size + number, column);
+        addSlot(columnRows, column * size + number, row);
       }
     }
     
     /**
-     * Clears a cell.
-     * @return the value that the cell previously contained. 
+     * Records a 1 in a line.
+     * @param slots     the two slots of every line of one direction.
+     * @param line      which line.
+     * @param value     the position of the 1 along the line.
      */
-    private int clearCell(int row, int column) {
-      int previous = grid[row][column];
-      colNumbers.get(column).add(previous);
-      rowNumbers.get(row).add(previous);
-      grid[row][column] = 0;
-      return previous;
+    private void addSlot(int[] slots, int line, int value) {
+      slots[slots[line * 2] < 0 ? line * 2 : line * 2 + 1] = value;
     }
     
+    /**
+     * Forgets a 1 in a line.
+     * @param slots     the two slots of every line of one direction.
+     * @param line      which line.
+     * @param value     the position of the 1 along the line.
+     */
+    private void removeSlot(int[] slots, int line, int value) {
+      if (slots[line * 2] == value) {
+        slots[line * 2] = slots[line * 2 + 1];
+      }
+      slots[line * 2 + 1] = -1;
+    }
     
-    /** 
-     * Returns numbers that can fill a particular cell.
-     * @param column        which column.
-     * @param row           which row.
-     * @return all compatible numbers.
-     */
-    private ArrayList<Integer> compatibleNumbersLeft(int column, int row) {
-      ArrayList<Integer> compatibleNumbers = new ArrayList<Integer>(rowNumbers.get(row));
-      compatibleNumbers.retainAll(colNumbers.get(column));
-      return compatibleNumbers;
+    /**
+     * Works out where an entry is kept in the cube.
+     * @param row       which row.
+     * @param column    which column.
+     * @param number    which number, counting from 0.
+     * @return the index into {@link #cube}.
+     */
+    private int index(int row, int column, int number) {
+      return (row * size + column) * size + number;
     }
   }
     
@@ -240,9 +359,13 @@ public class PuzzleGenerator {
      */
     private int[][] grid;
     /**
-     * ArrayList that stores the cells that have been visited.
+     * Draws the cages over the grid.
+     */
+    private CagePartitioner partitioner;
+    /**
+     * Cage of each cell, counting from 0, given to the partitioner.
      */
-    private HashSet<Coordinate> visited;
+    private int[] cageOf;
     /**
      * Cells that will be contained in each cage.
      */
@@ -259,15 +382,20 @@ public class PuzzleGenerator {
     /** 
      * Initialises the grid.
      * @param grid      containing the numbers stored inside the grid.
+     * @param max       maximum number of cells in a cage.
      */
     public CageGenerator(int[][] grid, int max) {
       this.grid = grid;
-      visited = new HashSet<Coordinate>();
+      partitioner = new CagePartitioner(grid.length, max, random);
+      if (sizeWeights != null) {
+        partitioner.setSizeWeights(sizeWeights);
+      }
+      cageOf = new int[grid.length * grid.length];
       cageCells = new ArrayList<ArrayList<Integer>>();
       operators = new ArrayList<Operations>();
       targets = new ArrayList<Integer>();
       
-      generateCages(max);
+      generateCages();
       typeCages();
     }
     
@@ -296,79 +424,198 @@ public class PuzzleGenerator {
     }
     
     /**
-     * Generates the information for the cages.
-     * @param max       maximum number of cells in a cage.
+     * Creates the game data to store information on the new game.
+     * @return the puzzle made of the cages generated so far.
+     */
+    public GameData toGameData() {
+      GameData gameData = new GameData();
+      gameData.setSize(grid.length);
+      gameData.setCages(cageCells);
+      gameData.setOperators(operators);
+      gameData.setTargets(targets);
+      return gameData;
+    }
+    
+    /**
+     * Merges or splits again the cages that let the puzzle be solved in more
+     * than one way, until the solver finds only one solution.
+     * @param statistics    where the work done will be recorded.
+     * @throws CancellationException if the thread is interrupted.
      */
-    public void generateCages(int max) {
-      /** Goes through each cell. */
-      for (int i = 0; i < grid.length; i++) {
-        for (int j = 0; j < grid.length; j++) {
-          /** If the cell is unvisited, draw a cage including it. */
-          if (!visited.contains(new Coordinate(i, j))) {
-            ArrayList<Integer> cage = new ArrayList<Integer>();
-            drawCage(i, j, 1, cage, max);
-            cageCells.add(cage);
+    public void makeUnique(GenerationStatistics statistics) {
+      while (true) {
+        if (Thread.currentThread().isInterrupted()) {
+          throw new CancellationException("Generation was interrupted");
+        }
+        ConstraintSolver solver = new ConstraintSolver(toGameData());
+        solver.setParallelism(parallelism);
+        int solutions = solver.countSolutions(2);
+        statistics.addAttempt(solver.getNodes());
+        progressListener.accept(statistics);
+        if (solutions < 2) {
+          return;
+        }
+        
+        /** Finds the cells which differ between the two solutions. */
+        int[][] first = solver.getSolution(0);
+        int[][] second = solver.getSolution(1);
+        ArrayList<Integer> ambiguous = new ArrayList<Integer>();
+        for (int i = 0; i < grid.length; i++) {
+          for (int j = 0; j < grid.length; j++) {
+            if (first[i][j] != second[i][j]) {
+              ambiguous.add(i * grid.length + j + 1);
+            }
           }
         }
+        
+        /** 
+         * If merging keeps failing, the cage is broken into single cells
+         * which always fixes their numbers.
+         */
+        statistics.addResplit();
+        int cellNo = ambiguous.get(random.nextInt(ambiguous.size()));
+        if (statistics.getResplits() > grid.length * grid.length) {
+          splitIntoSingles(indexOfCage(cellNo));
+        }
+        else {
+          repairCage(indexOfCage(cellNo), ambiguous);
+        }
       }
     }
     
     /**
-     * Creates a single cage based around a single cell.
-     * @param i                 which row the cell is in. 
-     * @param j                 which column the cell is in.
-     * @param numberOfCells     number of cells already in the cage.
-     * 
+     * Joins a cage to one of its neighbours. If the joined cage would be
+     * too big, its cells are split into new cages instead.
+     * @param cageIndex     which cage is ambiguous.
+     * @param ambiguous     cells that differ between two solutions.
      */
-    private boolean drawCage(int i, int j, int numberOfCells, 
-                           ArrayList<Integer> cellsInCage,
-                           int max) {
-      if (numberOfCells == 1) {
-          visited.add(new Coordinate(i, j));
-          cellsInCage.add(i * grid.length + j + 1);
+    private void repairCage(int cageIndex, ArrayList<Integer> ambiguous) {
+      ArrayList<Integer> cage = cageCells.get(cageIndex);
+      /** Neighbouring cages, with ambiguous ones listed separately. */
+      ArrayList<Integer> neighbours = new ArrayList<Integer>();
+      ArrayList<Integer> ambiguousNeighbours = new ArrayList<Integer>();
+      
+      for (int cellNo : cage) {
+        int i = (cellNo - 1) / grid.length;
+        int j = (cellNo - 1) % grid.length;
+        int[][] around = {{i - 1, j}, {i + 1, j}, {i, j - 1}, {i, j + 1}};
+        for (int[] cell : around) {
+          if (cell[0] < 0 || cell[0] >= grid.length || cell[1] < 0 
+              || cell[1] >= grid.length) {
+            continue;
+          }
+          int otherNo = cell[0] * grid.length + cell[1] + 1;
+          int other = indexOfCage(otherNo);
+          if (other != cageIndex) {
+            neighbours.add(other);
+            if (ambiguous.contains(otherNo)) {
+              ambiguousNeighbours.add(other);
+            }
+          }
+        }
       }
       
-      /** If the maximum number of cells included. */
-      if (numberOfCells == max) {
-          return false;
+      /** A cage covering the whole grid can only be split up. */
+      if (neighbours.isEmpty()) {
+        splitIntoSingles(cageIndex);
+        return;
+      }
+      
+      /** Prefers a neighbour that is also ambiguous. */
+      List<Integer> choices = ambiguousNeighbours.isEmpty() ? neighbours 
+                                                            : ambiguousNeighbours;
+      int neighbour = choices.get(random.nextInt(choices.size()));
+      ArrayList<Integer> joined = new ArrayList<Integer>(cage);
+      joined.addAll(cageCells.get(neighbour));
+      removeCage(Math.max(cageIndex, neighbour));
+      removeCage(Math.min(cageIndex, neighbour));
+      
+      if (joined.size() <= partitioner.getLargest()) {
+        cageCells.add(joined);
+        typeCage(joined);
       }
       else {
-        /** Stores which surrounding cells are available. */
-        ArrayList<Coordinate> cells = new ArrayList<Coordinate>();
-        
-        /** Adds all unvisited neighbour cells. */
-        if (i > 0 ? !visited.contains(new Coordinate(i - 1, j)) : false) {
-          cells.add(new Coordinate(i - 1, j));
-        }
-        if (i < grid.length - 1 ? !visited.contains(new Coordinate(i + 1, j))
-                                : false) {
-          cells.add(new Coordinate (i + 1, j));
+        /** Draws new cages over only the cells of the two old cages. */
+        Arrays.fill(cageOf, 0);
+        for (int cellNo : joined) {
+          cageOf[cellNo - 1] = -1;
         }
-        if (j > 0 ? !visited.contains(new Coordinate (i, j - 1)): false) {
-          cells.add(new Coordinate(i, j - 1));
+        int first = cageCells.size();
+        int end = partitioner.partition(cageOf, first + 1) - 1;
+        addCages(first, end, joined);
+        for (int index = first; index < end; index++) {
+          typeCage(cageCells.get(index));
         }
-        if (j < grid.length - 1 ? !visited.contains(new Coordinate(i, j + 1))
-                                : false) {
-          cells.add(new Coordinate(i, j + 1));
-        }
-        
-        /** If there are no available neighbour cells. */
-        if (cells.size() == 0) {
-          return false;
-        }
-        
-        /** Random number generator selects the next cell. */
-        Coordinate chosen = cells.get(random.nextInt(cells.size()));
-        cellsInCage.add(chosen.getX() * grid.length + chosen.getY() + 1);
-        visited.add(chosen);
-        
-        /** Determines if there's a next cell in the cage. */
-        if (random.nextDouble() < 0.4) {
-          drawCage(chosen.getX(), chosen.getY(), numberOfCells + 1, 
-                   cellsInCage, max); 
+      }
+    }
+    
+    /**
+     * Replaces a cage with a cage for each of its cells.
+     * @param cageIndex     which cage will be split.
+     */
+    private void splitIntoSingles(int cageIndex) {
+      ArrayList<Integer> cage = cageCells.get(cageIndex);
+      removeCage(cageIndex);
+      for (int cellNo : cage) {
+        ArrayList<Integer> single = new ArrayList<Integer>();
+        single.add(cellNo);
+        cageCells.add(single);
+        typeCage(single);
+      }
+    }
+    
+    /**
+     * Removes a cage along with its operator and target.
+     * @param cageIndex     which cage will be removed.
+     */
+    private void removeCage(int cageIndex) {
+      cageCells.remove(cageIndex);
+      operators.remove(cageIndex);
+      targets.remove(cageIndex);
+    }
+    
+    /**
+     * Finds which cage a cell belongs to.
+     * @param cellNo    the cell, counting from 1.
+     * @return the index of the cage.
+     */
+    private int indexOfCage(int cellNo) {
+      for (int index = 0; index < cageCells.size(); index++) {
+        if (cageCells.get(index).contains(cellNo)) {
+          return index;
         }
-        
-        return true;
+      }
+      return -1;
+    }
+    
+    /**
+     * Generates the information for the cages.
+     */
+    public void generateCages() {
+      Arrays.fill(cageOf, -1);
+      int end = partitioner.partition(cageOf, 0);
+      for (int index = 0; index < end; index++) {
+        cageCells.add(new ArrayList<Integer>());
+      }
+      for (int cellNo = 1; cellNo <= cageOf.length; cellNo++) {
+        cageCells.get(cageOf[cellNo - 1]).add(cellNo);
+      }
+    }
+    
+    /**
+     * Adds the cages the partitioner has drawn over some of the cells.
+     * @param first     index the first new cage will have in the list, 
+     *                  numbered one higher by the partitioner.
+     * @param end       index after the last new cage.
+     * @param cells     the cells the cages were drawn over.
+     */
+    private void addCages(int first, int end, ArrayList<Integer> cells) {
+      for (int index = first; index < end; index++) {
+        cageCells.add(new ArrayList<Integer>());
+      }
+      Collections.sort(cells);
+      for (int cellNo : cells) {
+        cageCells.get(cageOf[cellNo - 1] - 1).add(cellNo);
       }
     }
     
@@ -377,50 +624,63 @@ public class PuzzleGenerator {
      */
     private void typeCages() {
       for (ArrayList<Integer> cage : cageCells) {             
-        /** Stores all the would be values in the cage. */
-        ArrayList<Integer> values = new ArrayList<Integer>();
+        typeCage(cage);
+      }
+    } 
+    
+    /**
+     * Determines the operator and target of a single cage and adds them to
+     * the lists.
+     * @param cage      the cells in the cage.
+     */
+    private void typeCage(ArrayList<Integer> cage) {
+      /** Stores all the would be values in the cage. */
+      ArrayList<Integer> values = new ArrayList<Integer>();
+      
+      /** Finds the value in each cell. */
+      for (int cellIndex : cage) {
+        values.add(grid[Math.floorDiv(cellIndex - 1, grid.length)]
+                       [(cellIndex - 1) % grid.length]); 
+      }
+      
+      /** Prioritise the division cage since valid ones are rare. */
+      if (canDivide(values)) {
+        operators.add(Operations.DIVIDE);
+        targets.add(divide(values));
+      }
+      else {
+        /** Randomly choose the operator. */
+        List<Operations> possibleSigns = new ArrayList<Operations>();
         
-        /** Finds the value in each cell. */
-        for (int cellIndex : cage) {
-          values.add(grid[Math.floorDiv(cellIndex - 1, grid.length)]
-                         [(cellIndex - 1) % grid.length]); 
+        /** Large cages can have products too big to be a target. */
+        if (product(values) <= Integer.MAX_VALUE) {
+          possibleSigns.add(Operations.TIMES);
         }
+        possibleSigns.add(Operations.ADD);
         
-        /** Prioritise the division cage since valid ones are rare. */
-        if (canDivide(values)) {
-          operators.add(Operations.DIVIDE);
-          targets.add(divide(values));
+        /** If we can subtract the numbers, add it to the possible signs. */
+        if (canSubtract(values)) {
+          possibleSigns.add(Operations.MINUS);
         }
-        else {
-          /** Randomly choose the operator. */
-          List<Operations> possibleSigns = new ArrayList<Operations>();
-          possibleSigns.add(Operations.TIMES);
-          possibleSigns.add(Operations.ADD);
-          
-          /** If we can subtract the numbers, add it to the possible signs. */
-          if (canSubtract(values)) {
-            possibleSigns.add(Operations.MINUS);
-          }
-          
-          switch (possibleSigns.get(random.nextInt(possibleSigns.size()))) {
-            case TIMES:
-              operators.add(Operations.TIMES);
-              targets.add(product(values));
-              break;
-            case ADD: 
-              operators.add(Operations.ADD);
-              targets.add(sum(values));
-              break;
-            case MINUS:
-              operators.add(Operations.MINUS);
-              targets.add(subtract(values));
-              break;
-            default:
-              break;                          
-          }
+        
+        switch (possibleSigns.get(random.nextInt(possibleSigns.size()))) {
+          case TIMES:
+            operators.add(Operations.TIMES);
+            targets.add((int) product(values));
+            break;
+          case ADD: 
+            operators.add(Operations.ADD);
+            targets.add(sum(values));
+            break;
+          case MINUS:
+            operators.add(Operations.MINUS);
+            targets.add(subtract(values));
+            break;
+          default:
+            break;                          
         }
       }
-    } 
+    }
     
     /**
      * Returns whether a cage can be given a subtraction operator.
@@ -470,25 +730,30 @@ public class PuzzleGenerator {
       /** The arraylist without the maximum. */
       ArrayList<Integer> rest = new ArrayList<Integer>(values);
       rest.remove(Collections.max(rest));
-      int product = 1;
+      int divided = Collections.max(values);
       
+      /** Divides by each in turn, as their product could overflow. */
       for (int number : rest) {
-        product *= number;
+        divided /= number;
       }
       
-      return Collections.max(values) / product;           
+      return divided;
     }
     
     /**
      * Computes the target of a multiplication cage.
      * @param values        within the cage.
-     * @return product of all the values.
+     * @return product of all the values, or some number above
+     *         Integer.MAX_VALUE if it is too big to be a target.
      */
-    private Integer product(ArrayList<Integer> values) {
-      int product = 1;
+    private long product(ArrayList<Integer> values) {
+      long product = 1;
       
+      /** Stops once it is too big to be a target, so it can't overflow. */
       for (Integer value : values) {
-        product *= value;
+        if (product <= Integer.MAX_VALUE) {
+          product *= value;
+        }
       }
       
       return product;
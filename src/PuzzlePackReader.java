@@ -0,0 +1,443 @@
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+/**
+ * Reads a pack of puzzles one at a time, in the same line format as a
+ * single puzzle. Puzzles are separated by lines that are blank, start with
+ * '#', or are made only of '-' or '=' characters. The file is read through
+ * a fixed buffer and each line is scanned byte by byte, so a pack of any
+ * size is read in the same amount of memory. A puzzle with a problem is
+ * skipped and the problem is passed to the diagnostic handler; reading
+ * carries on with the next puzzle.
+ * @author starp
+ *
+ */
+public class PuzzlePackReader implements Iterator<GameData>, Closeable {
+  /**
+   * Number of bytes read from the file at a time.
+   */
+  public static final int BUFFERSIZE = 1 << 16;
+  /**
+   * Longest line that is scanned; longer lines are reported.
+   */
+  public static final int MAXLINE = 1 << 16;
+  /**
+   * Largest cell number any grid can have.
+   */
+  private static final int MAXCELL = GameData.MAXSIZE * GameData.MAXSIZE;
+  /**
+   * Where the pack is read from.
+   */
+  private final ReadableByteChannel channel;
+  /**
+   * Bytes read from the channel but not yet scanned.
+   */
+  private final ByteBuffer buffer = ByteBuffer.allocate(BUFFERSIZE);
+  /**
+   * The bytes of the current line, without its line break.
+   */
+  private byte[] line = new byte[256];
+  /**
+   * Number of bytes in {@link #line}.
+   */
+  private int lineLength = 0;
+  /**
+   * Whether the current line was longer than {@link #MAXLINE}.
+   */
+  private boolean lineTooLong = false;
+  /**
+   * Number of lines read so far.
+   */
+  private long lineNumber = 0;
+  /**
+   * Number of puzzles started so far, including ones that were skipped.
+   */
+  private long puzzleNumber = 0;
+  /**
+   * Number of problems found so far.
+   */
+  private long errors = 0;
+  /**
+   * Whether the end of the channel has been reached.
+   */
+  private boolean endOfInput = false;
+  /**
+   * The next puzzle to hand out, or null if it hasn't been read yet.
+   */
+  private GameData next;
+  /**
+   * Told about every problem found.
+   */
+  private Consumer<PuzzleDiagnostic> diagnosticHandler = diagnostic -> { };
+
+  /**
+   * Opens a pack file.
+   * @param path    the file.
+   * @throws IOException if the file can't be opened.
+   */
+  public PuzzlePackReader(Path path) throws IOException {
+    this(FileChannel.open(path, StandardOpenOption.READ));
+  }
+
+  /**
+   * Reads a pack from a channel, which is closed along with the reader.
+   * @param channel   where the pack is read from.
+   */
+  public PuzzlePackReader(ReadableByteChannel channel) {
+    this.channel = channel;
+    /** Starts with nothing to scan. */
+    buffer.flip();
+  }
+
+  /**
+   * Mutator for what is told about each problem found.
+   * @param diagnosticHandler   called with each problem, in order.
+   */
+  public void setDiagnosticHandler(
+      Consumer<PuzzleDiagnostic> diagnosticHandler) {
+    this.diagnosticHandler = diagnosticHandler;
+  }
+
+  /**
+   * Accessor for the number of puzzles started so far, including skipped
+   * ones.
+   * @return {@link #puzzleNumber}
+   */
+  public long getPuzzleCount() {
+    return puzzleNumber;
+  }
+
+  /**
+   * Accessor for the number of problems found so far.
+   * @return {@link #errors}
+   */
+  public long getErrorCount() {
+    return errors;
+  }
+
+  /**
+   * Reads ahead to the next valid puzzle if it hasn't been read already.
+   * @return true if there is another puzzle.
+   * @throws UncheckedIOException if the pack can't be read.
+   */
+  @Override
+  public boolean hasNext() {
+    if (next == null && !endOfInput) {
+      try {
+        next = readPuzzle();
+      }
+      catch (IOException e) {
+        throw new UncheckedIOException(e);
+      }
+    }
+    return next != null;
+  }
+
+  /**
+   * Hands out the next valid puzzle.
+   * @return the puzzle.
+   * @throws NoSuchElementException if there are no more puzzles.
+   */
+  @Override
+  public GameData next() {
+    if (!hasNext()) {
+      throw new NoSuchElementException();
+    }
+    GameData puzzle = next;
+    next = null;
+    return puzzle;
+  }
+
+  /**
+   * Returns the valid puzzles as a stream, which closes the reader when it
+   * is closed.
+   * @return the puzzles, read as the stream is used.
+   */
+  public Stream<GameData> stream() {
+    return StreamSupport.stream(
+        Spliterators.spliteratorUnknownSize(
+            this, Spliterator.ORDERED | Spliterator.NONNULL), false)
+        .onClose(() -> {
+          try {
+            close();
+          }
+          catch (IOException e) {
+            throw new UncheckedIOException(e);
+          }
+        });
+  }
+
+  /**
+   * Closes the channel.
+   * @throws IOException if the channel can't be closed.
+   */
+  @Override
+  public void close() throws IOException {
+    endOfInput = true;
+    channel.close();
+  }
+
+  /**
+   * Reads lines until a valid puzzle has been read, skipping puzzles with
+   * problems.
+   * @return the puzzle, or null at the end of the pack.
+   * @throws IOException if the pack can't be read.
+   */
+  private GameData readPuzzle() throws IOException {
+    PuzzleParser parser = null;
+    boolean valid = true;
+    long firstLine = 0;
+    while (true) {
+      boolean more = readLine();
+      if (!more || isSeparator()) {
+        /** The end of a puzzle, if one was being read. */
+        if (parser != null && valid) {
+          try {
+            return parser.build();
+          }
+          catch (PuzzleFormatException e) {
+            report(e.getLineNumber() > 0
+                   ? firstLine + e.getLineNumber() - 1 : firstLine,
+                   e.getReason());
+          }
+        }
+        parser = null;
+        if (!more) {
+          return null;
+        }
+        continue;
+      }
+
+      if (parser == null) {
+        parser = new PuzzleParser();
+        valid = true;
+        firstLine = lineNumber;
+        puzzleNumber++;
+      }
+      /** Keeps scanning an invalid puzzle so every bad line is reported. */
+      valid &= scanLine(parser, (int) (lineNumber - firstLine + 1));
+    }
+  }
+
+  /**
+   * Reads the next line into {@link #line}, without its line break.
+   * @return false if there are no more lines.
+   * @throws IOException if the pack can't be read.
+   */
+  private boolean readLine() throws IOException {
+    lineLength = 0;
+    lineTooLong = false;
+    boolean read = false;
+    while (true) {
+      if (!buffer.hasRemaining()) {
+        buffer.clear();
+        int count = endOfInput ? -1 : channel.read(buffer);
+        buffer.flip();
+        if (count < 0) {
+          endOfInput = true;
+          if (!read) {
+            return false;
+          }
+          break;
+        }
+        continue;
+      }
+      byte next = buffer.get();
+      read = true;
+      if (next == '\n') {
+        break;
+      }
+      if (lineLength == line.length) {
+        if (line.length >= MAXLINE) {
+          lineTooLong = true;
+          continue;
+        }
+        line = Arrays.copyOf(line, Math.min(MAXLINE, line.length * 2));
+      }
+      line[lineLength++] = next;
+    }
+
+    lineNumber++;
+    if (lineLength > 0 && line[lineLength - 1] == '\r') {
+      lineLength--;
+    }
+    /** Drops the byte order mark some editors start files with. */
+    if (lineNumber == 1 && lineLength >= 3 && line[0] == (byte) 0xEF
+        && line[1] == (byte) 0xBB && line[2] == (byte) 0xBF) {
+      System.arraycopy(line, 3, line, 0, lineLength - 3);
+      lineLength -= 3;
+    }
+    return true;
+  }
+
+  /**
+   * Whether the current line separates two puzzles.
+   * @return true for a blank line, a line starting with '#', or a line of
+   *         only '-' or '=' characters.
+   */
+  private boolean isSeparator() {
+    int position = skipBlanks(0);
+    if (position == lineLength || line[position] == '#') {
+      return true;
+    }
+    for (; position < lineLength; position++) {
+      byte next = line[position];
+      if (next != '-' && next != '=' && !isBlank(next)) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  /**
+   * Scans the current line as a cage, such as "12x 1,2,7", and adds it to
+   * the puzzle.
+   * @param parser        the puzzle being read.
+   * @param puzzleLine    the line's number within the puzzle.
+   * @return false if the line had a problem, which has been reported.
+   */
+  private boolean scanLine(PuzzleParser parser, int puzzleLine) {
+    if (lineTooLong) {
+      return report(lineNumber, "The line is too long.");
+    }
+    int position = skipBlanks(0);
+
+    /** The target. */
+    long target = 0;
+    int start = position;
+    while (position < lineLength && isDigit(line[position])) {
+      target = target * 10 + line[position++] - '0';
+      if (target > Integer.MAX_VALUE) {
+        return report(lineNumber, "The target is too large.");
+      }
+    }
+    if (position == start) {
+      return report(lineNumber, "Only whole numbers accepted!");
+    }
+
+    /** The operator straight after the target, if there is one. */
+    Operations operator = Operations.NONE;
+    if (position < lineLength) {
+      byte next = line[position];
+      if (next == '+') {
+        operator = Operations.ADD;
+      }
+      else if (next == '-') {
+        operator = Operations.MINUS;
+      }
+      else if (next == 'x') {
+        operator = Operations.TIMES;
+      }
+      else if (next == (byte) 0xF7) {
+        /** A division sign saved as Latin-1. */
+        operator = Operations.DIVIDE;
+      }
+      else if (next == (byte) 0xC3 && position + 1 < lineLength
+               && line[position + 1] == (byte) 0xB7) {
+        /** A division sign saved as UTF-8 takes two bytes. */
+        operator = Operations.DIVIDE;
+        position++;
+      }
+      if (operator != Operations.NONE) {
+        position++;
+      }
+    }
+    if (position == lineLength || !isBlank(line[position])) {
+      return report(lineNumber, "Incorrect format used.");
+    }
+    position = skipBlanks(position);
+
+    /** The cells, separated by commas. */
+    ArrayList<Integer> cageData = new ArrayList<Integer>();
+    while (true) {
+      int cell = 0;
+      start = position;
+      while (position < lineLength && isDigit(line[position])) {
+        cell = cell * 10 + line[position++] - '0';
+        if (cell > MAXCELL) {
+          return report(lineNumber, "Grids can have at most "
+                                    + GameData.MAXSIZE + " columns.");
+        }
+      }
+      if (position == start) {
+        return report(lineNumber, "Only whole numbers accepted!");
+      }
+      cageData.add(cell);
+      if (position < lineLength && line[position] == ',') {
+        position++;
+      }
+      else {
+        break;
+      }
+    }
+    if (skipBlanks(position) != lineLength) {
+      return report(lineNumber, "Incorrect format used.");
+    }
+
+    try {
+      parser.addCage((int) target, operator, cageData, puzzleLine);
+    }
+    catch (PuzzleFormatException e) {
+      return report(lineNumber, e.getReason());
+    }
+    return true;
+  }
+
+  /**
+   * Passes a problem with the current puzzle to the handler.
+   * @param problemLine   the line the problem was found on.
+   * @param reason        what was wrong.
+   * @return false, so scanning can report and give up in one statement.
+   */
+  private boolean report(long problemLine, String reason) {
+    errors++;
+    diagnosticHandler.accept(new PuzzleDiagnostic(puzzleNumber, problemLine,
+                                                  reason));
+    return false;
+  }
+
+  /**
+   * Moves past spaces and tabs.
+   * @param position    where to start in {@link #line}.
+   * @return the position of the next other byte, or the line's length.
+   */
+  private int skipBlanks(int position) {
+    while (position < lineLength && isBlank(line[position])) {
+      position++;
+    }
+    return position;
+  }
+
+  /**
+   * Whether a byte is a space or tab.
+   * @param next    the byte.
+   * @return true if it separates parts of a line.
+   */
+  private static boolean isBlank(byte next) {
+    return next == ' ' || next == '\t';
+  }
+
+  /**
+   * Whether a byte is a digit.
+   * @param next    the byte.
+   * @return true for '0' to '9'.
+   */
+  private static boolean isDigit(byte next) {
+    return next >= '0' && next <= '9';
+  }
+}
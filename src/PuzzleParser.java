@@ -0,0 +1,275 @@
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.Reader;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+
+/**
+ * Turns the text of a puzzle into a game. Each line describes a cage as its
+ * target, followed by its operator if it has one, then a space and the
+ * numbers of its cells separated by commas, such as "12x 1,2,7". Lines are
+ * added one at a time and checked as they come, then the puzzle as a whole
+ * is checked when the game is built.
+ * @author starp
+ *
+ */
+public class PuzzleParser {
+  /**
+   * Will be used to store the cells that are part of the cages.
+   */
+  private HashSet<Integer> cells = new HashSet<Integer>();
+  /**
+   * Contains a list of arrays containing cells that are part of the cage.
+   */
+  private List<ArrayList<Integer>> cageInfo =
+      new ArrayList<ArrayList<Integer>>();
+  /**
+   * The line each cage was described on.
+   */
+  private List<Integer> cageLines = new ArrayList<Integer>();
+  /**
+   * Creates a list of targets.
+   */
+  private List<Integer> targets = new ArrayList<Integer>();
+  /**
+   * Creates a list for the operators.
+   */
+  private List<Operations> operators = new ArrayList<Operations>();
+  /**
+   * Number of lines added so far.
+   */
+  private int lineNumber = 0;
+
+  /**
+   * Reads a whole puzzle.
+   * @param text    the puzzle, one cage per line.
+   * @return the game.
+   * @throws PuzzleFormatException if the puzzle isn't valid.
+   */
+  public static GameData parse(String text) throws PuzzleFormatException {
+    PuzzleParser parser = new PuzzleParser();
+    for (String line : text.split("\n")) {
+      parser.addLine(line);
+    }
+    return parser.build();
+  }
+
+  /**
+   * Reads a whole puzzle. The reader is not closed.
+   * @param reader    where the puzzle is read from, one cage per line.
+   * @return the game.
+   * @throws IOException if the reader fails.
+   * @throws PuzzleFormatException if the puzzle isn't valid.
+   */
+  public static GameData parse(Reader reader)
+      throws IOException, PuzzleFormatException {
+    BufferedReader bufferedReader = reader instanceof BufferedReader
+                                    ? (BufferedReader) reader
+                                    : new BufferedReader(reader);
+    PuzzleParser parser = new PuzzleParser();
+    String line;
+    while ((line = bufferedReader.readLine()) != null) {
+      parser.addLine(line);
+    }
+    return parser.build();
+  }
+
+  /**
+   * Writes a puzzle in the format {@link #parse} reads, one cage per line.
+   * @param gameData    the puzzle.
+   * @param out         where the lines are written.
+   * @throws IOException if the lines can't be written.
+   */
+  public static void format(GameData gameData, Appendable out)
+      throws IOException {
+    for (int cage = 0; cage < gameData.getCages().size(); cage++) {
+      out.append(Integer.toString(gameData.getTargets().get(cage)));
+      switch (gameData.getOperators().get(cage)) {
+        case ADD:
+          out.append('+');
+          break;
+        case MINUS:
+          out.append('-');
+          break;
+        case TIMES:
+          out.append('x');
+          break;
+        case DIVIDE:
+          out.append('÷');
+          break;
+        default:
+      }
+      char separator = ' ';
+      for (int cellNo : gameData.getCages().get(cage)) {
+        out.append(separator).append(Integer.toString(cellNo));
+        separator = ',';
+      }
+      out.append('\n');
+    }
+  }
+
+  /**
+   * Splits the next line into the relevant parts. Blank lines are skipped.
+   * @param line    the line describing a cage.
+   * @throws PuzzleFormatException if the line isn't a valid cage.
+   */
+  public void addLine(String line) throws PuzzleFormatException {
+    lineNumber++;
+    String trimmed = line.trim();
+    if (trimmed.isEmpty()) {
+      return;
+    }
+    /** Contains the target, operator, and cell numbers. */
+    String[] data = trimmed.split("\\s+");
+    if (data.length < 2) {
+      throw new PuzzleFormatException(lineNumber, "Incorrect format used.");
+    }
+
+    /** Array storing information on what cells are in the cage. */
+    ArrayList<Integer> cageData = new ArrayList<Integer>();
+    for (String cellNumber : data[1].split(",")) {
+      cageData.add(parseNumber(cellNumber));
+    }
+
+    /** Works out the operator from the last character of the target. */
+    String target = data[0];
+    Operations operator;
+    switch (target.charAt(target.length() - 1)) {
+      case '+':
+        operator = Operations.ADD;
+        break;
+      case '-':
+        operator = Operations.MINUS;
+        break;
+      case 'x':
+        operator = Operations.TIMES;
+        break;
+      case '÷':
+        operator = Operations.DIVIDE;
+        break;
+      default:
+        operator = Operations.NONE;
+    }
+    if (operator != Operations.NONE) {
+      target = target.substring(0, target.length() - 1);
+    }
+    addCage(parseNumber(target), operator, cageData, lineNumber);
+  }
+
+  /**
+   * Adds a cage that has already been split into its parts, such as by a
+   * reader that scans the text itself.
+   * @param target        the cage's target.
+   * @param operator      the cage's operator.
+   * @param cageData      the numbers of the cage's cells, counting from 1.
+   * @param cageLine      the line the cage was described on, used when
+   *                      reporting problems.
+   * @throws PuzzleFormatException if a cell number is out of range.
+   */
+  public void addCage(int target, Operations operator,
+                      ArrayList<Integer> cageData, int cageLine)
+      throws PuzzleFormatException {
+    for (int cell : cageData) {
+      if (cell < 1) {
+        throw new PuzzleFormatException(cageLine,
+                                        "Cell numbers start from 1.");
+      }
+    }
+    Collections.sort(cageData);
+
+    targets.add(target);
+    operators.add(operator);
+    cells.addAll(cageData);
+    cageInfo.add(cageData);
+    cageLines.add(cageLine);
+  }
+
+  /**
+   * Creates a game data object that will store data on the new game.
+   * @return the game.
+   * @throws PuzzleFormatException if the cages don't make a valid grid.
+   */
+  public GameData build() throws PuzzleFormatException {
+    if (cells.isEmpty()) {
+      throw new PuzzleFormatException("No cages were given.");
+    }
+
+    /** The dimension of the grid should be over the maximum. */
+    int size = (int) Math.ceil(Math.sqrt(Collections.max(cells)));
+    if (size > GameData.MAXSIZE) {
+      throw new PuzzleFormatException("Grids can have at most "
+                                      + GameData.MAXSIZE + " columns.");
+    }
+    /** If there's overlapping cages, then not all the cells will be covered. */
+    int covered = 0;
+    for (ArrayList<Integer> cage : cageInfo) {
+      covered += cage.size();
+    }
+    if (cells.size() < size * size || covered > cells.size()) {
+      throw new PuzzleFormatException(
+          "Every cell must be in exactly one cage.");
+    }
+
+    /** Checks if the cells are adjacent. */
+    for (int cage = 0; cage < cageInfo.size(); cage++) {
+      ArrayList<Integer> cageInfoCells = cageInfo.get(cage);
+      /** If there is only one cell in the cage, then it is valid. */
+      if (cageInfoCells.size() != 1) {
+        /** Checks that the cell is connected to one other cell in the cage. */
+        for (int cellNumber : cageInfoCells) {
+          if (!hasAdjacentCell(cellNumber, cageInfoCells, size)) {
+            throw new PuzzleFormatException(cageLines.get(cage),
+                                            "The cells of the cage are not "
+                                            + "next to each other.");
+          }
+        }
+      }
+    }
+
+    /** Adds information on the cages. */
+    GameData gameData = new GameData();
+    gameData.setSize(size);
+    gameData.setCages(cageInfo);
+    gameData.setOperators(operators);
+    gameData.setTargets(targets);
+    return gameData;
+  }
+
+  /**
+   * Reads a whole number.
+   * @param text    the number's digits.
+   * @return the number.
+   * @throws PuzzleFormatException if the text isn't a whole number.
+   */
+  private int parseNumber(String text) throws PuzzleFormatException {
+    try {
+      return Integer.parseInt(text);
+    }
+    catch (NumberFormatException e) {
+      throw new PuzzleFormatException(lineNumber,
+                                      "Only whole numbers accepted!");
+    }
+  }
+
+  /**
+   * Checks whether a cell is connected to at least one other cell in the cage.
+   * @param cell            the cell we are checking this property for.
+   * @param cageInfoCells   the cells in the cage.
+   * @param size            the number of columns/rows in the grid.
+   * @return true if the cell is adjacent to one another in the array.
+   */
+  private static boolean hasAdjacentCell(int cell,
+                                         List<Integer> cageInfoCells,
+                                         int size) {
+    for (int otherCell : cageInfoCells) {
+      /** Checks if that other cell is above/below/on the right/left. */
+      if (otherCell == cell - size || otherCell == cell + size
+          || otherCell == cell - 1 || otherCell == cell + 1) {
+        return true;
+      }
+    }
+    return false;
+  }
+}
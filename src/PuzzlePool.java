@@ -0,0 +1,363 @@
+import java.util.ArrayDeque;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Keeps puzzles generated ahead of time, so asking for one doesn't have to
+ * wait for the generator. Each combination of grid size, largest cage and
+ * whether the solution must be unique has its own pool, which workers
+ * running at the lowest thread priority fill up in the background whenever
+ * a puzzle is taken from it. Only the most recently used combinations are
+ * kept, so moving through many settings doesn't keep every pool full.
+ * <p>
+ * Seeded puzzles must never come from here, as they have to be the same
+ * every time.
+ * @author starp
+ *
+ */
+public class PuzzlePool {
+  /**
+   * Number of puzzles kept ready for each combination unless told
+   * otherwise.
+   */
+  public static final int DEFAULTCAPACITY = 3;
+  /**
+   * Number of combinations kept before the least recently used is dropped.
+   */
+  public static final int MAXPOOLS = 8;
+  /**
+   * Number of puzzles kept ready for each combination.
+   */
+  private final int capacity;
+  /**
+   * Generates the puzzles.
+   */
+  private final ExecutorService workers;
+  /**
+   * The pool of each combination, least recently used first.
+   */
+  private final LinkedHashMap<Key, Pool> pools =
+      new LinkedHashMap<Key, Pool>(16, 0.75f, true);
+  /**
+   * Number of puzzles handed out straight from a pool.
+   */
+  private long hits = 0;
+  /**
+   * Number of requests that found their pool empty.
+   */
+  private long misses = 0;
+  /**
+   * Number of puzzles generated for the pools.
+   */
+  private long generated = 0;
+  /**
+   * Total time spent generating the puzzles, in nanoseconds.
+   */
+  private long generationTime = 0;
+  /**
+   * Number of times a pool has been filled back up.
+   */
+  private long refills = 0;
+  /**
+   * Total time from a pool running low until it was full again, in
+   * nanoseconds.
+   */
+  private long refillTime = 0;
+  /**
+   * Longest time a pool took to be filled back up, in nanoseconds.
+   */
+  private long longestRefill = 0;
+  /**
+   * Number of puzzles that failed to generate.
+   */
+  private long failures = 0;
+
+  /**
+   * Creates a pool with one worker and the default capacity.
+   */
+  public PuzzlePool() {
+    this(DEFAULTCAPACITY, 1);
+  }
+
+  /**
+   * Creates an empty pool. Nothing is generated until a combination is
+   * asked for.
+   * @param capacity    number of puzzles kept ready for each combination.
+   * @param threads     number of workers generating puzzles.
+   */
+  public PuzzlePool(int capacity, int threads) {
+    this.capacity = capacity;
+    workers = Executors.newFixedThreadPool(threads, runnable -> {
+      Thread thread = new Thread(runnable, "Puzzle pool");
+      thread.setDaemon(true);
+      thread.setPriority(Thread.MIN_PRIORITY);
+      return thread;
+    });
+  }
+
+  /**
+   * Hands out a ready puzzle if there is one, then starts filling the pool
+   * back up. Never waits for a puzzle to be generated.
+   * @param size      number of columns/rows.
+   * @param max       maximum size of one cage.
+   * @param unique    whether the puzzle must have a unique solution.
+   * @return the puzzle, or null if none was ready.
+   */
+  public GameData take(int size, int max, boolean unique) {
+    GameData puzzle;
+    synchronized (this) {
+      Pool pool = poolOf(new Key(size, max, unique));
+      puzzle = pool.puzzles.poll();
+      if (puzzle != null) {
+        hits++;
+      }
+      else {
+        misses++;
+      }
+      refill(pool);
+    }
+    return puzzle;
+  }
+
+  /**
+   * Starts filling the pool of a combination that is likely to be asked
+   * for soon.
+   * @param size      number of columns/rows.
+   * @param max       maximum size of one cage.
+   * @param unique    whether the puzzles must have a unique solution.
+   */
+  public synchronized void prefetch(int size, int max, boolean unique) {
+    refill(poolOf(new Key(size, max, unique)));
+  }
+
+  /**
+   * Returns the number of puzzles ready for a combination.
+   * @param size      number of columns/rows.
+   * @param max       maximum size of one cage.
+   * @param unique    whether the puzzles have a unique solution.
+   * @return the number of puzzles that can be taken without waiting.
+   */
+  public synchronized int getReady(int size, int max, boolean unique) {
+    Pool pool = pools.get(new Key(size, max, unique));
+    return pool == null ? 0 : pool.puzzles.size();
+  }
+
+  /**
+   * Returns how often a puzzle was ready when asked for.
+   * @return the fraction of requests that were hits, or 0 if there have
+   *         been none.
+   */
+  public synchronized double getHitRate() {
+    return hits + misses == 0 ? 0 : (double) hits / (hits + misses);
+  }
+
+  /**
+   * Returns how long a pool takes on average to be full again after it
+   * runs low.
+   * @return the time in nanoseconds, or 0 if no pool has been refilled.
+   */
+  public synchronized long getAverageRefillTime() {
+    return refills == 0 ? 0 : refillTime / refills;
+  }
+
+  /**
+   * Accessor for the longest time a pool took to be filled back up.
+   * @return {@link #longestRefill}, in nanoseconds.
+   */
+  public synchronized long getLongestRefillTime() {
+    return longestRefill;
+  }
+
+  /**
+   * Returns how long generating a puzzle for the pools takes on average.
+   * @return the time in nanoseconds, or 0 if none have been generated.
+   */
+  public synchronized long getAverageGenerationTime() {
+    return generated == 0 ? 0 : generationTime / generated;
+  }
+
+  /**
+   * Stops the workers, giving up on any puzzles being generated.
+   */
+  public void shutdown() {
+    workers.shutdownNow();
+  }
+
+  /**
+   * Summarises the counters.
+   * @return the counters as a single line.
+   */
+  @Override
+  public synchronized String toString() {
+    return String.format(
+        "pools: %d, hits: %d, misses: %d, hit rate: %.0f%%, generated: %d, "
+        + "failures: %d, average generation: %d ms, average refill: %d ms, "
+        + "longest refill: %d ms", pools.size(), hits, misses,
+        getHitRate() * 100, generated, failures,
+        getAverageGenerationTime() / 1000000,
+        getAverageRefillTime() / 1000000, longestRefill / 1000000);
+  }
+
+  /**
+   * Finds the pool of a combination, creating it if needed and dropping
+   * the least recently used one if there are too many. Must be called
+   * while holding the lock.
+   * @param key   the combination.
+   * @return its pool.
+   */
+  private Pool poolOf(Key key) {
+    Pool pool = pools.get(key);
+    if (pool == null) {
+      pool = new Pool(key);
+      pools.put(key, pool);
+      Iterator<Map.Entry<Key, Pool>> entries = pools.entrySet().iterator();
+      while (pools.size() > MAXPOOLS && entries.hasNext()) {
+        /** A dropped pool's worker notices and stops generating. */
+        entries.next();
+        entries.remove();
+      }
+    }
+    return pool;
+  }
+
+  /**
+   * Starts a worker filling a pool unless one already is or it is full.
+   * Must be called while holding the lock.
+   * @param pool    the pool.
+   */
+  private void refill(Pool pool) {
+    if (pool.refilling || pool.puzzles.size() >= capacity
+        || workers.isShutdown()) {
+      return;
+    }
+    pool.refilling = true;
+    long requested = System.nanoTime();
+    workers.execute(() -> fill(pool, requested));
+  }
+
+  /**
+   * Generates puzzles for a pool until it is full, or no longer kept.
+   * Runs on a worker.
+   * @param pool        the pool.
+   * @param requested   when the pool was found to be running low.
+   */
+  private void fill(Pool pool, long requested) {
+    Key key = pool.key;
+    while (!Thread.currentThread().isInterrupted()) {
+      synchronized (this) {
+        if (pools.get(key) != pool || pool.puzzles.size() >= capacity) {
+          long took = System.nanoTime() - requested;
+          refills++;
+          refillTime += took;
+          longestRefill = Math.max(longestRefill, took);
+          pool.refilling = false;
+          return;
+        }
+      }
+
+      long start = System.nanoTime();
+      try {
+        PuzzleGenerator generator = new PuzzleGenerator();
+        generator.setUnique(key.unique);
+        GameData puzzle = generator.createGameData(key.size, key.max);
+        synchronized (this) {
+          generated++;
+          generationTime += System.nanoTime() - start;
+          pool.puzzles.add(puzzle);
+        }
+      }
+      catch (CancellationException e) {
+        break;
+      }
+      catch (RuntimeException e) {
+        /** Gives up on this pool until it is asked for again. */
+        synchronized (this) {
+          failures++;
+        }
+        break;
+      }
+    }
+    synchronized (this) {
+      pool.refilling = false;
+    }
+  }
+
+  /**
+   * The puzzles ready for one combination. Guarded by the outer pool's
+   * lock.
+   * @author starp
+   *
+   */
+  private static final class Pool {
+    /**
+     * The combination the puzzles are for.
+     */
+    private final Key key;
+    /**
+     * The puzzles ready to be handed out, oldest first.
+     */
+    private final ArrayDeque<GameData> puzzles = new ArrayDeque<GameData>();
+    /**
+     * Whether a worker is filling the pool.
+     */
+    private boolean refilling = false;
+
+    /**
+     * Creates an empty pool.
+     * @param key   the combination the puzzles are for.
+     */
+    private Pool(Key key) {
+      this.key = key;
+    }
+  }
+
+  /**
+   * A grid size, largest cage and whether the solution must be unique.
+   * @author starp
+   *
+   */
+  private static final class Key {
+    /**
+     * Number of columns/rows.
+     */
+    private final int size;
+    /**
+     * Maximum size of one cage.
+     */
+    private final int max;
+    /**
+     * Whether the puzzles must have a unique solution.
+     */
+    private final boolean unique;
+
+    /**
+     * Creates the combination.
+     * @param size      number of columns/rows.
+     * @param max       maximum size of one cage.
+     * @param unique    whether the puzzles must have a unique solution.
+     */
+    private Key(int size, int max, boolean unique) {
+      this.size = size;
+      this.max = max;
+      this.unique = unique;
+    }
+
+    @Override
+    public int hashCode() {
+      return (size * 31 + max) * 2 + (unique ? 1 : 0);
+    }
+
+    @Override
+    public boolean equals(Object other) {
+      if (!(other instanceof Key)) {
+        return false;
+      }
+      Key key = (Key) other;
+      return size == key.size && max == key.max && unique == key.unique;
+    }
+  }
+}
@@ -0,0 +1,69 @@
+/**
+ * Finds the solutions of a puzzle. There are two independent backends, so
+ * the results of one can be checked against the other.
+ * @author starp
+ *
+ */
+public interface PuzzleSolver {
+  /**
+   * The ways a puzzle can be solved.
+   */
+  enum Backend {
+    /** Propagates candidates and cage tuples, see {@link ConstraintSolver}. */
+    CONSTRAINT,
+    /** Covers an exact cover matrix, see {@link DancingLinksSolver}. */
+    DANCING_LINKS;
+
+    /**
+     * Creates a solver of this kind for a puzzle.
+     * @param gameData    the puzzle that will be solved.
+     * @return the solver.
+     * @throws IllegalArgumentException if this backend can't describe the
+     *                                  puzzle.
+     */
+    public PuzzleSolver create(GameData gameData) {
+      if (this == DANCING_LINKS) {
+        return new DancingLinksSolver(gameData);
+      }
+      return new ConstraintSolver(gameData);
+    }
+  }
+
+  /**
+   * Returns the number of columns/rows of the puzzle.
+   * @return the size of the grid.
+   */
+  int getSize();
+
+  /**
+   * Finds one solution of the puzzle.
+   * @return the grid of numbers indexed by [row][column], or null if the
+   *         puzzle cannot be solved.
+   * @throws java.util.concurrent.CancellationException if the thread is
+   *                                                    interrupted.
+   */
+  int[][] solve();
+
+  /**
+   * Counts the solutions of the puzzle, stopping early at a limit.
+   * @param limit   the search stops once this many solutions are found.
+   * @return the number of solutions found, at most limit.
+   * @throws java.util.concurrent.CancellationException if the thread is
+   *                                                    interrupted.
+   */
+  int countSolutions(int limit);
+
+  /**
+   * Returns one of the first two solutions found by the last search.
+   * @param index   0 for the first solution, 1 for the second.
+   * @return the grid indexed by [row][column], or null if fewer solutions
+   *         were found.
+   */
+  int[][] getSolution(int index);
+
+  /**
+   * Returns the number of search nodes visited by the last search.
+   * @return the number of nodes.
+   */
+  long getNodes();
+}
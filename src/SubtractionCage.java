@@ -1,4 +1,5 @@
 import javafx.scene.layout.Pane;
+import javafx.scene.shape.Shape;
 
 /**
  * Cage which will perform the subtraction operation on the cells.
@@ -14,6 +15,19 @@ class SubtractionCage extends Cage {
   public SubtractionCage(GCell[] cellArray, Pane paneToDraw, int target) {
     super(cellArray, paneToDraw, target);
   }
+  
+  /**
+   * Calls the parent constructor with an outline that has already been
+   * traced.
+   * @param cellArray     the cells that make up the cage.
+   * @param paneToDraw    the pane where the cage will be drawn.
+   * @param target        the target number.
+   * @param outline       the border of the cells.
+   */
+  public SubtractionCage(GCell[] cellArray, Pane paneToDraw, int target, 
+                         Shape outline) {
+    super(cellArray, paneToDraw, target, outline);
+  }
 
   /** 
    * Will be used to create the target label 
@@ -25,21 +39,12 @@ class SubtractionCage extends Cage {
     super.createTargetLabel("-", target, paneToDraw);      
   }
 
-  /** 
-   * Returns whether the user has entered the numbers in correctly.
+  /**
+   * The other numbers are taken away from the largest one.
+   * @return {@link Operations#MINUS}
    */
   @Override
-  protected boolean completedCorrectly() {
-    /** Sum of the numbers. */
-    int sum = 0;
-    /** Max value where the other numbers will be subtracted from. */
-    int max = 0;
-    for (GCell cell : cells) {
-      int currentNumber = cell.getContent();
-      sum += currentNumber;
-      max = max < currentNumber ? currentNumber : max;
-    }
-    
-    return target == (2 * max) - sum;
+  protected Operations getOperator() {
+    return Operations.MINUS;
   }    
 }